@@ -0,0 +1,230 @@
+package com.easttown.ticketsystem.block;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * 高峰时段闸机组通行模拟 - 比较三种放行方式下闸机组的通过量与排队时间：
+ * one-at-a-time：每条通道一次只放行一名玩家（旧实现），通道有玩家未走出时回复“忙碌”，玩家稍后重试；
+ * lane-exit：每条通道最多同时放行GateBlockEntity.MAX_QUEUED_PASSAGES名玩家，但玩家只能从检票的通道走出；
+ * bank-exit：同上，且通行按玩家登记，玩家可以从闸机组中任何开启的通道走出（当前实现）
+ * 冷却、通道放行上限与超时直接取自GateBlockEntity，通行登记在真实的GatePassageTable中（走出前按玩家查询，每tick推进超时）；
+ * 步行时间、出站间隔与到达率是模型参数。玩家按泊松过程到达，排到人数最少的通道；
+ * 通道只容一人并行，在检票通道内不能超过前面走得慢的玩家，bank-exit时可以改走闸机组中其他开启且空闲的通道
+ * 运行：./gradlew gateRushHour
+ */
+public final class GateRushHourSimulation {
+    // 从检票到走出出站检测面：最快WALK_TICKS，部分玩家更慢（背包整理、看聊天），最多再慢WALK_SPREAD_TICKS
+    private static final int WALK_TICKS = 30;
+    private static final int WALK_SPREAD_TICKS = 90;
+    // 同一通道相邻两名玩家走出的最小间隔
+    private static final int EXIT_HEADWAY_TICKS = 8;
+    // 回复“忙碌”后玩家重试的间隔
+    private static final int RETRY_TICKS = 10;
+    // 模拟5分钟
+    private static final int DURATION_TICKS = 20 * 60 * 5;
+    // 每条通道每秒到达的玩家数（超过单通道一次一人的处理能力）
+    private static final double ARRIVALS_PER_LANE_PER_SECOND = 1.0;
+
+    private enum Mode {
+        ONE_AT_A_TIME("one-at-a-time", 1, false),
+        LANE_EXIT("lane-exit", GateBlockEntity.MAX_QUEUED_PASSAGES, false),
+        BANK_EXIT("bank-exit", GateBlockEntity.MAX_QUEUED_PASSAGES, true);
+
+        final String label;
+        final int maxQueued;
+        final boolean bankExit;
+
+        Mode(String label, int maxQueued, boolean bankExit) {
+            this.label = label;
+            this.maxQueued = maxQueued;
+            this.bankExit = bankExit;
+        }
+    }
+
+    private GateRushHourSimulation() {
+    }
+
+    public static void main(String[] args) {
+        System.out.printf("cooldown=%d ticks, max queued=%d, walk=%d-%d ticks, exit headway=%d ticks, %.1f arrivals/lane/s%n",
+                GateBlockEntity.DEFAULT_COOLDOWN_TICKS, GateBlockEntity.MAX_QUEUED_PASSAGES,
+                WALK_TICKS, WALK_TICKS + WALK_SPREAD_TICKS, EXIT_HEADWAY_TICKS, ARRIVALS_PER_LANE_PER_SECOND);
+        System.out.println("lanes  mode            passed/min  mean wait(s)  p95 wait(s)  mean inside(s)  exits via other lane");
+        for (int lanes : new int[]{1, 2, 4, 8}) {
+            for (Mode mode : Mode.values()) {
+                Result result = run(lanes, mode, 42);
+                System.out.printf("%5d  %-14s  %10.1f  %12.1f  %11.1f  %14.1f  %20d%n", lanes, mode.label,
+                        result.passedPerMinute, result.meanWaitSeconds, result.p95WaitSeconds,
+                        result.meanInsideSeconds, result.otherLaneExits);
+            }
+        }
+    }
+
+    private static final class Result {
+        final double passedPerMinute;
+        final double meanWaitSeconds;
+        final double p95WaitSeconds;
+        final double meanInsideSeconds;
+        final int otherLaneExits;
+
+        Result(double passedPerMinute, double meanWaitSeconds, double p95WaitSeconds, double meanInsideSeconds,
+               int otherLaneExits) {
+            this.passedPerMinute = passedPerMinute;
+            this.meanWaitSeconds = meanWaitSeconds;
+            this.p95WaitSeconds = p95WaitSeconds;
+            this.meanInsideSeconds = meanInsideSeconds;
+            this.otherLaneExits = otherLaneExits;
+        }
+    }
+
+    /**
+     * 已检票的玩家
+     */
+    private static final class Rider {
+        final GatePassage passage;
+        final Lane lane;
+        final long tappedAt;
+        // 走到出站检测面的游戏时间
+        final long arrivesAt;
+
+        Rider(GatePassage passage, Lane lane, long tappedAt, long arrivesAt) {
+            this.passage = passage;
+            this.lane = lane;
+            this.tappedAt = tappedAt;
+            this.arrivesAt = arrivesAt;
+        }
+    }
+
+    /**
+     * 一条通道：排队等待检票的玩家（到达时间）与在本通道检票、尚未走出的玩家（对应GateBlockEntity.passages）
+     */
+    private static final class Lane {
+        final ArrayDeque<Long> waiting = new ArrayDeque<>();
+        final ArrayDeque<Rider> passages = new ArrayDeque<>();
+        long lastTap = Long.MIN_VALUE / 2;
+        long lastExit = Long.MIN_VALUE / 2;
+        long nextRetry;
+
+        int load() {
+            return waiting.size() + passages.size();
+        }
+
+        // 有玩家未走出时闸机保持开启
+        boolean open() {
+            return !passages.isEmpty();
+        }
+
+        boolean canExit(long tick) {
+            return open() && tick - lastExit >= EXIT_HEADWAY_TICKS;
+        }
+
+        // 通道内最前面的玩家还没走到出站检测面时，其他通道的玩家可以从本通道穿过
+        boolean free(long tick) {
+            return canExit(tick) && passages.peekFirst().arrivesAt > tick;
+        }
+    }
+
+    private static Result run(int laneCount, Mode mode, long seed) {
+        Random random = new Random(seed);
+        double arrivalChance = ARRIVALS_PER_LANE_PER_SECOND * laneCount / 20.0;
+        Lane[] lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane();
+        }
+        GatePassageTable table = new GatePassageTable();
+        // 已检票的玩家，按检票顺序
+        List<Rider> inside = new ArrayList<>();
+        List<Long> waits = new ArrayList<>();
+        int passed = 0;
+        int otherLaneExits = 0;
+        long insideTicks = 0;
+        long nextPlayer = 0;
+
+        for (long tick = 0; tick < DURATION_TICKS; tick++) {
+            // 超时的通行（与GateMonitor相同，每tick推进一次）
+            for (GatePassage expired : table.advance(tick)) {
+                expired.finished = true;
+                table.remove(expired);
+            }
+
+            // 每tick最多到达一名玩家，排到人数最少的通道
+            if (random.nextDouble() < arrivalChance) {
+                Lane shortest = lanes[0];
+                for (Lane lane : lanes) {
+                    if (lane.load() < shortest.load()) {
+                        shortest = lane;
+                    }
+                }
+                shortest.waiting.add(tick);
+            }
+
+            // 走到出站检测面的玩家按检票顺序走出：检票通道内排在最前面时直接走出，
+            // 被前面走得慢的玩家挡住时，bank-exit可以改走其他开启且空闲的通道
+            for (int i = 0; i < inside.size(); i++) {
+                Rider rider = inside.get(i);
+                GatePassage passage = table.get(rider.passage.playerId);
+                if (passage != rider.passage || passage.finished) {
+                    // 已超时
+                    rider.lane.passages.remove(rider);
+                    inside.remove(i--);
+                    continue;
+                }
+                if (tick < rider.arrivesAt) {
+                    continue;
+                }
+                Lane exit = rider.lane.passages.peekFirst() == rider && rider.lane.canExit(tick) ? rider.lane : null;
+                if (exit == null && mode.bankExit) {
+                    for (Lane lane : lanes) {
+                        if (lane != rider.lane && lane.free(tick)) {
+                            exit = lane;
+                            break;
+                        }
+                    }
+                }
+                if (exit == null) {
+                    continue;
+                }
+                exit.lastExit = tick;
+                if (exit != rider.lane) {
+                    otherLaneExits++;
+                }
+                passage.finished = true;
+                table.remove(passage);
+                rider.lane.passages.remove(rider);
+                inside.remove(i--);
+                insideTicks += tick - rider.tappedAt;
+                passed++;
+            }
+
+            // 队首玩家检票：通道放行已满时回复“忙碌”，冷却中时等待
+            for (Lane lane : lanes) {
+                if (lane.waiting.isEmpty() || tick < lane.nextRetry
+                        || tick - lane.lastTap < GateBlockEntity.DEFAULT_COOLDOWN_TICKS) {
+                    continue;
+                }
+                if (lane.passages.size() >= mode.maxQueued) {
+                    lane.nextRetry = tick + RETRY_TICKS;
+                    continue;
+                }
+                waits.add(tick - lane.waiting.poll());
+                GatePassage passage = new GatePassage(new UUID(0, nextPlayer++), null,
+                        tick + GateBlockEntity.PASSAGE_TIMEOUT_TICKS);
+                table.put(passage);
+                Rider rider = new Rider(passage, lane, tick, tick + WALK_TICKS + random.nextInt(WALK_SPREAD_TICKS + 1));
+                lane.passages.addLast(rider);
+                inside.add(rider);
+                lane.lastTap = tick;
+            }
+        }
+
+        Collections.sort(waits);
+        double meanWait = waits.stream().mapToLong(Long::longValue).average().orElse(0) / 20.0;
+        double p95Wait = waits.isEmpty() ? 0 : waits.get((int) (waits.size() * 0.95)) / 20.0;
+        double meanInside = passed == 0 ? 0 : insideTicks / 20.0 / passed;
+        return new Result(passed / (DURATION_TICKS / 1200.0), meanWait, p95Wait, meanInside, otherLaneExits);
+    }
+}
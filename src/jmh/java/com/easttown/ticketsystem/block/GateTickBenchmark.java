@@ -0,0 +1,154 @@
+package com.easttown.ticketsystem.block;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.phys.AABB;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 闸机每tick开销基准 - 服务器每tick花在闸机上的时间与闸机数量的关系，结果为一个tick中全部闸机的耗时，
+ * 除以gateCount即每台闸机的开销
+ * 闸机方块实体需要注册表与世界，不能在JMH中直接创建，两边都以只带检测面的Gate代替闸机：
+ * polling：旧实现（已删除）的模型，每台闸机每tick经过方块实体tick的调度（区块是否可tick）、读取朝向、
+ * 递减超时，有玩家通过时按UUID线性查找玩家并检查两个检测面。方块状态的读取简化为字段读取，结果偏低
+ * dormant：当前实现，每名玩家通过真实的GateSpatialIndex查询附近的闸机并检查两个检测面，
+ * 超时由真实的GatePassageTable推进；checkDetectionAreas中与检测面无关的部分不计入
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GateTickBenchmark {
+    private static final int PLAYERS = 100;
+    // 每个车站一组8台闸机，车站之间相距500格
+    private static final int BANK_SIZE = 8;
+    private static final int STATION_SPACING = 500;
+    // 正在通过的闸机比例
+    private static final double ACTIVE_RATIO = 0.02;
+
+    @Param({"100", "500", "2000"})
+    public int gateCount;
+
+    /**
+     * 一台闸机：检测面与旧实现每tick读取的状态
+     */
+    private static final class Gate {
+        final BlockPos pos;
+        final long chunkKey;
+        final AABB entry;
+        final AABB exit;
+        // 方块状态中的朝向
+        int facing = 2;
+        int lastFacing;
+        int timeoutTicks;
+        UUID currentPlayerId;
+
+        Gate(int x, int y, int z) {
+            pos = new BlockPos(x, y, z);
+            chunkKey = ((long) (z >> 4) << 32) | ((x >> 4) & 0xFFFFFFFFL); // 与ChunkPos.asLong相同
+            entry = new AABB(x, y, z + 0.9, x + 1, y + 1, z + 1);
+            exit = new AABB(x, y, z, x + 1, y + 1, z + 0.1);
+        }
+    }
+
+    private static final class SimPlayer {
+        final UUID id;
+        final AABB box;
+
+        SimPlayer(UUID id, double x, double y, double z) {
+            this.id = id;
+            box = new AABB(x, y, z, x + 0.6, y + 1.8, z + 0.6);
+        }
+    }
+
+    private Gate[] gates;
+    private final List<SimPlayer> players = new ArrayList<>();
+    private final GateSpatialIndex<Gate> index = new GateSpatialIndex<>();
+    // 已加载的区块（Level.shouldTickBlocksAt查询）
+    private final Set<Long> loadedChunks = new HashSet<>();
+    private final GatePassageTable passages = new GatePassageTable();
+    private long gameTime;
+    private int hits;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        gates = new Gate[gateCount];
+        for (int i = 0; i < gateCount; i++) {
+            int station = i / BANK_SIZE;
+            Gate gate = new Gate(station * STATION_SPACING + (i % BANK_SIZE) * 2, 64, 0);
+            gates[i] = gate;
+            loadedChunks.add(gate.chunkKey);
+            index.add(gate, gate.pos);
+        }
+
+        // 一部分玩家正在通过闸机（站在闸机中，碰到入站检测面），其余分散在线路网中
+        int active = Math.min(PLAYERS, (int) Math.ceil(gateCount * ACTIVE_RATIO));
+        for (int i = 0; i < PLAYERS; i++) {
+            UUID id = new UUID(0, i);
+            SimPlayer player;
+            if (i < active) {
+                Gate gate = gates[i * (gateCount / active)];
+                player = new SimPlayer(id, gate.entry.minX + 0.2, 64, 0.35);
+                gate.currentPlayerId = id;
+                gate.timeoutTicks = Integer.MAX_VALUE;
+                passages.put(new GatePassage(id, null, Long.MAX_VALUE));
+            } else {
+                int station = random.nextInt(Math.max(1, gateCount / BANK_SIZE));
+                player = new SimPlayer(id, station * STATION_SPACING + 20 + random.nextInt(400), 64, 5 + random.nextInt(200));
+            }
+            players.add(player);
+        }
+    }
+
+    @Benchmark
+    public int polling() {
+        int hits = 0;
+        for (Gate gate : gates) {
+            // Level.tickBlockEntities：区块可tick时才调用tick
+            if (!loadedChunks.contains(gate.chunkKey)) {
+                continue;
+            }
+            if (gate.lastFacing != gate.facing) {
+                gate.lastFacing = gate.facing;
+            }
+            if (gate.timeoutTicks > 0) {
+                gate.timeoutTicks--;
+            }
+            if (gate.currentPlayerId != null) {
+                // Level.getPlayerByUUID：遍历所有玩家
+                SimPlayer player = null;
+                for (SimPlayer candidate : players) {
+                    if (candidate.id.equals(gate.currentPlayerId)) {
+                        player = candidate;
+                        break;
+                    }
+                }
+                if (player != null) {
+                    if (player.box.intersects(gate.entry)) hits++;
+                    if (player.box.intersects(gate.exit)) hits++;
+                }
+            }
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public int dormant() {
+        hits = 0;
+        for (SimPlayer player : players) {
+            AABB box = player.box;
+            // 与GateMonitor.onPlayerTick相同的调用方式
+            index.forEachNear(box, gate -> {
+                if (box.intersects(gate.entry)) hits++;
+                if (box.intersects(gate.exit)) hits++;
+            });
+        }
+        hits += passages.advance(++gameTime).size();
+        return hits;
+    }
+}
@@ -0,0 +1,129 @@
+package com.easttown.ticketsystem.manager;
+
+import com.easttown.ticketsystem.config.TicketSystemConfig;
+import com.easttown.ticketsystem.data.Fare;
+import com.easttown.ticketsystem.data.Line;
+import com.easttown.ticketsystem.data.Station;
+import com.electronwill.nightconfig.core.CommentedConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * 基准测试用的线路网 - 在临时数据目录中生成size x size的网格
+ * 横向线路H01..每条拥有一行车站（编码01-01、01-02..，可以用同线前缀和计算票价），
+ * 纵向线路V01..经过各行同一列的车站，两个方向的线路在每个车站相交（换乘）；相邻车站之间有一条票价（区间票价无方向性）
+ */
+final class BenchmarkNetworks {
+    // 相邻车站的间距（格）
+    private static final int SPACING = 200;
+
+    private BenchmarkNetworks() {
+    }
+
+    /**
+     * 载入默认配置（不在Forge中运行时配置不会自动载入），并关闭与被测代码无关的后台计算
+     */
+    static void loadDefaultConfig() {
+        if (!TicketSystemConfig.SPEC.isLoaded()) {
+            // 空配置会被补全为默认值
+            TicketSystemConfig.SPEC.acceptConfig(CommentedConfig.inMemory());
+        }
+        TicketSystemConfig.FARE_MATRIX_ENABLED.set(false);
+        TicketSystemConfig.CONTRACTION_HIERARCHY_ENABLED.set(false);
+        TicketSystemConfig.WATCH_DATA_FILES.set(false);
+    }
+
+    /**
+     * 切换到一个新的临时数据目录
+     */
+    static File useTemporaryDirectory() throws IOException {
+        File directory = Files.createTempDirectory("ticketsystem-bench").toFile();
+        NetworkManager.setDataDirectory(directory);
+        return directory;
+    }
+
+    /**
+     * 停止后台写出并删除临时数据目录
+     */
+    static void close(File directory) throws IOException {
+        NetworkManager.close();
+        if (directory == null || !directory.exists()) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * 在当前数据目录中生成网格线路网
+     * @param size 每个方向的线路数（也是每条线路的车站数），最大99
+     */
+    static void buildGrid(int size) {
+        NetworkTransaction transaction = NetworkManager.beginTransaction();
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < size; column++) {
+                transaction.addStation(new Station(stationCode(row, column), "R" + row + "C" + column,
+                        "R" + row + "C" + column, column * SPACING, 64, row * SPACING));
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            List<String> horizontal = new ArrayList<>(size);
+            List<String> vertical = new ArrayList<>(size);
+            for (int j = 0; j < size; j++) {
+                horizontal.add(stationCode(i, j));
+                vertical.add(stationCode(j, i));
+            }
+            Line horizontalLine = new Line(String.format("H%02d", i + 1), "横" + (i + 1), "#3366CC");
+            horizontalLine.setStationCodes(horizontal);
+            transaction.addLine(horizontalLine);
+            Line verticalLine = new Line(String.format("V%02d", i + 1), "纵" + (i + 1), "#CC3333");
+            verticalLine.setStationCodes(vertical);
+            transaction.addLine(verticalLine);
+
+            for (int j = 0; j + 1 < size; j++) {
+                int horizontalPrice = 2 + (i + j) % 3;
+                transaction.addFare(new Fare(stationCode(i, j), stationCode(i, j + 1), horizontalPrice));
+                int verticalPrice = 2 + (j * 3 + i) % 4;
+                transaction.addFare(new Fare(stationCode(j, i), stationCode(j + 1, i), verticalPrice));
+            }
+        }
+        if (!transaction.commit()) {
+            throw new IllegalStateException("Failed to build benchmark network: " + transaction.getErrors());
+        }
+    }
+
+    static String stationCode(int row, int column) {
+        return String.format("%02d-%02d", row + 1, column + 1);
+    }
+
+    /**
+     * 随机起终点对（固定种子，起点与终点不同）
+     * @return [起点编码数组, 终点编码数组]
+     */
+    static String[][] randomPairs(int size, int count, long seed) {
+        Random random = new Random(seed);
+        String[] starts = new String[count];
+        String[] ends = new String[count];
+        for (int i = 0; i < count; i++) {
+            int from = random.nextInt(size * size);
+            int to;
+            do {
+                to = random.nextInt(size * size);
+            } while (to == from);
+            starts[i] = stationCode(from / size, from % size);
+            ends[i] = stationCode(to / size, to % size);
+        }
+        return new String[][]{starts, ends};
+    }
+}
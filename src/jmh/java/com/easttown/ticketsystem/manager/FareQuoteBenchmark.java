@@ -0,0 +1,69 @@
+package com.easttown.ticketsystem.manager;
+
+import com.easttown.ticketsystem.config.TicketSystemConfig;
+import com.easttown.ticketsystem.util.FareTrace;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 报价吞吐基准 - 票价跟踪日志关闭、采样与全部输出时每秒可计算的报价数
+ * 模组日志按src/jmh/resources/log4j2-test.xml以DEBUG级别写入build/jmh/ticketsystem-debug.log，
+ * 因此采样间隔大于0时跟踪日志确实会输出
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FareQuoteBenchmark {
+    private static final int GRID_SIZE = 30;
+    private static final int PAIRS = 1024;
+    private static final long MATRIX_TIMEOUT_MS = 60_000;
+
+    // fare_trace_sample_rate：0为关闭，1000为每1000次输出一次，1为每次都输出
+    @Param({"0", "1000", "1"})
+    public int traceSampleRate;
+
+    private File directory;
+    private String[] starts;
+    private String[] ends;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        BenchmarkNetworks.loadDefaultConfig();
+        // 报价走票价矩阵查询（服务器的正常路径）
+        TicketSystemConfig.FARE_MATRIX_ENABLED.set(true);
+        TicketSystemConfig.FARE_TRACE_SAMPLE_RATE.set(traceSampleRate);
+        FareTrace.refresh();
+        directory = BenchmarkNetworks.useTemporaryDirectory();
+        BenchmarkNetworks.buildGrid(GRID_SIZE);
+        String[][] pairs = BenchmarkNetworks.randomPairs(GRID_SIZE, PAIRS, 42);
+        starts = pairs[0];
+        ends = pairs[1];
+
+        // 等待后台票价矩阵计算完成
+        long deadline = System.currentTimeMillis() + MATRIX_TIMEOUT_MS;
+        while (FareMatrixService.getMatrix() == null) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Fare matrix not ready: " + FareMatrixService.getStatus());
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkNetworks.close(directory);
+    }
+
+    @Benchmark
+    public int quote() {
+        int i = next++ & (PAIRS - 1);
+        return PriceCalculator.calculatePrice(starts[i], ends[i]);
+    }
+}
@@ -0,0 +1,81 @@
+package com.easttown.ticketsystem.manager;
+
+import com.easttown.ticketsystem.config.TicketSystemConfig;
+import com.easttown.ticketsystem.util.FareTrace;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 长线路报价基准 - 票价矩阵关闭时，在99站的线路上报价，比较票价跟踪日志关闭、采样与全部输出时的吞吐
+ * calculateFare：FareCalculationEngine.calculateFare，同线报价走按线路缓存的前缀和；
+ * segmentFares：同一对车站逐段调用segFare累加（与validateFareData相同的逐段查询），
+ * 每段一到两次getFare，即带跟踪采样的票价查询热点
+ * 起终点在同一条横向线路上，分别位于线路的前四分之一与后四分之一，每次报价至少跨越一半的区间
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LineFareBenchmark {
+    private static final int GRID_SIZE = 99;
+    private static final int PAIRS = 256;
+
+    // fare_trace_sample_rate：0为关闭，1000为每1000次输出一次，1为每次都输出
+    @Param({"0", "1000", "1"})
+    public int traceSampleRate;
+
+    private File directory;
+    // 每对车站所在线路上从起点到终点的车站编码
+    private String[][] paths;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkNetworks.loadDefaultConfig();
+        TicketSystemConfig.FARE_TRACE_SAMPLE_RATE.set(traceSampleRate);
+        FareTrace.refresh();
+        directory = BenchmarkNetworks.useTemporaryDirectory();
+        BenchmarkNetworks.buildGrid(GRID_SIZE);
+
+        Random random = new Random(42);
+        paths = new String[PAIRS][];
+        int quarter = GRID_SIZE / 4;
+        for (int i = 0; i < PAIRS; i++) {
+            int row = random.nextInt(GRID_SIZE);
+            int from = random.nextInt(quarter);
+            int to = GRID_SIZE - 1 - random.nextInt(quarter);
+            String[] path = new String[to - from + 1];
+            for (int column = from; column <= to; column++) {
+                path[column - from] = BenchmarkNetworks.stationCode(row, column);
+            }
+            paths[i] = path;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkNetworks.close(directory);
+    }
+
+    @Benchmark
+    public int calculateFare() {
+        String[] path = paths[next++ & (PAIRS - 1)];
+        return FareCalculationEngine.calculateFare(path[0], path[path.length - 1]);
+    }
+
+    @Benchmark
+    public int segmentFares() {
+        String[] path = paths[next++ & (PAIRS - 1)];
+        int total = 0;
+        for (int i = 0; i + 1 < path.length; i++) {
+            total += FareCalculationEngine.segFare(path[i], path[i + 1], true);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,51 @@
+package com.easttown.ticketsystem.manager;
+
+import com.easttown.ticketsystem.config.TicketSystemConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 启动加载基准 - 比较从JSON分片与从二进制快照加载整个线路网的耗时
+ * 数据目录中同时保存了JSON分片与快照，format决定加载时是否使用快照（与binary_snapshot_enabled相同）
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NetworkLoadBenchmark {
+    // 30: 900个车站；90: 8100个车站、约3.2万条票价
+    @Param({"30", "90"})
+    public int gridSize;
+
+    @Param({"json", "binary"})
+    public String format;
+
+    private File directory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkNetworks.loadDefaultConfig();
+        // 写出时同时生成快照
+        TicketSystemConfig.BINARY_SNAPSHOT_ENABLED.set(true);
+        directory = BenchmarkNetworks.useTemporaryDirectory();
+        BenchmarkNetworks.buildGrid(gridSize);
+        NetworkManager.flush();
+        TicketSystemConfig.BINARY_SNAPSHOT_ENABLED.set(format.equals("binary"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkNetworks.close(directory);
+    }
+
+    @Benchmark
+    public int load() {
+        NetworkManager.reloadAll();
+        return NetworkManager.getState().getStations().size();
+    }
+}
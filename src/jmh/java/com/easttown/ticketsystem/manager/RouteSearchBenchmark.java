@@ -0,0 +1,79 @@
+package com.easttown.ticketsystem.manager;
+
+import com.easttown.ticketsystem.data.Route;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 路径搜索基准 - 比较k条最短路径、最少换乘与单次最低票价搜索的开销
+ * findAllRoutes与findMinTransferRoute原先直接返回findCheapestRoute，cheapestRoute即原实现的开销；
+ * k条路径应只比单次搜索多一个较小的常数倍，而不是k次完整搜索
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RouteSearchBenchmark {
+    private static final int PAIRS = 256;
+    private static final int ALTERNATIVES = 5;
+
+    @Param({"20", "50"})
+    public int gridSize;
+
+    private File directory;
+    private String[] starts;
+    private String[] ends;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkNetworks.loadDefaultConfig();
+        directory = BenchmarkNetworks.useTemporaryDirectory();
+        BenchmarkNetworks.buildGrid(gridSize);
+        String[][] pairs = BenchmarkNetworks.randomPairs(gridSize, PAIRS, 42);
+        starts = pairs[0];
+        ends = pairs[1];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkNetworks.close(directory);
+    }
+
+    @Benchmark
+    public Route cheapestRoute() {
+        int i = next++ & (PAIRS - 1);
+        return RouteCalculator.findCheapestRoute(starts[i], ends[i]);
+    }
+
+    @Benchmark
+    public List<Route> kShortestRoutes() {
+        int i = next++ & (PAIRS - 1);
+        return RouteCalculator.findAllRoutes(starts[i], ends[i], ALTERNATIVES);
+    }
+
+    /**
+     * 对照：k次独立的完整搜索（每条备选路径都从头搜索一次）的下限
+     */
+    @Benchmark
+    public Route repeatedCheapestRoute() {
+        int i = next++ & (PAIRS - 1);
+        Route route = null;
+        for (int k = 0; k < ALTERNATIVES; k++) {
+            route = RouteCalculator.findCheapestRoute(starts[i], ends[i]);
+        }
+        return route;
+    }
+
+    @Benchmark
+    public Route minTransferRoute() {
+        int i = next++ & (PAIRS - 1);
+        return RouteCalculator.findMinTransferRoute(starts[i], ends[i]);
+    }
+}
@@ -3,17 +3,24 @@ package com.easttown.ticketsystem;
 import com.easttown.ticketsystem.command.TicketCommand;
 import com.easttown.ticketsystem.config.TicketSystemConfig;
 import com.easttown.ticketsystem.init.*;
+import com.easttown.ticketsystem.manager.NetworkManager;
 import com.easttown.ticketsystem.network.NetworkHandler;
 import com.easttown.ticketsystem.util.EasterEggHandler;
+import com.easttown.ticketsystem.util.FareTrace;
+import com.easttown.ticketsystem.util.TicketSystemLogger;
 import com.easttown.ticketsystem.web.WebServer;
+import net.minecraft.world.level.storage.LevelResource;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.RegisterCommandsEvent;
 import net.minecraftforge.event.ServerChatEvent;
+import net.minecraftforge.event.server.ServerAboutToStartEvent;
+import net.minecraftforge.event.server.ServerStoppingEvent;
 import net.minecraftforge.eventbus.api.IEventBus;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.ModLoadingContext;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.config.ModConfig;
+import net.minecraftforge.fml.event.config.ModConfigEvent;
 import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
 import org.apache.logging.log4j.LogManager;
@@ -44,13 +51,14 @@ public class TicketSystemMod {
         TicketSystemTab.register(modEventBus);
 
         modEventBus.addListener(this::onCommonSetup);
+        modEventBus.addListener(this::onConfigChanged);
 
         MinecraftForge.EVENT_BUS.register(this);
 
         new File("mods/" + MODID).mkdirs();
 
         // 初始化日志系统
-        com.easttown.ticketsystem.util.TicketSystemLogger.initialize();
+        TicketSystemLogger.initialize();
 
         LOGGER.info("TicketSystem Mod initialized");
     }
@@ -73,12 +81,37 @@ public class TicketSystemMod {
         });
     }
     
+    private void onConfigChanged(final ModConfigEvent event) {
+        // 配置载入或在游戏中修改后刷新缓存的配置项
+        if (event.getConfig().getSpec() == TicketSystemConfig.SPEC) {
+            FareTrace.refresh();
+            TicketSystemLogger.refreshConfig();
+        }
+    }
+
     @SubscribeEvent
     public void onCommandRegister(RegisterCommandsEvent event) {
         TicketCommand.register(event.getDispatcher());
         LOGGER.info("Registered commands");
     }
 
+    @SubscribeEvent
+    public void onServerAboutToStart(ServerAboutToStartEvent event) {
+        // 车站/线路/票价数据保存在世界存档下，不同世界互不影响
+        File dataDirectory = event.getServer().getWorldPath(LevelResource.ROOT).resolve(MODID).toFile();
+        NetworkManager.setDataDirectory(dataDirectory);
+        LOGGER.info("Network data directory: {}", dataDirectory);
+    }
+
+    @SubscribeEvent
+    public void onServerStopping(ServerStoppingEvent event) {
+        // 停止监视数据目录，写出后台持久化队列中尚未保存的车站/线路/票价修改
+        NetworkManager.close();
+        LOGGER.info("Flushed pending network data");
+        // 等待车票日志写入文件
+        TicketSystemLogger.flush();
+    }
+
     @SubscribeEvent
     public void onServerChat(ServerChatEvent event) {
         String message = event.getRawText();
@@ -3,6 +3,7 @@ package com.easttown.ticketsystem.block;
 import com.easttown.ticketsystem.TicketSystemMod;
 import com.easttown.ticketsystem.init.BlockEntityInit;
 import com.easttown.ticketsystem.item.TicketItem;
+import com.easttown.ticketsystem.manager.TicketRegistry;
 import com.easttown.ticketsystem.screen.GateConfigMenu;
 import com.easttown.ticketsystem.util.GateUtil;
 import com.easttown.ticketsystem.util.TicketSystemLogger;
@@ -11,6 +12,8 @@ import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
 import net.minecraft.network.Connection;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.protocol.Packet;
@@ -29,6 +32,10 @@ import net.minecraft.world.phys.AABB;
 import net.minecraftforge.network.NetworkHooks;
 
 import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.UUID;
 
 public class GateBlockEntity extends BlockEntity implements MenuProvider {
@@ -40,20 +47,24 @@ public class GateBlockEntity extends BlockEntity implements MenuProvider {
     private int maxTravelMinutes = 1440; // 默认24小时
     private boolean destroyTicket = true;
     private boolean enabled = true; // 闸机是否启用
-    private Direction lastFacing = null;
 
     // 状态变量
     private long lastPassTime = 0;
-    private int cooldownTicks = 20; // 默认1秒冷却
+    private int cooldownTicks = DEFAULT_COOLDOWN_TICKS;
 
-    // 玩家通行管理
-    private UUID currentPlayerId; // 当前正在通过的玩家
-    private int timeoutTicks = 0; // 超时计时器（1分钟=1200 ticks）
-    private static final String GATE_TAG_PREFIX = "ticketsystem_gate_"; // 玩家标签前缀
+    // 玩家通行管理：在本闸机检票、尚未通过的玩家，按检票顺序排队
+    private final ArrayDeque<GatePassage> passages = new ArrayDeque<>();
+    private ListTag loadedPassages; // 存档中的通行，加载后重新登记
+    static final int DEFAULT_COOLDOWN_TICKS = 20; // 默认1秒冷却
+    static final int PASSAGE_TIMEOUT_TICKS = 1200; // 1分钟超时
+    static final int MAX_QUEUED_PASSAGES = 4; // 每条通道最多同时放行的玩家数
+    private static final int MAX_BANK_WIDTH = 16; // 闸机组中两台闸机的最大距离
 
     // AABB检测区域
     private AABB entryDetectionArea; // 入站检测面（正面）
     private AABB exitDetectionArea; // 出站检测面（背面）
+    private Direction detectionFacing; // 检测区域对应的朝向
+    private final Set<UUID> flaggedTailgaters = new HashSet<>(); // 本次放行中已提示过的尾随玩家，避免每tick重复提示
     private static final double DETECTION_THICKNESS = 0.1; // 检测面厚度
 
     public GateBlockEntity(BlockPos pos, BlockState state) {
@@ -83,15 +94,54 @@ public class GateBlockEntity extends BlockEntity implements MenuProvider {
     public void onLoad() {
         super.onLoad();
         updateDetectionAreas();
+        if (level instanceof ServerLevel) {
+            // 检测区域登记到所在维度的空间索引
+            GateMonitor.add(this);
+            if (loadedPassages != null) {
+                // 存档时有玩家正在通过，继续监视剩余的时间
+                for (int i = 0; i < loadedPassages.size(); i++) {
+                    CompoundTag passageTag = loadedPassages.getCompound(i);
+                    if (passageTag.hasUUID("Player")) {
+                        startPassage(passageTag.getUUID("Player"), Math.max(passageTag.getInt("TimeoutTicks"), 1));
+                    }
+                }
+            }
+        }
+        loadedPassages = null;
         TicketSystemMod.LOGGER.info("闸机方块实体加载完成，位置: {}", worldPosition);
     }
 
+    @Override
+    public void setRemoved() {
+        super.setRemoved();
+        if (level != null && !level.isClientSide) {
+            GateMonitor.remove(this);
+            // 通行已随存档保存，区块重新加载时由新的方块实体重新登记
+            for (GatePassage passage : passages) {
+                passage.finished = true;
+                GateMonitor.release(passage);
+            }
+            passages.clear();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void setBlockState(BlockState state) {
+        super.setBlockState(state);
+        // 开关闸机不改变检测区域，只有朝向变化时重新计算
+        if (level != null && state.getValue(GateBlock.FACING) != detectionFacing) {
+            updateDetectionAreas();
+        }
+    }
+
     // 更新检测区域
     private void updateDetectionAreas() {
         if (level == null)
             return;
 
         Direction facing = getBlockState().getValue(GateBlock.FACING);
+        detectionFacing = facing;
 
         // 创建入站检测面（正面）
         entryDetectionArea = createFacingAABB(worldPosition, facing, DETECTION_THICKNESS);
@@ -129,10 +179,16 @@ public class GateBlockEntity extends BlockEntity implements MenuProvider {
         if (!enabled || !(level instanceof ServerLevel serverLevel))
             return;
 
-        // 检查当前是否有玩家正在通过
-        if (currentPlayerId != null) {
+        // 玩家已经检票、尚未通过（重复右键）
+        if (GateMonitor.getPassage(serverLevel, player.getUUID()) != null) {
+            TicketSystemMod.LOGGER.debug("玩家 {} 已检票，等待通过", player.getName().getString());
+            return;
+        }
+
+        // 本通道排队的玩家已满
+        if (passages.size() >= MAX_QUEUED_PASSAGES) {
             player.displayClientMessage(Component.translatable("ticketsystem.gate.busy"), false);
-            TicketSystemMod.LOGGER.debug("闸机繁忙，已有玩家通过: {}", currentPlayerId);
+            TicketSystemMod.LOGGER.debug("闸机繁忙，已有 {} 名玩家等待通过", passages.size());
             return;
         }
 
@@ -143,16 +199,15 @@ public class GateBlockEntity extends BlockEntity implements MenuProvider {
         }
 
         ItemStack heldItem = player.getMainHandItem();
-        GatePassResult result = checkTicket(heldItem, player);
+        TicketRegistry registry = TicketRegistry.get(serverLevel);
+        GatePassResult result = checkTicket(heldItem, registry);
 
         if (result.success) {
             TicketSystemMod.LOGGER.info("玩家 {} 使用有效车票，准备通过闸机", player.getName().getString());
 
-            // 设置当前玩家和超时计时器
-            currentPlayerId = player.getUUID();
-            timeoutTicks = 1200; // 1分钟超时
-            player.addTag(getPlayerTag());
-            handleSuccess(player, heldItem);
+            // 登记通行，开始监视超时
+            startPassage(player.getUUID(), PASSAGE_TIMEOUT_TICKS);
+            handleSuccess(player, heldItem, registry);
         } else {
             TicketSystemMod.LOGGER.info("玩家 {} 车票无效: {}", player.getName().getString(), result.reason);
             handleFailure(player, result.reason);
@@ -161,96 +216,148 @@ public class GateBlockEntity extends BlockEntity implements MenuProvider {
         lastPassTime = serverLevel.getGameTime();
     }
 
-    private String getPlayerTag() {
-        return GATE_TAG_PREFIX + gateId;
+    // 登记通行，ticks后超时
+    private void startPassage(UUID playerId, int ticks) {
+        if (passages.isEmpty()) {
+            flaggedTailgaters.clear();
+        }
+        GatePassage passage = new GatePassage(playerId, this, level.getGameTime() + ticks);
+        passages.addLast(passage);
+        GateMonitor.watch(passage);
+    }
+
+    // 结束通行
+    private void finishPassage(GatePassage passage) {
+        passage.finished = true;
+        passages.remove(passage);
+        GateMonitor.release(passage);
     }
 
+    // 结束全部通行（闸机被禁用）
     private void resetGate() {
-        if (currentPlayerId != null) {
-            Player player = level.getPlayerByUUID(currentPlayerId);
-            if (player != null) {
-                player.removeTag(getPlayerTag());
-                TicketSystemMod.LOGGER.debug("移除玩家标签: {}", player.getName().getString());
-            }
-            currentPlayerId = null;
+        for (GatePassage passage : new ArrayList<>(passages)) {
+            finishPassage(passage);
         }
-        timeoutTicks = 0;
+        flaggedTailgaters.clear();
     }
 
-    public static void tick(Level level, BlockPos pos, BlockState state, GateBlockEntity gate) {
-        if (level.isClientSide || !gate.enabled)
+    // 通行到达超时时间（由GateMonitor调用）
+    void onPassageTimeout(GatePassage passage, long gameTime) {
+        if (passage.finished || gameTime < passage.timeoutAt)
             return;
 
-        // 更新检测区域
-        Direction currentFacing = state.getValue(GateBlock.FACING);
-        if (gate.lastFacing != currentFacing) {
-            gate.lastFacing = currentFacing;
-            gate.updateDetectionAreas();
-
-        }
-
-        // 处理超时
-        if (gate.timeoutTicks > 0) {
-            gate.timeoutTicks--;
-            if (gate.timeoutTicks <= 0) {
-                // 超时，重置闸机并关闭门
-                gate.resetGate();
-                if (state.getValue(GateBlock.OPEN)) {
-                    level.setBlock(pos, state.setValue(GateBlock.OPEN, false), 3);
-                    TicketSystemMod.LOGGER.info("超时关闭闸机: {}", pos);
-                }
-            }
+        finishPassage(passage);
+        // 没有其他玩家等待通过时关闭闸机
+        BlockState state = getBlockState();
+        if (passages.isEmpty() && state.getValue(GateBlock.OPEN)) {
+            level.setBlock(worldPosition, state.setValue(GateBlock.OPEN, false), 3);
+            TicketSystemMod.LOGGER.info("超时关闭闸机: {}", worldPosition);
         }
+    }
 
-        // 检测玩家位置
-        if (gate.currentPlayerId != null) {
-            Player player = level.getPlayerByUUID(gate.currentPlayerId);
-            if (player == null) {
-                // 玩家不在线，重置
-                gate.resetGate();
-                TicketSystemMod.LOGGER.debug("玩家离线，重置闸机");
-                return;
-            }
+    // 正在通过的玩家离开（下线、切换维度或重新登记通行），取消其通行
+    void abandonPassage(GatePassage passage) {
+        finishPassage(passage);
+        closeGate();
+    }
 
-            // 使用AABB检测区域
-            gate.checkDetectionAreas(player);
+    // 玩家从闸机组中的某个通道走出，完成在本闸机登记的通行
+    private void completePassage(GatePassage passage, Player player) {
+        finishPassage(passage);
+        if (passages.isEmpty()) {
+            // 延迟0.1秒关闭闸机
+            level.scheduleTick(worldPosition, getBlockState().getBlock(), 2, TickPriority.HIGH);
+            TicketSystemMod.LOGGER.info("玩家 {} 通过闸机，闸机将在0.1秒后关闭", player.getName().getString());
+        } else {
+            TicketSystemMod.LOGGER.info("玩家 {} 通过闸机，还有 {} 名玩家等待通过", player.getName().getString(), passages.size());
         }
     }
 
-    private void checkDetectionAreas(Player player) {
-        if (player == null || level == null)
+    // 检查玩家是否接触检测面（玩家每次tick由GateMonitor按空间索引调用，只涉及玩家附近的闸机）
+    void checkDetectionAreas(Player player, AABB playerBox) {
+        if (level == null)
             return;
 
+        // 没有放行且已关闭的闸机无需检查
+        if (passages.isEmpty() && !getBlockState().getValue(GateBlock.OPEN))
+            return;
+
+        boolean atEntry = entryDetectionArea != null && playerBox.intersects(entryDetectionArea);
+        boolean atExit = exitDetectionArea != null && playerBox.intersects(exitDetectionArea);
+        if (!atEntry && !atExit)
+            return;
+
+        // 通行按玩家登记：在同一闸机组任何通道检票的玩家都可以从本通道通过
+        GatePassage passage = GateMonitor.getPassage(level, player.getUUID());
+        boolean passenger = passage != null && isSameBank(passage.lane);
+
         // 检测入站面（正面）
-        if (entryDetectionArea != null && player.getBoundingBox().intersects(entryDetectionArea)) {
+        if (atEntry) {
             TicketSystemMod.LOGGER.debug("玩家 {} 接触入站检测面", player.getName().getString());
-
-            if (!player.getTags().contains(getPlayerTag())) {
-                // 非法闯入，关闭闸机并重置
+            if (!passenger && passages.isEmpty()) {
+                // 本通道没有等待通过的玩家（通过后尚未关闭）：非法闯入，关闭闸机并重置
                 level.setBlock(worldPosition, getBlockState().setValue(GateBlock.OPEN, false), 3);
                 resetGate();
                 handleFailure(player, "ticketsystem.gate.illegal_entry");
-                TicketSystemMod.LOGGER.info("非法闯入! 玩家 {} 没有有效标签", player.getName().getString());
+                TicketSystemMod.LOGGER.info("非法闯入! 玩家 {} 没有有效通行", player.getName().getString());
+                return;
+            }
+            if (!passenger) {
+                // 本通道正在放行其他玩家时没有检票的玩家进入：尾随进站（不关闭闸机，以免拦住已检票的玩家）
+                handleTailgating(player);
             }
         }
 
         // 检测出站面（背面）
-        if (exitDetectionArea != null && player.getBoundingBox().intersects(exitDetectionArea)) {
+        if (atExit && passenger) {
             TicketSystemMod.LOGGER.debug("玩家 {} 接触出站检测面", player.getName().getString());
-
             // 完成通过
-            player.removeTag(getPlayerTag());
-            resetGate();
+            passage.lane.completePassage(passage, player);
+        }
+    }
 
-            // 延迟0.1秒关闭闸机
-            level.scheduleTick(worldPosition, getBlockState().getBlock(), 2, TickPriority.HIGH);
-            TicketSystemMod.LOGGER.info("玩家 {} 通过闸机，闸机将在0.1秒后关闭", player.getName().getString());
+    // 判断另一台闸机是否与本闸机属于同一闸机组：
+    // 同一车站、同一朝向、同一高度，沿垂直于朝向的方向排成一排且中间都是同组闸机
+    boolean isSameBank(GateBlockEntity other) {
+        if (other == this)
+            return true;
+        if (other.level != level || other.isRemoved() || stationId.isEmpty() || !isBankMember(other))
+            return false;
+
+        Direction.Axis laneAxis = getBlockState().getValue(GateBlock.FACING).getClockWise().getAxis();
+        BlockPos otherPos = other.worldPosition;
+        int along = laneAxis == Direction.Axis.X ? otherPos.getX() - worldPosition.getX() : otherPos.getZ() - worldPosition.getZ();
+        int across = laneAxis == Direction.Axis.X ? otherPos.getZ() - worldPosition.getZ() : otherPos.getX() - worldPosition.getX();
+        if (otherPos.getY() != worldPosition.getY() || across != 0 || Math.abs(along) > MAX_BANK_WIDTH)
+            return false;
+
+        int step = along > 0 ? 1 : -1;
+        for (int offset = step; offset != along; offset += step) {
+            if (!(level.getBlockEntity(worldPosition.relative(laneAxis, offset)) instanceof GateBlockEntity between)
+                    || !isBankMember(between))
+                return false;
         }
+        return true;
+    }
+
+    private boolean isBankMember(GateBlockEntity other) {
+        return stationId.equals(other.stationId)
+                && getBlockState().getValue(GateBlock.FACING) == other.getBlockState().getValue(GateBlock.FACING);
+    }
+
+    // 尾随进站：提示玩家并记录日志（每次放行中每个玩家只提示一次）
+    private void handleTailgating(Player player) {
+        if (!flaggedTailgaters.add(player.getUUID()))
+            return;
+
+        handleFailure(player, "ticketsystem.gate.tailgating");
+        TicketSystemMod.LOGGER.info("尾随进站! 玩家 {} 跟随通过闸机 {}", player.getName().getString(), gateId);
     }
 
     // 处理闸机关闭
     public void closeGate() {
-        if (level != null && !level.isClientSide) {
+        // 还有玩家等待通过时保持开启
+        if (level != null && !level.isClientSide && passages.isEmpty()) {
             BlockState state = getBlockState();
             if (state.getValue(GateBlock.OPEN)) {
                 level.setBlock(worldPosition, state.setValue(GateBlock.OPEN, false), 3);
@@ -259,7 +366,7 @@ public class GateBlockEntity extends BlockEntity implements MenuProvider {
         }
     }
 
-    private GatePassResult checkTicket(ItemStack ticketStack, Player player) {
+    private GatePassResult checkTicket(ItemStack ticketStack, TicketRegistry registry) {
         if (ticketStack.isEmpty() || !(ticketStack.getItem() instanceof TicketItem)) {
             return new GatePassResult(false, "ticketsystem.gate.no_ticket");
         }
@@ -269,17 +376,27 @@ public class GateBlockEntity extends BlockEntity implements MenuProvider {
             return new GatePassResult(false, "ticketsystem.gate.invalid_ticket");
         }
 
-        // 1. 检查车票ID
-        UUID ticketId = GateUtil.getTicketId(ticketTag);
-        if (ticketId == null) {
+        // 1. 检查车票ID（旧车票只有字符串ID，第一次检票时补写两个long）
+        if (!GateUtil.ensureTicketKey(ticketTag)) {
             return new GatePassResult(false, "ticketsystem.gate.invalid_ticket");
         }
 
-        // 4. 获取车票状态
-        String status = ticketTag.getString("Status");
-        long issueTime = ticketTag.getLong("IssueTime");
-        String startStation = ticketTag.getString("StartStation");
-        String endStation = ticketTag.getString("Destination");
+        // 2. 在服务器登记中查找车票，未登记的车票无效
+        int slot = registry.findOrAdopt(GateUtil.getTicketIdMost(ticketTag), GateUtil.getTicketIdLeast(ticketTag), ticketTag);
+        if (slot < 0) {
+            return new GatePassResult(false, "ticketsystem.gate.invalid_ticket");
+        }
+
+        // 3. 物品上的状态与登记不一致：复制出的副本或已退票的车票
+        String status = TicketRegistry.statusName(registry.getState(slot));
+        if (!status.equals(ticketTag.getString("Status"))) {
+            return new GatePassResult(false, "ticketsystem.gate.duplicate_ticket");
+        }
+
+        // 4. 发售时间与起终点以登记为准
+        long issueTime = registry.getIssueTime(slot);
+        String startStation = registry.getStartStation(slot);
+        String endStation = registry.getDestination(slot);
 
         long currentTime = System.currentTimeMillis();
         long travelTimeMinutes = (currentTime - issueTime) / 60000;
@@ -364,15 +481,18 @@ public class GateBlockEntity extends BlockEntity implements MenuProvider {
         return new GatePassResult(false, "ticketsystem.gate.invalid_status");
     }
 
-    private void handleSuccess(Player player, ItemStack ticketStack) {
+    private void handleSuccess(Player player, ItemStack ticketStack, TicketRegistry registry) {
         // 设置闸机为开启状态
         BlockState state = getBlockState();
-        if (state.getValue(GateBlock.OPEN)) {
-            // 如果已经是开启状态，先关闭再打开，确保动画播放
-            level.setBlock(worldPosition, state.setValue(GateBlock.OPEN, false), 3);
+        if (passages.size() <= 1) {
+            if (state.getValue(GateBlock.OPEN)) {
+                // 如果已经是开启状态，先关闭再打开，确保动画播放
+                level.setBlock(worldPosition, state.setValue(GateBlock.OPEN, false), 3);
+            }
+            level.setBlock(worldPosition, state.setValue(GateBlock.OPEN, true), 3);
+            TicketSystemMod.LOGGER.info("闸机开启: {}", worldPosition);
         }
-        level.setBlock(worldPosition, state.setValue(GateBlock.OPEN, true), 3);
-        TicketSystemMod.LOGGER.info("闸机开启: {}", worldPosition);
+        // 已有玩家在本通道等待通过时闸机保持开启
 
         // 处理车票
         CompoundTag ticketTag = ticketStack.getOrCreateTag();
@@ -380,6 +500,8 @@ public class GateBlockEntity extends BlockEntity implements MenuProvider {
                 (gateType == GateType.BIDIRECTIONAL && ticketTag.getString("Status").equals(TicketItem.UNUSED));
 
         String ticketId = ticketTag.getString("TicketId");
+        long idMost = GateUtil.getTicketIdMost(ticketTag);
+        long idLeast = GateUtil.getTicketIdLeast(ticketTag);
         String station = stationId;
         String gateTypeStr = gateType.name();
 
@@ -387,6 +509,7 @@ public class GateBlockEntity extends BlockEntity implements MenuProvider {
             // 入站处理 - 更新车票状态（注意：旅行计时在通过闸机后才开始）
             ticketTag.putString("Status", TicketItem.IN_USE);
             ticketTag.putString("EntryGate", gateId);
+            registry.setState(idMost, idLeast, TicketRegistry.IN_USE);
 
             // 记录入站成功日志
             TicketSystemLogger.logGatePassage(player, station, ticketId, true, "入站成功", gateTypeStr);
@@ -395,6 +518,7 @@ public class GateBlockEntity extends BlockEntity implements MenuProvider {
             ticketTag.putString("Status", TicketItem.COMPLETED);
             ticketTag.putString("ExitGate", gateId);
             ticketTag.putLong("ExitTime", System.currentTimeMillis());
+            registry.setState(idMost, idLeast, TicketRegistry.COMPLETED);
 
             // 是否销毁车票
             if (destroyTicket) {
@@ -431,6 +555,10 @@ public class GateBlockEntity extends BlockEntity implements MenuProvider {
                 return "车票状态无效";
             case "ticketsystem.gate.illegal_entry":
                 return "非法闯入";
+            case "ticketsystem.gate.duplicate_ticket":
+                return "车票副本";
+            case "ticketsystem.gate.tailgating":
+                return "尾随进站";
             default:
                 return "未知原因";
         }
@@ -446,10 +574,15 @@ public class GateBlockEntity extends BlockEntity implements MenuProvider {
         tag.putInt("MaxTravelMinutes", maxTravelMinutes);
         tag.putBoolean("DestroyTicket", destroyTicket);
         tag.putBoolean("Enabled", enabled);
-        if (currentPlayerId != null) {
-            tag.putUUID("CurrentPlayer", currentPlayerId);
+        ListTag passageList = new ListTag();
+        long gameTime = level != null ? level.getGameTime() : 0;
+        for (GatePassage passage : passages) {
+            CompoundTag passageTag = new CompoundTag();
+            passageTag.putUUID("Player", passage.playerId);
+            passageTag.putInt("TimeoutTicks", (int) Math.max(0, passage.timeoutAt - gameTime));
+            passageList.add(passageTag);
         }
-        tag.putInt("TimeoutTicks", timeoutTicks);
+        tag.put("Passages", passageList);
     }
 
     @Override
@@ -462,10 +595,14 @@ public class GateBlockEntity extends BlockEntity implements MenuProvider {
         maxTravelMinutes = tag.getInt("MaxTravelMinutes");
         destroyTicket = tag.getBoolean("DestroyTicket");
         enabled = tag.getBoolean("Enabled");
+        loadedPassages = tag.getList("Passages", Tag.TAG_COMPOUND);
         if (tag.hasUUID("CurrentPlayer")) {
-            currentPlayerId = tag.getUUID("CurrentPlayer");
+            // 旧存档只记录一名正在通过的玩家
+            CompoundTag passageTag = new CompoundTag();
+            passageTag.putUUID("Player", tag.getUUID("CurrentPlayer"));
+            passageTag.putInt("TimeoutTicks", tag.getInt("TimeoutTicks"));
+            loadedPassages.add(passageTag);
         }
-        timeoutTicks = tag.getInt("TimeoutTicks");
     }
 
     @Override
@@ -566,6 +703,10 @@ public class GateBlockEntity extends BlockEntity implements MenuProvider {
 
     public void setEnabled(boolean enabled) {
         this.enabled = enabled;
+        if (!enabled && !passages.isEmpty() && level != null && !level.isClientSide) {
+            resetGate();
+            closeGate();
+        }
         setChanged();
         if (level != null) {
             level.sendBlockUpdated(worldPosition, getBlockState(), getBlockState(), 3);
@@ -0,0 +1,185 @@
+package com.easttown.ticketsystem.block;
+
+import com.easttown.ticketsystem.TicketSystemMod;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.phys.AABB;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.event.level.LevelEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.LogicalSide;
+import net.minecraftforge.fml.common.Mod;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * 闸机监视 - 闸机没有方块实体tick，空闲时不占用任何服务器时间，只在以下情况被唤醒：
+ * 玩家右键闸机（GateBlock.use）、玩家进入闸机检测区域、到达预定的超时时间
+ * 每个维度一份：所有已加载闸机的检测区域空间索引，以及按玩家登记的通行
+ * 所有方法都在服务器主线程调用，不需要加锁
+ */
+@Mod.EventBusSubscriber(modid = TicketSystemMod.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public final class GateMonitor {
+    private static final Map<Level, LevelGates> LEVELS = new IdentityHashMap<>();
+
+    /**
+     * 一个维度中的闸机
+     */
+    private static final class LevelGates {
+        // 所有已加载闸机，玩家每次tick只检查附近区块段中的闸机
+        final GateSpatialIndex<GateBlockEntity> index = new GateSpatialIndex<>();
+        // 正在通过的玩家 -> 其通行（闸机组中的多个通道可以同时放行不同的玩家），超时由时间轮驱动
+        final GatePassageTable passages = new GatePassageTable();
+    }
+
+    // 旧版本在玩家身上用记分板标签记录通行
+    private static final String LEGACY_TAG_PREFIX = "ticketsystem_gate_";
+
+    private GateMonitor() {
+    }
+
+    /**
+     * 闸机加载后登记检测区域
+     */
+    static void add(GateBlockEntity gate) {
+        LEVELS.computeIfAbsent(gate.getLevel(), level -> new LevelGates()).index.add(gate, gate.getBlockPos());
+    }
+
+    /**
+     * 闸机被移除或区块卸载，从索引中移除
+     */
+    static void remove(GateBlockEntity gate) {
+        LevelGates gates = LEVELS.get(gate.getLevel());
+        if (gates != null) {
+            gates.index.remove(gate, gate.getBlockPos());
+        }
+    }
+
+    /**
+     * 登记通行，到超时时间唤醒其闸机
+     */
+    static void watch(GatePassage passage) {
+        LevelGates gates = LEVELS.computeIfAbsent(passage.lane.getLevel(), level -> new LevelGates());
+        GatePassage previous = gates.passages.put(passage);
+        if (previous != null && !previous.finished) {
+            // 同一玩家同时只有一次通行，旧的通行直接放弃
+            previous.lane.abandonPassage(previous);
+        }
+    }
+
+    /**
+     * 通行结束（通过、超时、放弃或闸机被移除）
+     */
+    static void release(GatePassage passage) {
+        LevelGates gates = LEVELS.get(passage.lane.getLevel());
+        if (gates != null) {
+            gates.passages.remove(passage);
+        }
+    }
+
+    /**
+     * 玩家在该维度中尚未结束的通行
+     */
+    @Nullable
+    static GatePassage getPassage(Level level, UUID playerId) {
+        LevelGates gates = LEVELS.get(level);
+        return gates == null ? null : gates.passages.get(playerId);
+    }
+
+    /**
+     * 正在进行的通行数（所有维度）
+     */
+    public static int getActivePassageCount() {
+        int count = 0;
+        for (LevelGates gates : LEVELS.values()) {
+            count += gates.passages.size();
+        }
+        return count;
+    }
+
+    /**
+     * 已登记检测区域的闸机数（所有维度）
+     */
+    public static int getLoadedGateCount() {
+        int count = 0;
+        for (LevelGates gates : LEVELS.values()) {
+            count += gates.index.size();
+        }
+        return count;
+    }
+
+    @SubscribeEvent
+    public static void onPlayerTick(TickEvent.PlayerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || event.side != LogicalSide.SERVER) {
+            return;
+        }
+        LevelGates gates = LEVELS.get(event.player.level());
+        if (gates == null || gates.index.isEmpty() || event.player.isSpectator()) {
+            return;
+        }
+        Player player = event.player;
+        AABB box = player.getBoundingBox();
+        // 检查过程中闸机可能复位，但不会加入或移出索引
+        gates.index.forEachNear(box, gate -> gate.checkDetectionAreas(player, box));
+    }
+
+    @SubscribeEvent
+    public static void onLevelTick(TickEvent.LevelTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || event.side != LogicalSide.SERVER) {
+            return;
+        }
+        LevelGates gates = LEVELS.get(event.level);
+        if (gates == null) {
+            return;
+        }
+        long now = event.level.getGameTime();
+        for (GatePassage passage : gates.passages.advance(now)) {
+            if (!passage.finished && !passage.lane.isRemoved()) {
+                passage.lane.onPassageTimeout(passage, now);
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
+        // 清除旧版本留在玩家数据中的通行标签
+        Player player = event.getEntity();
+        for (String tag : new ArrayList<>(player.getTags())) {
+            if (tag.startsWith(LEGACY_TAG_PREFIX)) {
+                player.removeTag(tag);
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        abandon(event.getEntity(), event.getEntity().level());
+    }
+
+    @SubscribeEvent
+    public static void onPlayerChangedDimension(PlayerEvent.PlayerChangedDimensionEvent event) {
+        Level from = event.getEntity().getServer() == null ? null : event.getEntity().getServer().getLevel(event.getFrom());
+        if (from != null) {
+            abandon(event.getEntity(), from);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onLevelUnload(LevelEvent.Unload event) {
+        LEVELS.remove(event.getLevel());
+    }
+
+    /**
+     * 正在通过的玩家离开（下线或切换维度），取消其通行
+     */
+    private static void abandon(Player player, Level level) {
+        LevelGates gates = LEVELS.get(level);
+        GatePassage passage = gates == null ? null : gates.passages.get(player.getUUID());
+        if (passage != null) {
+            passage.lane.abandonPassage(passage);
+            TicketSystemMod.LOGGER.debug("玩家 {} 离开，取消闸机 {} 的通行", player.getName().getString(), passage.lane.getGateId());
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.easttown.ticketsystem.block;
+
+import java.util.UUID;
+
+/**
+ * 一次通行 - 玩家在某台闸机检票成功后、走出出站检测面之前的状态
+ * 按玩家登记（同一维度中每名玩家最多一次），玩家可以从同一闸机组中任何开启的通道通过
+ */
+final class GatePassage {
+    final UUID playerId;
+    // 检票的闸机（通道），通行结束前保持开启
+    final GateBlockEntity lane;
+    // 超时的游戏时间
+    final long timeoutAt;
+    // 已通过、超时或被放弃
+    boolean finished;
+
+    GatePassage(UUID playerId, GateBlockEntity lane, long timeoutAt) {
+        this.playerId = playerId;
+        this.lane = lane;
+        this.timeoutAt = timeoutAt;
+    }
+}
@@ -0,0 +1,102 @@
+package com.easttown.ticketsystem.block;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 通行会话表 - 一个维度中正在进行的通行，按玩家登记（通行记录了检票的闸机），只保存在内存中
+ * 超时由时间轮驱动：通行按超时的游戏时间放入对应的槽，每tick只检查当前的一个槽；
+ * 超时时间超过一圈的通行留在槽中，下一次转到时再判断。已结束的通行不立即从槽中删除，转到时清理
+ */
+final class GatePassageTable {
+    // 时间轮槽数（2的幂），每个槽对应一个tick
+    private static final int WHEEL_SIZE = 256;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private final Map<UUID, GatePassage> byPlayer = new HashMap<>();
+    // 槽在第一次使用时创建
+    @SuppressWarnings("unchecked")
+    private final List<GatePassage>[] wheel = new List[WHEEL_SIZE];
+    // 时间轮中的条目数（包括已结束但尚未清理的）
+    private int scheduled;
+    // 上一次推进到的游戏时间
+    private long currentTick = -1;
+    // 本次推进中到期的通行，复用以免每tick分配
+    private final List<GatePassage> expired = new ArrayList<>();
+
+    /**
+     * 登记通行
+     * @return 该玩家之前尚未结束的通行，没有时返回null
+     */
+    @Nullable
+    GatePassage put(GatePassage passage) {
+        GatePassage previous = byPlayer.put(passage.playerId, passage);
+        // 已经错过的超时时间放到下一个tick处理
+        long tick = currentTick >= 0 ? Math.max(passage.timeoutAt, currentTick + 1) : passage.timeoutAt;
+        int slot = (int) (tick & WHEEL_MASK);
+        if (wheel[slot] == null) {
+            wheel[slot] = new ArrayList<>(4);
+        }
+        wheel[slot].add(passage);
+        scheduled++;
+        return previous == passage ? null : previous;
+    }
+
+    @Nullable
+    GatePassage get(UUID playerId) {
+        return byPlayer.get(playerId);
+    }
+
+    /**
+     * 移除通行（时间轮中的条目在转到时清理）
+     */
+    void remove(GatePassage passage) {
+        byPlayer.remove(passage.playerId, passage);
+    }
+
+    int size() {
+        return byPlayer.size();
+    }
+
+    /**
+     * 推进时间轮到gameTime，返回到期且尚未结束的通行（列表在下一次推进时复用）
+     */
+    List<GatePassage> advance(long gameTime) {
+        expired.clear();
+        if (scheduled == 0 || currentTick < 0) {
+            currentTick = gameTime;
+            if (scheduled == 0) {
+                return expired;
+            }
+        }
+        // 一次跳过超过一圈时（例如服务器卡顿后追赶）所有槽都检查一遍
+        long from = Math.max(currentTick + 1, gameTime - WHEEL_MASK);
+        if (from > gameTime) {
+            from = gameTime;
+        }
+        for (long tick = from; tick <= gameTime; tick++) {
+            List<GatePassage> slot = wheel[(int) (tick & WHEEL_MASK)];
+            if (slot == null) {
+                continue;
+            }
+            for (int i = slot.size() - 1; i >= 0; i--) {
+                GatePassage passage = slot.get(i);
+                if (passage.finished || passage.timeoutAt <= gameTime) {
+                    // 用最后一个条目填补当前位置
+                    slot.set(i, slot.get(slot.size() - 1));
+                    slot.remove(slot.size() - 1);
+                    scheduled--;
+                    if (!passage.finished) {
+                        expired.add(passage);
+                    }
+                }
+            }
+        }
+        currentTick = gameTime;
+        return expired;
+    }
+}
@@ -0,0 +1,80 @@
+package com.easttown.ticketsystem.block;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.util.Mth;
+import net.minecraft.world.phys.AABB;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 闸机检测区域的空间索引 - 一个维度中所有已加载的闸机按所在区块段（16x16x16）分桶
+ * 闸机的检测面都在闸机方块之内，玩家移动时只需检查其碰撞箱覆盖的区块段（通常只有1个，最多8个），
+ * 检查开销与闸机总数无关。按闸机类型泛型，便于不依赖世界单独测量
+ */
+final class GateSpatialIndex<T> {
+    // 区块段坐标 -> 该区块段中的闸机
+    private final Map<Long, List<T>> sections = new HashMap<>();
+    private int size;
+
+    void add(T gate, BlockPos pos) {
+        List<T> gates = sections.computeIfAbsent(sectionKey(pos), key -> new ArrayList<>(2));
+        if (!gates.contains(gate)) {
+            gates.add(gate);
+            size++;
+        }
+    }
+
+    void remove(T gate, BlockPos pos) {
+        long key = sectionKey(pos);
+        List<T> gates = sections.get(key);
+        if (gates != null && gates.remove(gate)) {
+            size--;
+            if (gates.isEmpty()) {
+                sections.remove(key);
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 对碰撞箱覆盖的区块段中的每台闸机执行action
+     */
+    void forEachNear(AABB box, Consumer<? super T> action) {
+        int minX = SectionPos.blockToSectionCoord(Mth.floor(box.minX));
+        int minY = SectionPos.blockToSectionCoord(Mth.floor(box.minY));
+        int minZ = SectionPos.blockToSectionCoord(Mth.floor(box.minZ));
+        int maxX = SectionPos.blockToSectionCoord(Mth.floor(box.maxX));
+        int maxY = SectionPos.blockToSectionCoord(Mth.floor(box.maxY));
+        int maxZ = SectionPos.blockToSectionCoord(Mth.floor(box.maxZ));
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    List<T> gates = sections.get(SectionPos.asLong(x, y, z));
+                    if (gates != null) {
+                        // action不能加入或移出索引
+                        for (int i = 0; i < gates.size(); i++) {
+                            action.accept(gates.get(i));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static long sectionKey(BlockPos pos) {
+        return SectionPos.asLong(SectionPos.blockToSectionCoord(pos.getX()),
+                SectionPos.blockToSectionCoord(pos.getY()), SectionPos.blockToSectionCoord(pos.getZ()));
+    }
+}
@@ -6,6 +6,8 @@ import com.easttown.ticketsystem.init.ItemInit;
 import com.easttown.ticketsystem.item.TicketItem;
 import com.easttown.ticketsystem.TicketSystemMod;
 import com.easttown.ticketsystem.manager.CoinSystem;
+import com.easttown.ticketsystem.manager.TicketRegistry;
+import com.easttown.ticketsystem.util.GateUtil;
 import com.easttown.ticketsystem.util.LanguageHelper;
 import com.easttown.ticketsystem.util.TicketSystemLogger;
 import net.minecraft.core.BlockPos;
@@ -16,6 +18,7 @@ import net.minecraft.network.Connection;
 import net.minecraft.network.protocol.Packet;
 import net.minecraft.network.protocol.game.ClientGamePacketListener;
 import net.minecraft.network.protocol.game.ClientboundBlockEntityDataPacket;
+import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.Containers;
 import net.minecraft.world.MenuProvider;
 import net.minecraft.world.SimpleContainer;
@@ -755,6 +758,18 @@ public class ReissueMachineBlockEntity extends BlockEntity implements MenuProvid
             return RefundResult.INVALID_TICKET;
         }
 
+        // 以服务器登记为准：未登记、已使用或已退票的车票（包括复制出的副本）不能退票
+        TicketRegistry registry = null;
+        if (level instanceof ServerLevel serverLevel) {
+            registry = TicketRegistry.get(serverLevel);
+            int slot = GateUtil.ensureTicketKey(tag)
+                    ? registry.findOrAdopt(GateUtil.getTicketIdMost(tag), GateUtil.getTicketIdLeast(tag), tag) : -1;
+            if (slot < 0 || registry.getState(slot) != TicketRegistry.UNUSED) {
+                TicketSystemLogger.logWarning(TicketSystemLogger.LogType.REFUND, "退票失败 - 车票未登记或已使用，玩家: " + player.getName().getString());
+                return RefundResult.INVALID_TICKET;
+            }
+        }
+
         // 获取车票价格和购买时间
         int price = tag.getInt("Price");
         long issueTime = tag.getLong("IssueTime");
@@ -804,6 +819,9 @@ public class ReissueMachineBlockEntity extends BlockEntity implements MenuProvid
         }
 
         // 销毁车票
+        if (registry != null) {
+            registry.setState(GateUtil.getTicketIdMost(tag), GateUtil.getTicketIdLeast(tag), TicketRegistry.REFUNDED);
+        }
         itemHandler.setStackInSlot(0, ItemStack.EMPTY);
 
         // 将硬币放入输出槽，多余的放入玩家物品栏
@@ -6,7 +6,9 @@ import com.easttown.ticketsystem.init.ItemInit;
 import com.easttown.ticketsystem.init.MenuInit;
 import com.easttown.ticketsystem.manager.CoinSystem;
 import com.easttown.ticketsystem.manager.PriceCalculator;
+import com.easttown.ticketsystem.manager.TicketRegistry;
 import com.easttown.ticketsystem.screen.TicketMachineMenu;
+import com.easttown.ticketsystem.util.GateUtil;
 import com.easttown.ticketsystem.util.TicketSystemLogger;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
@@ -16,6 +18,7 @@ import net.minecraft.network.chat.Component;
 import net.minecraft.network.protocol.Packet;
 import net.minecraft.network.protocol.game.ClientGamePacketListener;
 import net.minecraft.network.protocol.game.ClientboundBlockEntityDataPacket;
+import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.Containers;
 import net.minecraft.world.MenuProvider;
 import net.minecraft.world.SimpleContainer;
@@ -172,10 +175,11 @@ public class TicketMachineBlockEntity extends BlockEntity implements MenuProvide
         CompoundTag tag = new CompoundTag();
 
         // 添加车票详细信息
-        String ticketId = UUID.randomUUID().toString();
+        UUID ticketUuid = UUID.randomUUID();
+        String ticketId = ticketUuid.toString();
         int price = PriceCalculator.calculatePrice(startStation, destination);
 
-        tag.putString("TicketId", ticketId);
+        GateUtil.putTicketId(tag, ticketUuid);
         tag.putString("StartStation", startStation);
         tag.putString("Destination", destination);
         tag.putLong("IssueTime", System.currentTimeMillis());
@@ -184,6 +188,11 @@ public class TicketMachineBlockEntity extends BlockEntity implements MenuProvide
 
         ticket.setTag(tag);
 
+        // 在服务器登记车票，闸机以登记为准检票
+        if (level instanceof ServerLevel serverLevel) {
+            TicketRegistry.get(serverLevel).issue(tag);
+        }
+
         itemHandler.setStackInSlot(0, ticket);
         setChanged();
 
@@ -1,6 +1,8 @@
 package com.easttown.ticketsystem.command;
 
 import com.easttown.ticketsystem.config.TicketSystemConfig;
+import com.easttown.ticketsystem.manager.NetworkDiff;
+import com.easttown.ticketsystem.manager.NetworkManager;
 import com.easttown.ticketsystem.manager.StationManager;
 import com.easttown.ticketsystem.util.DebugLogger;
 import com.mojang.brigadier.Command;
@@ -10,7 +12,34 @@ import net.minecraft.network.chat.Component;
 
 public class ReloadCommand {
 
+    /**
+     * 增量重新加载：只载入在磁盘上被修改的数据文件
+     */
     public static int execute(CommandContext<CommandSourceStack> context) {
+        try {
+            CommandSourceStack source = context.getSource();
+
+            NetworkDiff diff = NetworkManager.reloadChanges();
+
+            source.sendSuccess(() -> Component.literal(diff.getChangedFiles() == 0
+                ? "数据文件没有变化"
+                : "已载入数据文件的变化: " + diff), true);
+
+            return Command.SINGLE_SUCCESS;
+
+        } catch (Exception e) {
+            context.getSource().sendFailure(
+                Component.literal("重新加载配置时发生错误: " + e.getMessage())
+            );
+            DebugLogger.error("Reload command failed", e);
+            return 0;
+        }
+    }
+
+    /**
+     * 完整重新加载：重新读取全部数据
+     */
+    public static int executeFull(CommandContext<CommandSourceStack> context) {
         try {
             CommandSourceStack source = context.getSource();
 
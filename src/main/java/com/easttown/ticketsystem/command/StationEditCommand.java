@@ -12,14 +12,15 @@ public class StationEditCommand {
                              String newName, String newEnName, Integer newStationNumber,
                              Integer x, Integer y, Integer z) {
         NetworkManager.initialize();
-        Station station = NetworkManager.getStation(stationCode);
+        Station existing = NetworkManager.getStation(stationCode);
 
-        if (station == null) {
+        if (existing == null) {
             context.getSource().sendFailure(
                 Component.literal("车站 " + stationCode + " 不存在")
             );
             return 0;
         }
+        Station station = existing.copy();
 
         boolean modified = false;
 
@@ -15,6 +15,10 @@ public class TicketCommand {
                 .then(
                     Commands.literal("reload")
                         .executes(ReloadCommand::execute)
+                        .then(
+                            Commands.literal("full")
+                                .executes(ReloadCommand::executeFull)
+                        )
                 )
                 // 车站管理命令（统一结构）
                 .then(
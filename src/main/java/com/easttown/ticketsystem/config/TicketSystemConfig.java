@@ -2,12 +2,15 @@ package com.easttown.ticketsystem.config;
 
 import net.minecraftforge.common.ForgeConfigSpec;
 
+import java.util.Arrays;
+
 public class TicketSystemConfig {
     public static final ForgeConfigSpec.Builder BUILDER = new ForgeConfigSpec.Builder();
     public static final ForgeConfigSpec SPEC;
 
     // 调试设置
     public static final ForgeConfigSpec.BooleanValue SHOW_DEBUG_LOGS;
+    public static final ForgeConfigSpec.IntValue FARE_TRACE_SAMPLE_RATE;
 
     // 硬币类型配置
     public static final ForgeConfigSpec.ConfigValue<String> COPPER_COIN_ITEM;
@@ -39,6 +42,25 @@ public class TicketSystemConfig {
     public static final ForgeConfigSpec.BooleanValue WEB_SERVER_ENABLED;
     public static final ForgeConfigSpec.ConfigValue<String> WEB_API_BASE_URL;
 
+    // 路径计算配置
+    public static final ForgeConfigSpec.BooleanValue FARE_MATRIX_ENABLED;
+    public static final ForgeConfigSpec.IntValue FARE_MATRIX_MAX_STATIONS;
+    public static final ForgeConfigSpec.ConfigValue<String> ROUTE_SEARCH_MODE;
+    public static final ForgeConfigSpec.BooleanValue CONTRACTION_HIERARCHY_ENABLED;
+
+    // 数据存储配置
+    public static final ForgeConfigSpec.IntValue SAVE_DELAY_MS;
+    public static final ForgeConfigSpec.BooleanValue JOURNAL_ENABLED;
+    public static final ForgeConfigSpec.IntValue JOURNAL_COMPACT_KB;
+    public static final ForgeConfigSpec.BooleanValue BINARY_SNAPSHOT_ENABLED;
+    public static final ForgeConfigSpec.BooleanValue PRETTY_JSON;
+    public static final ForgeConfigSpec.BooleanValue WATCH_DATA_FILES;
+
+    // 日志文件设置
+    public static final ForgeConfigSpec.IntValue LOG_MAX_FILE_KB;
+    public static final ForgeConfigSpec.IntValue LOG_MAX_ARCHIVES;
+    public static final ForgeConfigSpec.BooleanValue LOG_COMPRESS_ARCHIVES;
+
     static {
         BUILDER.push("调试设置");
 
@@ -46,6 +68,10 @@ public class TicketSystemConfig {
             .comment("是否在控制台显示调试日志 (默认: true)")
             .define("showDebugLogs", true);
 
+        FARE_TRACE_SAMPLE_RATE = BUILDER
+            .comment("票价查询跟踪日志的采样间隔：每N次查询以DEBUG级别输出一次过程 (0为关闭, 默认: 0)")
+            .defineInRange("fare_trace_sample_rate", 0, 0, 1000000);
+
         BUILDER.pop();
 
         BUILDER.push("硬币系统设置");
@@ -111,6 +137,57 @@ public class TicketSystemConfig {
 
         BUILDER.pop();
 
+        BUILDER.push("路径计算设置");
+
+        FARE_MATRIX_ENABLED = BUILDER.comment("是否在后台预计算全站点票价矩阵 (默认: true)")
+            .define("fare_matrix_enabled", true);
+
+        FARE_MATRIX_MAX_STATIONS = BUILDER.comment("票价矩阵最大车站数，超过则回退到实时计算 (内存占用约为 车站数² × 4 字节，增量更新时新旧两份矩阵并存；8000站约256MB)")
+            .defineInRange("fare_matrix_max_stations", 4000, 2, 8000);
+
+        ROUTE_SEARCH_MODE = BUILDER.comment("实时路径搜索算法: dijkstra / astar (以车站坐标为启发) / bidirectional (双向搜索)")
+            .defineInList("route_search_mode", "dijkstra", Arrays.asList("dijkstra", "astar", "bidirectional"));
+
+        CONTRACTION_HIERARCHY_ENABLED = BUILDER.comment("是否构建收缩层次索引 (适用于数千车站的大型网络，索引保存为fares.ch，默认: false)")
+            .define("contraction_hierarchy_enabled", false);
+
+        BUILDER.pop();
+
+        BUILDER.push("数据存储设置");
+
+        SAVE_DELAY_MS = BUILDER.comment("修改后延迟保存的毫秒数，窗口内的多次修改合并为一次写入 (默认: 2000)")
+            .defineInRange("save_delay_ms", 2000, 0, 60000);
+
+        JOURNAL_ENABLED = BUILDER.comment("是否使用预写日志记录修改 (network.journal，修改只追加一条记录，默认: true)")
+            .define("journal_enabled", true);
+
+        JOURNAL_COMPACT_KB = BUILDER.comment("日志超过该大小(KB)后在后台写出JSON快照并截断日志 (默认: 1024)")
+            .defineInRange("journal_compact_kb", 1024, 16, 1048576);
+
+        BINARY_SNAPSHOT_ENABLED = BUILDER.comment("是否额外保存二进制快照以加快启动 (network.snapshot，JSON被手工修改后自动以JSON为准，默认: false)")
+            .define("binary_snapshot_enabled", false);
+
+        PRETTY_JSON = BUILDER.comment("保存的JSON是否缩进排版 (便于手工编辑；关闭后为单行JSON，文件更小、写出更快，默认: true)")
+            .define("pretty_json", true);
+
+        WATCH_DATA_FILES = BUILDER.comment("是否监视数据目录，手工修改JSON分片后自动载入变化的部分 (默认: false，可随时用/ticketsystem reload手动载入)")
+            .define("watch_data_files", false);
+
+        BUILDER.pop();
+
+        BUILDER.push("日志文件设置");
+
+        LOG_MAX_FILE_KB = BUILDER.comment("logs/ticketsystem.log超过该大小(KB)时归档并开始新文件，跨天时也会归档 (默认: 10240)")
+            .defineInRange("log_max_file_kb", 10240, 64, 1048576);
+
+        LOG_MAX_ARCHIVES = BUILDER.comment("保留的归档日志数量，超出时删除最旧的 (0为不删除，默认: 30)")
+            .defineInRange("log_max_archives", 30, 0, 10000);
+
+        LOG_COMPRESS_ARCHIVES = BUILDER.comment("是否用gzip压缩归档的日志 (默认: true)")
+            .define("log_compress_archives", true);
+
+        BUILDER.pop();
+
         SPEC = BUILDER.build();
     }
 
@@ -119,6 +196,10 @@ public class TicketSystemConfig {
         return SHOW_DEBUG_LOGS.get();
     }
 
+    public static int getFareTraceSampleRate() {
+        return FARE_TRACE_SAMPLE_RATE.get();
+    }
+
     // 硬币汇率相关方法
     public static int getCopperToIronRate() {
         return COPPER_TO_IRON_RATE.get();
@@ -188,4 +269,59 @@ public class TicketSystemConfig {
     public static String getWebApiBaseUrl() {
         return WEB_API_BASE_URL.get();
     }
+
+    // 路径计算相关方法
+    public static boolean isFareMatrixEnabled() {
+        return FARE_MATRIX_ENABLED.get();
+    }
+
+    public static int getFareMatrixMaxStations() {
+        return FARE_MATRIX_MAX_STATIONS.get();
+    }
+
+    public static String getRouteSearchMode() {
+        return ROUTE_SEARCH_MODE.get();
+    }
+
+    public static boolean isContractionHierarchyEnabled() {
+        return CONTRACTION_HIERARCHY_ENABLED.get();
+    }
+
+    // 数据存储相关方法
+    public static int getSaveDelayMillis() {
+        return SAVE_DELAY_MS.get();
+    }
+
+    public static boolean isJournalEnabled() {
+        return JOURNAL_ENABLED.get();
+    }
+
+    public static long getJournalCompactBytes() {
+        return JOURNAL_COMPACT_KB.get() * 1024L;
+    }
+
+    public static boolean isBinarySnapshotEnabled() {
+        return BINARY_SNAPSHOT_ENABLED.get();
+    }
+
+    public static boolean isPrettyJsonEnabled() {
+        return PRETTY_JSON.get();
+    }
+
+    public static boolean isDataFileWatchEnabled() {
+        return WATCH_DATA_FILES.get();
+    }
+
+    // 日志文件相关方法
+    public static long getLogMaxFileBytes() {
+        return LOG_MAX_FILE_KB.get() * 1024L;
+    }
+
+    public static int getLogMaxArchives() {
+        return LOG_MAX_ARCHIVES.get();
+    }
+
+    public static boolean isLogArchiveCompressionEnabled() {
+        return LOG_COMPRESS_ARCHIVES.get();
+    }
 }
\ No newline at end of file
@@ -100,6 +100,13 @@ public class Line {
         this.customId = customId != null ? customId : "";
     }
 
+    /**
+     * 复制线路（NetworkManager中的线路对象只读，修改时先复制，再通过updateLine提交）
+     */
+    public Line copy() {
+        return new Line(id, name, enName, color, new ArrayList<>(stationCodes), uuid, customId);
+    }
+
     // 便捷方法
     /**
      * 添加车站到线路末尾
@@ -141,6 +141,13 @@ public class Station {
         this.z = z;
     }
 
+    /**
+     * 复制车站（NetworkManager中的车站对象只读，修改时先复制，再通过updateStation提交）
+     */
+    public Station copy() {
+        return new Station(code, name, enName, x, y, z, stationNumber, uuid, customId);
+    }
+
     /**
      * 检查坐标是否有效
      * @return 坐标是否在合理范围内
@@ -0,0 +1,517 @@
+package com.easttown.ticketsystem.manager;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 收缩层次（Contraction Hierarchies）索引 - 基于NetworkGraph快照预处理
+ * 按重要度依次收缩车站，并为被收缩车站两侧补充捷径边（shortcut）；
+ * 查询时只需在“向上”的边上做双向搜索，搜索规模与网络总规模基本无关
+ * 捷径边记录其两条子边，查询结果可以展开回原图的边序列（保留线路信息）
+ */
+final class ContractionHierarchy {
+    private static final int MAGIC = 0x54534348; // "TSCH"
+    private static final int FORMAT_VERSION = 1;
+    // 见证搜索（witness search）最多确定的车站数，超过后保守地添加捷径
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+    // 优先级可能为负，入堆时加上偏移
+    private static final long PRIORITY_OFFSET = 1L << 32;
+
+    private final NetworkGraph graph;
+    private final long fingerprint;
+    private final int[] rank;
+
+    // 全部弧（原始边 + 捷径）：arcFirst < 0 时为原始边，arcSecond为原图边ID；否则为两条子弧
+    private final int[] arcFrom;
+    private final int[] arcTo;
+    private final int[] arcPrice;
+    private final int[] arcFirst;
+    private final int[] arcSecond;
+
+    // 查询用CSR：up为u的出弧中指向更高等级车站的部分；down为v的入弧中来自更高等级车站的部分
+    private final int[] upOffsets;
+    private final int[] upArcs;
+    private final int[] downOffsets;
+    private final int[] downArcs;
+
+    private ContractionHierarchy(NetworkGraph graph, long fingerprint, int[] rank,
+                                 int[] arcFrom, int[] arcTo, int[] arcPrice, int[] arcFirst, int[] arcSecond) {
+        this.graph = graph;
+        this.fingerprint = fingerprint;
+        this.rank = rank;
+        this.arcFrom = arcFrom;
+        this.arcTo = arcTo;
+        this.arcPrice = arcPrice;
+        this.arcFirst = arcFirst;
+        this.arcSecond = arcSecond;
+
+        int n = rank.length;
+        upOffsets = new int[n + 1];
+        downOffsets = new int[n + 1];
+        for (int a = 0; a < arcFrom.length; a++) {
+            if (rank[arcTo[a]] > rank[arcFrom[a]]) {
+                upOffsets[arcFrom[a] + 1]++;
+            } else {
+                downOffsets[arcTo[a] + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            upOffsets[i + 1] += upOffsets[i];
+            downOffsets[i + 1] += downOffsets[i];
+        }
+        upArcs = new int[upOffsets[n]];
+        downArcs = new int[downOffsets[n]];
+        int[] upFill = Arrays.copyOf(upOffsets, n);
+        int[] downFill = Arrays.copyOf(downOffsets, n);
+        for (int a = 0; a < arcFrom.length; a++) {
+            if (rank[arcTo[a]] > rank[arcFrom[a]]) {
+                upArcs[upFill[arcFrom[a]]++] = a;
+            } else {
+                downArcs[downFill[arcTo[a]]++] = a;
+            }
+        }
+    }
+
+    // ==================== 预处理 ====================
+
+    /**
+     * 构建索引：按“边差 + 已收缩邻居数”的懒更新优先级依次收缩车站
+     */
+    static ContractionHierarchy build(NetworkGraph graph) {
+        return new Builder(graph).run();
+    }
+
+    private static final class Builder {
+        private final NetworkGraph graph;
+        private final int n;
+        private final ArcList arcs = new ArcList();
+        private final Map<Long, Integer> pairArc = new HashMap<>(); // (from, to) -> 当前最低价的弧
+        private final IntList[] outArcs;
+        private final IntList[] inArcs;
+        private final boolean[] contracted;
+        private final int[] contractedNeighbors;
+        private final RouteSearchContext.SearchSpace witness = new RouteSearchContext.SearchSpace();
+
+        Builder(NetworkGraph graph) {
+            this.graph = graph;
+            this.n = graph.getStationCount();
+            this.outArcs = new IntList[n];
+            this.inArcs = new IntList[n];
+            this.contracted = new boolean[n];
+            this.contractedNeighbors = new int[n];
+            for (int i = 0; i < n; i++) {
+                outArcs[i] = new IntList();
+                inArcs[i] = new IntList();
+            }
+
+            // 原始边：同方向的平行边只保留最低价的一条
+            for (int e = 0; e < graph.getEdgeCount(); e++) {
+                int from = graph.edgeSource(e);
+                int to = graph.edgeTarget(e);
+                Integer existing = pairArc.get(pairKey(from, to));
+                if (existing == null) {
+                    addArc(from, to, graph.edgePrice(e), -1, e);
+                } else if (graph.edgePrice(e) < arcs.price[existing]) {
+                    arcs.price[existing] = graph.edgePrice(e);
+                    arcs.second[existing] = e;
+                }
+            }
+        }
+
+        ContractionHierarchy run() {
+            int[] rank = new int[n];
+            IndexedMinHeap queue = new IndexedMinHeap();
+            queue.ensureCapacity(n);
+            for (int v = 0; v < n; v++) {
+                queue.offer(v, priority(v));
+            }
+
+            int nextRank = 0;
+            while (!queue.isEmpty()) {
+                int v = queue.poll();
+                // 懒更新：优先级变差且不再是最小时重新入队
+                long updated = priority(v);
+                if (!queue.isEmpty() && updated > queue.peekKey()) {
+                    queue.offer(v, updated);
+                    continue;
+                }
+
+                contract(v, false);
+                contracted[v] = true;
+                rank[v] = nextRank++;
+                for (int i = 0; i < outArcs[v].size; i++) {
+                    contractedNeighbors[arcs.to[outArcs[v].data[i]]]++;
+                }
+                for (int i = 0; i < inArcs[v].size; i++) {
+                    contractedNeighbors[arcs.from[inArcs[v].data[i]]]++;
+                }
+            }
+
+            return new ContractionHierarchy(graph, graph.fingerprint(), rank,
+                    Arrays.copyOf(arcs.from, arcs.size), Arrays.copyOf(arcs.to, arcs.size),
+                    Arrays.copyOf(arcs.price, arcs.size), Arrays.copyOf(arcs.first, arcs.size),
+                    Arrays.copyOf(arcs.second, arcs.size));
+        }
+
+        private long priority(int v) {
+            int degree = 0;
+            for (int i = 0; i < outArcs[v].size; i++) {
+                if (!contracted[arcs.to[outArcs[v].data[i]]]) degree++;
+            }
+            for (int i = 0; i < inArcs[v].size; i++) {
+                if (!contracted[arcs.from[inArcs[v].data[i]]]) degree++;
+            }
+            return PRIORITY_OFFSET + contract(v, true) - degree + contractedNeighbors[v];
+        }
+
+        /**
+         * 收缩车站v：对每条入弧u->v，搜索不经过v的见证路径，找不到时添加捷径u->w
+         * @param simulate 只统计需要的捷径数量，不修改图
+         */
+        private int contract(int v, boolean simulate) {
+            int shortcuts = 0;
+            IntList in = inArcs[v];
+            IntList out = outArcs[v];
+            for (int i = 0; i < in.size; i++) {
+                int inArc = in.data[i];
+                int u = arcs.from[inArc];
+                if (contracted[u] || !isCurrent(inArc)) continue;
+
+                long maxCost = -1;
+                for (int j = 0; j < out.size; j++) {
+                    int outArc = out.data[j];
+                    int w = arcs.to[outArc];
+                    if (w != u && !contracted[w] && isCurrent(outArc)) {
+                        maxCost = Math.max(maxCost, (long) arcs.price[inArc] + arcs.price[outArc]);
+                    }
+                }
+                if (maxCost < 0) continue;
+
+                witnessSearch(u, v, maxCost);
+                for (int j = 0; j < out.size; j++) {
+                    int outArc = out.data[j];
+                    int w = arcs.to[outArc];
+                    if (w == u || contracted[w] || !isCurrent(outArc)) continue;
+                    long via = (long) arcs.price[inArc] + arcs.price[outArc];
+                    if (witness.distance(w) <= via) continue;
+
+                    shortcuts++;
+                    if (!simulate) {
+                        addArc(u, w, (int) via, inArc, outArc);
+                    }
+                }
+            }
+            return shortcuts;
+        }
+
+        /**
+         * 从u出发、避开v的有限Dijkstra（票价上限maxCost，确定车站数上限WITNESS_SETTLE_LIMIT）
+         */
+        private void witnessSearch(int u, int v, long maxCost) {
+            witness.reset(n);
+            witness.set(u, 0, -1);
+            witness.heap.offer(u, 0);
+            int settled = 0;
+            while (!witness.heap.isEmpty() && witness.heap.peekKey() <= maxCost && settled < WITNESS_SETTLE_LIMIT) {
+                int current = witness.heap.poll();
+                settled++;
+                long distance = witness.distance(current);
+                IntList list = outArcs[current];
+                for (int i = 0; i < list.size; i++) {
+                    int arc = list.data[i];
+                    int next = arcs.to[arc];
+                    if (next == v || contracted[next]) continue;
+                    long newDistance = distance + arcs.price[arc];
+                    if (newDistance < witness.distance(next)) {
+                        witness.set(next, newDistance, arc);
+                        witness.heap.offer(next, newDistance);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 弧是否仍是其端点对之间的最低价弧（被更便宜的捷径取代的弧不再参与收缩）
+         */
+        private boolean isCurrent(int arc) {
+            Integer best = pairArc.get(pairKey(arcs.from[arc], arcs.to[arc]));
+            return best != null && best == arc;
+        }
+
+        private void addArc(int from, int to, int price, int first, int second) {
+            long key = pairKey(from, to);
+            Integer existing = pairArc.get(key);
+            if (existing != null && arcs.price[existing] <= price) {
+                return;
+            }
+            int arc = arcs.add(from, to, price, first, second);
+            pairArc.put(key, arc);
+            outArcs[from].add(arc);
+            inArcs[to].add(arc);
+        }
+
+        private static long pairKey(int from, int to) {
+            return ((long) from << 32) | (to & 0xffffffffL);
+        }
+    }
+
+    // ==================== 查询 ====================
+
+    /**
+     * 最低票价查询：正向沿up弧、反向沿down弧的双向Dijkstra，
+     * 某一方向堆顶不小于已知最优票价时该方向停止
+     * @return 原图的边序列，无法到达返回null
+     */
+    int[] query(int source, int target, RouteSearchContext context) {
+        int n = rank.length;
+        RouteSearchContext.SearchSpace forward = context.forward;
+        RouteSearchContext.SearchSpace backward = context.backward;
+        forward.reset(n);
+        backward.reset(n);
+        forward.set(source, 0, -1);
+        forward.heap.offer(source, 0);
+        backward.set(target, 0, -1);
+        backward.heap.offer(target, 0);
+
+        long best = RouteSearchContext.INFINITY;
+        int meeting = -1;
+        int expanded = 0;
+        boolean forwardTurn = true;
+
+        while (true) {
+            boolean forwardActive = !forward.heap.isEmpty() && forward.heap.peekKey() < best;
+            boolean backwardActive = !backward.heap.isEmpty() && backward.heap.peekKey() < best;
+            if (!forwardActive && !backwardActive) {
+                break;
+            }
+            boolean useForward = forwardActive && (forwardTurn || !backwardActive);
+            forwardTurn = !forwardTurn;
+            expanded++;
+
+            RouteSearchContext.SearchSpace space = useForward ? forward : backward;
+            RouteSearchContext.SearchSpace other = useForward ? backward : forward;
+            int current = space.heap.poll();
+            long distance = space.distance(current);
+            if (other.reached(current) && distance + other.distance(current) < best) {
+                best = distance + other.distance(current);
+                meeting = current;
+            }
+
+            int[] offsets = useForward ? upOffsets : downOffsets;
+            int[] list = useForward ? upArcs : downArcs;
+            for (int i = offsets[current], end = offsets[current + 1]; i < end; i++) {
+                int arc = list[i];
+                int next = useForward ? arcTo[arc] : arcFrom[arc];
+                long newDistance = distance + arcPrice[arc];
+                if (newDistance < space.distance(next)) {
+                    space.set(next, newDistance, arc);
+                    space.heap.offer(next, newDistance);
+                }
+            }
+        }
+
+        context.expandedNodes = expanded;
+        if (meeting < 0) {
+            return null;
+        }
+
+        // 正向部分（起点 -> 相遇点）的弧逆序收集，反向部分（相遇点 -> 终点）顺序收集，再逐条展开
+        IntList path = new IntList();
+        IntList head = new IntList();
+        IntList stack = new IntList();
+        for (int current = meeting; current != source; current = arcFrom[forward.previous(current)]) {
+            head.add(forward.previous(current));
+        }
+        for (int i = head.size - 1; i >= 0; i--) {
+            unpack(head.data[i], path, stack);
+        }
+        for (int current = meeting; current != target; current = arcTo[backward.previous(current)]) {
+            unpack(backward.previous(current), path, stack);
+        }
+        return Arrays.copyOf(path.data, path.size);
+    }
+
+    /**
+     * 把弧展开为原图边（显式栈，避免深层递归）
+     */
+    private void unpack(int arc, IntList out, IntList stack) {
+        stack.size = 0;
+        stack.add(arc);
+        while (stack.size > 0) {
+            int current = stack.data[--stack.size];
+            if (arcFirst[current] < 0) {
+                out.add(arcSecond[current]);
+            } else {
+                stack.add(arcSecond[current]);
+                stack.add(arcFirst[current]);
+            }
+        }
+    }
+
+    // ==================== 持久化 ====================
+
+    /**
+     * 写入二进制索引文件（先写临时文件再原子替换）
+     */
+    void save(File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(fingerprint);
+            out.writeInt(rank.length);
+            out.writeInt(arcFrom.length);
+            for (int r : rank) {
+                out.writeInt(r);
+            }
+            for (int a = 0; a < arcFrom.length; a++) {
+                out.writeInt(arcFrom[a]);
+                out.writeInt(arcTo[a]);
+                out.writeInt(arcPrice[a]);
+                out.writeInt(arcFirst[a]);
+                out.writeInt(arcSecond[a]);
+            }
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 读取索引文件，文件不存在、格式不符、数据越界或与图的指纹不一致时返回null
+     * 文件内容不可信：下标越界或捷径引用成环会让查询与展开路径出错甚至死循环，读取时逐项检查
+     */
+    static ContractionHierarchy load(File file, NetworkGraph graph) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        long length = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readLong() != graph.fingerprint()) {
+                return null;
+            }
+            int n = in.readInt();
+            int arcCount = in.readInt();
+            // 文件头 + rank + 每条弧5个int，弧数不能超过文件实际容纳的数量
+            long header = 4 + 4 + 8 + 4 + 4 + 4L * n;
+            if (n != graph.getStationCount() || arcCount < 0 || header + 20L * arcCount > length) {
+                return null;
+            }
+            int[] rank = new int[n];
+            boolean[] seen = new boolean[n];
+            for (int i = 0; i < n; i++) {
+                int r = in.readInt();
+                // rank必须是[0, n)的一个排列
+                if (r < 0 || r >= n || seen[r]) {
+                    return null;
+                }
+                seen[r] = true;
+                rank[i] = r;
+            }
+            int edgeCount = graph.getEdgeCount();
+            int[] from = new int[arcCount];
+            int[] to = new int[arcCount];
+            int[] price = new int[arcCount];
+            int[] first = new int[arcCount];
+            int[] second = new int[arcCount];
+            for (int a = 0; a < arcCount; a++) {
+                from[a] = in.readInt();
+                to[a] = in.readInt();
+                price[a] = in.readInt();
+                first[a] = in.readInt();
+                second[a] = in.readInt();
+                if (from[a] < 0 || from[a] >= n || to[a] < 0 || to[a] >= n || price[a] < 0) {
+                    return null;
+                }
+                if (first[a] < 0) {
+                    // 原始弧：first为-1，second为图中的边
+                    if (first[a] != -1 || second[a] < 0 || second[a] >= edgeCount) {
+                        return null;
+                    }
+                } else if (first[a] >= a || second[a] < 0 || second[a] >= a) {
+                    // 捷径只能由先加入的弧组成，保证展开时不会成环
+                    return null;
+                }
+            }
+            return new ContractionHierarchy(graph, graph.fingerprint(), rank, from, to, price, first, second);
+        }
+    }
+
+    /**
+     * 同一内容的新图快照（仅版本号不同）可以直接复用索引
+     */
+    ContractionHierarchy rebind(NetworkGraph newGraph) {
+        if (newGraph == graph) {
+            return this;
+        }
+        if (newGraph.fingerprint() != fingerprint) {
+            return null;
+        }
+        return new ContractionHierarchy(newGraph, fingerprint, rank, arcFrom, arcTo, arcPrice, arcFirst, arcSecond);
+    }
+
+    NetworkGraph getGraph() {
+        return graph;
+    }
+
+    int getArcCount() {
+        return arcFrom.length;
+    }
+
+    int getShortcutCount() {
+        return arcFrom.length - countOriginalArcs();
+    }
+
+    private int countOriginalArcs() {
+        int count = 0;
+        for (int first : arcFirst) {
+            if (first < 0) count++;
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ContractionHierarchy{version=%d, stations=%d, arcs=%d, shortcuts=%d}",
+                graph.getVersion(), rank.length, arcFrom.length, getShortcutCount());
+    }
+
+    /**
+     * 弧的growable数组
+     */
+    private static final class ArcList {
+        int[] from = new int[64];
+        int[] to = new int[64];
+        int[] price = new int[64];
+        int[] first = new int[64];
+        int[] second = new int[64];
+        int size;
+
+        int add(int f, int t, int p, int a, int b) {
+            if (size == from.length) {
+                int capacity = size * 2;
+                from = Arrays.copyOf(from, capacity);
+                to = Arrays.copyOf(to, capacity);
+                price = Arrays.copyOf(price, capacity);
+                first = Arrays.copyOf(first, capacity);
+                second = Arrays.copyOf(second, capacity);
+            }
+            from[size] = f;
+            to[size] = t;
+            price[size] = p;
+            first[size] = a;
+            second[size] = b;
+            return size++;
+        }
+    }
+}
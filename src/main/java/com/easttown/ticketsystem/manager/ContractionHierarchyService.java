@@ -0,0 +1,111 @@
+package com.easttown.ticketsystem.manager;
+
+import com.easttown.ticketsystem.TicketSystemMod;
+import com.easttown.ticketsystem.config.TicketSystemConfig;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 收缩层次索引服务
+ * 在后台线程构建索引并保存到票价数据目录下的fares.ch，启动时若文件与当前图一致则直接加载
+ * 线路或票价变化后自动重建，重建完成前路径查询回退到普通搜索
+ */
+public class ContractionHierarchyService {
+    private static final String INDEX_FILE_NAME = "fares.ch";
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TicketSystem-ContractionHierarchy");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile ContractionHierarchy index;
+    private static final AtomicBoolean updateScheduled = new AtomicBoolean(false);
+
+    static {
+        NetworkManager.addChangeListener(event -> requestUpdate());
+    }
+
+    /**
+     * 获取与给定图快照对应的索引
+     * 未启用、尚未就绪或已过期时返回null（并安排后台重建），调用方应回退到普通搜索
+     */
+    static ContractionHierarchy getIndex(NetworkGraph graph) {
+        ContractionHierarchy current = index;
+        if (current != null && current.getGraph() == graph) {
+            return current;
+        }
+        requestUpdate();
+        return null;
+    }
+
+    /**
+     * 安排一次后台重建（多次请求会合并）
+     */
+    public static void requestUpdate() {
+        if (!TicketSystemConfig.isContractionHierarchyEnabled()) {
+            index = null;
+            return;
+        }
+        if (updateScheduled.compareAndSet(false, true)) {
+            EXECUTOR.execute(ContractionHierarchyService::runUpdate);
+        }
+    }
+
+    private static void runUpdate() {
+        updateScheduled.set(false);
+        try {
+            NetworkGraph graph = NetworkManager.getGraph();
+            ContractionHierarchy current = index;
+            if (current != null) {
+                ContractionHierarchy rebound = current.rebind(graph);
+                if (rebound != null) {
+                    index = rebound;
+                    return;
+                }
+            }
+
+            File file = getIndexFile();
+            long start = System.nanoTime();
+            ContractionHierarchy loaded = null;
+            try {
+                loaded = ContractionHierarchy.load(file, graph);
+            } catch (Exception e) {
+                TicketSystemMod.LOGGER.warn("Failed to read contraction hierarchy index {}, rebuilding", file, e);
+            }
+            if (loaded != null) {
+                index = loaded;
+                TicketSystemMod.LOGGER.debug("Loaded {} in {} ms", loaded, (System.nanoTime() - start) / 1_000_000);
+                return;
+            }
+
+            ContractionHierarchy built = ContractionHierarchy.build(graph);
+            index = built;
+            TicketSystemMod.LOGGER.info("Built {} in {} ms", built, (System.nanoTime() - start) / 1_000_000);
+            built.save(file);
+        } catch (Exception e) {
+            TicketSystemMod.LOGGER.error("Failed to update contraction hierarchy index", e);
+        }
+    }
+
+    private static File getIndexFile() {
+        return new File(NetworkManager.getFaresDirectory(), INDEX_FILE_NAME);
+    }
+
+    /**
+     * 获取索引状态
+     */
+    public static String getStatus() {
+        ContractionHierarchy current = index;
+        if (current == null) {
+            return "Contraction hierarchy: " + (TicketSystemConfig.isContractionHierarchyEnabled() ? "not ready" : "disabled");
+        }
+        boolean upToDate = current.getGraph().getVersion() == NetworkManager.getDataVersion();
+        return String.format("Contraction hierarchy: %d arcs (%d shortcuts), version %d%s",
+                current.getArcCount(), current.getShortcutCount(), current.getGraph().getVersion(),
+                upToDate ? "" : " (updating)");
+    }
+}
@@ -3,13 +3,14 @@ package com.easttown.ticketsystem.manager;
 import com.easttown.ticketsystem.TicketSystemMod;
 import com.easttown.ticketsystem.data.Fare;
 import com.easttown.ticketsystem.data.Station;
+import com.easttown.ticketsystem.util.FareTrace;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 票价计算引擎 - 基于web项目的实时计算算法
- * 实现sumLineFare、sumWithTransfer等核心算法
+ * 实现sumLineFare、sumWithTransfer等核心算法，以及基于路径图的多次换乘搜索
  * 票价基于相邻车站票价累加，支持零成本换乘
  */
 public class FareCalculationEngine {
@@ -83,12 +84,15 @@ public class FareCalculationEngine {
         }
 
         // 未找到票价定义
-        TicketSystemMod.LOGGER.debug("No fare defined for {} -> {}", from, to);
+        if (FareTrace.sample()) {
+            FareTrace.trace("segFare {} -> {}: no fare defined", from, to);
+        }
         return 0;
     }
 
     /**
      * 计算同一条线路上两站之间的累计票价
+     * 使用按线路前缀缓存的前缀和数组，任意区间只需一次减法
      * @param a 起点站编码
      * @param b 终点站编码
      * @param isRegular 是否为普通票价
@@ -106,60 +110,180 @@ public class FareCalculationEngine {
         int lo = Math.min(pa.num, pb.num);
         int hi = Math.max(pa.num, pb.num);
 
-        int total = 0;
-        boolean hasMissingFare = false;
+        LineFares lineFares = lineFares(pa.prefix);
+        int total = lineFares.sum(lo, hi, isRegular);
 
-        for (int i = lo; i < hi; i++) {
-            String from = String.format("%s-%02d", pa.prefix, i);
-            String to = String.format("%s-%02d", pa.prefix, i + 1);
+        if (lineFares.missingSegments(lo, hi) > 0) {
+            TicketSystemMod.LOGGER.warn("Some fares missing for line {}: {} -> {} ({} segments)",
+                    pa.prefix, a, b, lineFares.missingSegments(lo, hi));
+        }
 
-            int segmentFare = segFare(from, to, isRegular);
-            if (segmentFare == 0) {
-                hasMissingFare = true;
-                TicketSystemMod.LOGGER.warn("Missing fare for segment: {} -> {}", from, to);
-            }
-            total += segmentFare;
+        return total;
+    }
+
+    /**
+     * 同线累计票价（不记录缺失区间警告），供批量计算使用
+     * @return 累计票价，不在同一条线路返回-1
+     */
+    static int lineFare(String a, String b, boolean isRegular) {
+        String prefix = linePrefix(a);
+        if (prefix == null || !prefix.equals(linePrefix(b))) {
+            return -1;
         }
+        int numA = parseCode(a).num;
+        int numB = parseCode(b).num;
+        return lineFares(prefix).sum(Math.min(numA, numB), Math.max(numA, numB), isRegular);
+    }
 
-        if (hasMissingFare) {
-            TicketSystemMod.LOGGER.warn("Some fares missing for line {}: {} -> {}", pa.prefix, a, b);
+    /**
+     * 同线累计票价（按已解析的线路前缀与站序号）
+     */
+    static int lineFare(String prefix, int numA, int numB, boolean isRegular) {
+        return lineFares(prefix).sum(Math.min(numA, numB), Math.max(numA, numB), isRegular);
+    }
+
+    private static LineFares lineFares(String prefix) {
+        NetworkManager.initialize();
+        return lineFareCache.computeIfAbsent(prefix, LineFares::build);
+    }
+
+    // ==================== 线路票价前缀和 ====================
+
+    // 线路前缀 -> 前缀和数组；线路或其票价变化时只移除对应前缀
+    private static final Map<String, LineFares> lineFareCache = new ConcurrentHashMap<>();
+
+    static {
+        NetworkManager.addChangeListener(FareCalculationEngine::onNetworkChanged);
+    }
+
+    private static void onNetworkChanged(NetworkChangeEvent event) {
+        if (event.isFullReload()) {
+            lineFareCache.clear();
+            return;
+        }
+        for (String code : event.getStationCodes()) {
+            String prefix = linePrefix(code);
+            if (prefix != null) {
+                lineFareCache.remove(prefix);
+            }
         }
+    }
 
-        return total;
+    /**
+     * 提取车站编码的线路前缀（与parseCode规则一致，但不记录日志），无效编码返回null
+     */
+    static String linePrefix(String code) {
+        int dash = code.indexOf('-');
+        if (dash <= 0 || dash == code.length() - 1 || code.indexOf('-', dash + 1) >= 0) {
+            return null;
+        }
+        return code.substring(0, dash);
     }
 
     /**
-     * 自动检测同名车站组（中文名或英文名相同的车站视为同一物理车站）
-     * 用于零成本换乘计算
+     * 一条线路（编码前缀）的区间票价前缀和
+     * regular[i] / express[i] 为 前缀-00 到 前缀-i 的累计票价，missing[i]为其中缺少票价的区间数
+     * 序号超出数组的区间视为缺少票价（与逐段累加时的0票价一致）
      */
-    public static Map<String, List<String>> buildStationGroups() {
-        NetworkManager.initialize();
-        Collection<Station> stations = NetworkManager.getAllStations();
+    private static final class LineFares {
+        private final int[] regular;
+        private final int[] express;
+        private final int[] missing;
+
+        private LineFares(int[] regular, int[] express, int[] missing) {
+            this.regular = regular;
+            this.express = express;
+            this.missing = missing;
+        }
 
-        Map<String, List<String>> groups = new HashMap<>();
+        /**
+         * 从票价表构建：只收集同前缀、序号相邻、编码为标准两位格式的区间票价
+         */
+        static LineFares build(String prefix) {
+            int maxNum = 0;
+            Map<Integer, Fare> segments = new HashMap<>();
+            for (Fare fare : NetworkManager.getAllFares()) {
+                if (fare.getPrice() <= 0) {
+                    continue;
+                }
+                int from = segmentNumber(prefix, fare.getFromStation());
+                int to = segmentNumber(prefix, fare.getToStation());
+                if (from < 0 || to < 0 || Math.abs(from - to) != 1) {
+                    continue;
+                }
+                int lo = Math.min(from, to);
+                segments.putIfAbsent(lo, fare);
+                maxNum = Math.max(maxNum, lo + 1);
+            }
 
-        for (Station station : stations) {
-            // 使用中文名作为分组键
-            String nameKey = station.getName().trim();
-            if (nameKey.isEmpty()) {
-                continue;
+            int[] regular = new int[maxNum + 1];
+            int[] express = new int[maxNum + 1];
+            int[] missing = new int[maxNum + 1];
+            for (int i = 1; i <= maxNum; i++) {
+                Fare fare = segments.get(i - 1);
+                regular[i] = regular[i - 1] + (fare != null ? regularPrice(fare) : 0);
+                express[i] = express[i - 1] + (fare != null ? expressPrice(fare) : 0);
+                missing[i] = missing[i - 1] + (fare != null ? 0 : 1);
             }
+            return new LineFares(regular, express, missing);
+        }
 
-            groups.computeIfAbsent(nameKey, k -> new ArrayList<>())
-                  .add(station.getCode());
+        int sum(int lo, int hi, boolean isRegular) {
+            int[] sums = isRegular ? regular : express;
+            return valueAt(sums, hi) - valueAt(sums, lo);
+        }
 
-            // 如果英文名非空，也加入分组（可选项）
-            if (station.getEnName() != null && !station.getEnName().trim().isEmpty()) {
-                String enKey = station.getEnName().trim();
-                groups.computeIfAbsent(enKey, k -> new ArrayList<>())
-                      .add(station.getCode());
+        int missingSegments(int lo, int hi) {
+            // 超出数组的区间全部缺失
+            int last = missing.length - 1;
+            int beyond = Math.max(0, hi - Math.max(lo, last));
+            return valueAt(missing, hi) - valueAt(missing, lo) + beyond;
+        }
+
+        private static int valueAt(int[] sums, int index) {
+            if (index <= 0) {
+                return 0;
+            }
+            return sums[Math.min(index, sums.length - 1)];
+        }
+
+        /**
+         * 编码属于该前缀且序号为标准格式（%02d）时返回序号，否则返回-1
+         */
+        private static int segmentNumber(String prefix, String code) {
+            if (code == null || code.length() <= prefix.length() + 1 || !code.startsWith(prefix)
+                    || code.charAt(prefix.length()) != '-') {
+                return -1;
+            }
+            String digits = code.substring(prefix.length() + 1);
+            int num = 0;
+            for (int i = 0; i < digits.length(); i++) {
+                char c = digits.charAt(i);
+                if (c < '0' || c > '9' || num > 100_000) {
+                    return -1;
+                }
+                num = num * 10 + (c - '0');
             }
+            boolean canonical = num < 10 ? digits.length() == 2 : digits.charAt(0) != '0';
+            return canonical ? num : -1;
+        }
+
+        // 当前Fare只有单票价（见Fare类说明），普通/特急两套前缀和取同一票价
+        private static int regularPrice(Fare fare) {
+            return fare.getPrice();
+        }
+
+        private static int expressPrice(Fare fare) {
+            return fare.getPrice();
         }
+    }
 
-        // 只保留有多个车站的组
-        return groups.entrySet().stream()
-            .filter(entry -> entry.getValue().size() > 1)
-            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    /**
+     * 自动检测同名车站组（中文名或英文名相同的车站视为同一物理车站）
+     * 用于零成本换乘计算；数据来自常驻的StationGroupIndex，此方法只做导出
+     */
+    public static Map<String, List<String>> buildStationGroups() {
+        return StationGroupIndex.toMap();
     }
 
     /**
@@ -177,29 +301,31 @@ public class FareCalculationEngine {
         }
 
         // 2. 如果不同线，则通过同名车站组进行换乘计算
-        Map<String, List<String>> stationGroups = buildStationGroups();
-        if (stationGroups.isEmpty()) {
-            return -1; // 无换乘组可用
-        }
-
         // 查找起点站和终点站所属的组
-        String fromGroup = findStationGroup(from, stationGroups);
-        String toGroup = findStationGroup(to, stationGroups);
+        int fromGroup = StationGroupIndex.groupOf(from);
+        int toGroup = StationGroupIndex.groupOf(to);
 
-        if (fromGroup == null || toGroup == null) {
+        if (fromGroup == StationGroupIndex.NO_GROUP || toGroup == StationGroupIndex.NO_GROUP) {
             return -1; // 车站不在任何组中
         }
 
         // 如果起点和终点在同一组（同名车站），返回0（零成本换乘）
-        if (fromGroup.equals(toGroup)) {
+        if (fromGroup == toGroup) {
             return 0;
         }
 
         // 3. 查找连接两个组的换乘路径
-        // 简化实现：查找同时属于两个组的车站
-        // 实际上需要更复杂的图搜索算法，这里简化
-        List<String> fromGroupStations = stationGroups.get(fromGroup);
-        List<String> toGroupStations = stationGroups.get(toGroup);
+        return groupTransferFare(fromGroup, toGroup, isRegular);
+    }
+
+    /**
+     * 两个同名车站组之间的单次换乘票价：组内零成本，取两组成员之间的最低同线票价
+     * 简化实现：查找同时属于两个组的车站；多次换乘由searchTransferFare处理
+     * @return 最低票价，两组之间没有同线车站返回-1
+     */
+    static int groupTransferFare(int fromGroup, int toGroup, boolean isRegular) {
+        String[] fromGroupStations = StationGroupIndex.membersOf(fromGroup);
+        String[] toGroupStations = StationGroupIndex.membersOf(toGroup);
 
         int bestFare = Integer.MAX_VALUE;
 
@@ -209,8 +335,8 @@ public class FareCalculationEngine {
                 // 计算起点到换乘点的票价（同组内零成本）
                 int fare1 = 0; // 同组内零成本
 
-                // 计算换乘点到终点的票价
-                int fare2 = sumLineFare(transferFrom, transferTo, isRegular);
+                // 计算换乘点到终点的票价（逐对查询，缺失区间不记录警告）
+                int fare2 = lineFare(transferFrom, transferTo, isRegular);
                 if (fare2 < 0) {
                     continue; // 无法到达
                 }
@@ -229,18 +355,6 @@ public class FareCalculationEngine {
         return bestFare;
     }
 
-    /**
-     * 查找车站所属的组
-     */
-    private static String findStationGroup(String stationCode, Map<String, List<String>> stationGroups) {
-        for (Map.Entry<String, List<String>> entry : stationGroups.entrySet()) {
-            if (entry.getValue().contains(stationCode)) {
-                return entry.getKey();
-            }
-        }
-        return null;
-    }
-
     /**
      * 计算票价（主入口）
      * @param from 起点站编码
@@ -263,9 +377,58 @@ public class FareCalculationEngine {
             return fare;
         }
 
-        // 尝试直接计算（即使不同线，也尝试累加相邻票价）
-        // 这需要更复杂的图搜索算法，暂时返回-1
-        return -1;
+        // 需要多次换乘：在共享的路径图上搜索
+        return searchTransferFare(from, to, isRegular);
+    }
+
+    /**
+     * 多次换乘票价：在NetworkGraph上做Dijkstra
+     * 边为票价定义的区间（不使用坐标估算边），同名车站组之间的换乘边为零票价
+     * @return 最低票价，无法到达返回-1
+     */
+    public static int searchTransferFare(String from, String to, boolean isRegular) {
+        NetworkGraph graph = NetworkManager.getGraph();
+        int source = graph.indexOf(from);
+        int target = graph.indexOf(to);
+        if (source < 0 || target < 0) {
+            return -1;
+        }
+
+        // 当前Fare只有单票价，普通/特急使用同一张图
+        RouteSearchContext.SearchSpace space = RouteSearchContext.get(graph).forward;
+        searchTransferFares(graph, source, target, space);
+        return space.reached(target) ? (int) space.distance(target) : -1;
+    }
+
+    /**
+     * 换乘图上的单源搜索，结果留在space中
+     * @param target 到达该车站后提前结束；传入-1则计算到所有车站的票价
+     */
+    static void searchTransferFares(NetworkGraph graph, int source, int target, RouteSearchContext.SearchSpace space) {
+        space.reset(graph.getStationCount());
+        space.set(source, 0, -1);
+        space.heap.offer(source, 0);
+        while (!space.heap.isEmpty()) {
+            int current = space.heap.poll();
+            long distance = space.distance(current);
+            if (current == target) {
+                return;
+            }
+            for (int e = graph.edgeStart(current), end = graph.edgeEnd(current); e < end; e++) {
+                if (graph.isEstimatedEdge(e)) continue;
+                relax(space, graph.edgeTarget(e), distance + graph.edgePrice(e));
+            }
+            for (int t = graph.transferStart(current), end = graph.transferEnd(current); t < end; t++) {
+                relax(space, graph.transferTarget(t), distance);
+            }
+        }
+    }
+
+    private static void relax(RouteSearchContext.SearchSpace space, int station, long distance) {
+        if (distance < space.distance(station)) {
+            space.set(station, distance, -1);
+            space.heap.offer(station, distance);
+        }
     }
 
     /**
@@ -279,23 +442,15 @@ public class FareCalculationEngine {
      * 生成票价矩阵（用于调试或导出）
      * @param stationCodes 车站编码列表
      * @param isRegular 是否为普通票价
-     * @return 票价矩阵，matrix[i][j]表示从i到j的票价
+     * @return 票价矩阵，matrix[i][j]表示从i到j的票价，-1表示无法到达（由FareMatrixExporter并行计算）
      */
     public static int[][] generateFareMatrix(List<String> stationCodes, boolean isRegular) {
         int n = stationCodes.size();
-        int[][] matrix = new int[n][n];
-
+        int[] fares = FareMatrixExporter.compute(stationCodes, isRegular);
+        int[][] matrix = new int[n][];
         for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                if (i == j) {
-                    matrix[i][j] = 0;
-                } else {
-                    int fare = calculateFare(stationCodes.get(i), stationCodes.get(j), isRegular);
-                    matrix[i][j] = fare >= 0 ? fare : -1; // -1表示无法到达
-                }
-            }
+            matrix[i] = Arrays.copyOfRange(fares, i * n, (i + 1) * n);
         }
-
         return matrix;
     }
 
@@ -328,8 +483,7 @@ public class FareCalculationEngine {
         }
 
         // 检查同名车站组
-        Map<String, List<String>> groups = buildStationGroups();
-        if (groups.isEmpty()) {
+        if (!StationGroupIndex.hasGroups()) {
             errors.add("No station groups found for transfer calculations");
         }
 
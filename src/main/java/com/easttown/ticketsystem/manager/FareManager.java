@@ -129,7 +129,7 @@ public class FareManager {
 
     /**
      * 根据线路自动生成票价
-     * 为线路中相邻车站生成基础票价
+     * 为线路中相邻车站生成基础票价，缺少的区间在一次批量修改中添加，任何一段失败则都不添加
      */
     public static boolean generateFaresForLine(String lineId, int basePrice) {
         LineManager.initialize(); // 确保线路管理器初始化
@@ -139,23 +139,22 @@ public class FareManager {
             return false;
         }
 
-        boolean success = true;
+        NetworkTransaction transaction = NetworkManager.beginTransaction();
+        java.util.Set<String> pending = new java.util.HashSet<>();
         java.util.List<String> stations = line.getStationCodes();
 
         for (int i = 0; i < stations.size() - 1; i++) {
             String from = stations.get(i);
             String to = stations.get(i + 1);
 
-            // 如果票价不存在，则添加
-            if (!hasBidirectionalFare(from, to)) {
-                boolean added = addBidirectionalFare(from, to, basePrice);
-                if (!added) {
-                    success = false;
-                }
+            // 如果票价不存在，则添加（同一区间在线路中出现多次时只添加一次）
+            String segment = from.compareTo(to) <= 0 ? from + "-" + to : to + "-" + from;
+            if (!hasBidirectionalFare(from, to) && pending.add(segment)) {
+                transaction.addFare(new Fare(from, to, basePrice));
             }
         }
 
-        return success;
+        return transaction.commit();
     }
 
     /**
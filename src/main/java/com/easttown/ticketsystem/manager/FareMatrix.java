@@ -0,0 +1,179 @@
+package com.easttown.ticketsystem.manager;
+
+import java.util.Arrays;
+
+/**
+ * 全站点最低票价矩阵 - 基于NetworkGraph快照计算
+ * 票价以行优先的扁平int[]存储：fares[from * n + to]
+ * 数据不可变，由FareMatrixService在后台线程构建后整体发布
+ */
+public final class FareMatrix {
+    /** 无法到达 */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final NetworkGraph graph;
+    private final int[] fares;
+
+    FareMatrix(NetworkGraph graph, int[] fares) {
+        this.graph = graph;
+        this.fares = fares;
+    }
+
+    /**
+     * 完整计算：每个起点执行一次单源Dijkstra
+     */
+    static FareMatrix compute(NetworkGraph graph) {
+        int n = graph.getStationCount();
+        int[] fares = new int[n * n];
+        for (int source = 0; source < n; source++) {
+            computeRow(graph, source, fares);
+        }
+        return new FareMatrix(graph, fares);
+    }
+
+    /**
+     * 增量更新：只重算受变化边影响的行
+     * 要求新旧快照的车站下标完全一致，否则返回null，调用方应完整重算
+     */
+    FareMatrix update(NetworkGraph newGraph) {
+        int n = graph.getStationCount();
+        if (!graph.hasSameStations(newGraph)) {
+            return null;
+        }
+
+        boolean[] affected = new boolean[n];
+        int affectedCount = 0;
+        int[] oldMin = new int[n];
+        int[] newMin = new int[n];
+        int[] targets = new int[n];
+        Arrays.fill(oldMin, UNREACHABLE);
+        Arrays.fill(newMin, UNREACHABLE);
+
+        for (int u = 0; u < n; u++) {
+            // 汇总u的出边（同一目标取最低价），比较新旧快照
+            int targetCount = 0;
+            for (int e = graph.edgeStart(u); e < graph.edgeEnd(u); e++) {
+                int v = graph.edgeTarget(e);
+                if (oldMin[v] == UNREACHABLE && newMin[v] == UNREACHABLE) targets[targetCount++] = v;
+                oldMin[v] = Math.min(oldMin[v], graph.edgePrice(e));
+            }
+            for (int e = newGraph.edgeStart(u); e < newGraph.edgeEnd(u); e++) {
+                int v = newGraph.edgeTarget(e);
+                if (oldMin[v] == UNREACHABLE && newMin[v] == UNREACHABLE) targets[targetCount++] = v;
+                newMin[v] = Math.min(newMin[v], newGraph.edgePrice(e));
+            }
+
+            for (int i = 0; i < targetCount; i++) {
+                int v = targets[i];
+                if (oldMin[v] != newMin[v]) {
+                    affectedCount += markAffectedRows(u, v, oldMin[v], newMin[v], affected);
+                }
+                oldMin[v] = UNREACHABLE;
+                newMin[v] = UNREACHABLE;
+            }
+        }
+
+        if (affectedCount == 0) {
+            return new FareMatrix(newGraph, fares);
+        }
+
+        int[] updated = fares.clone();
+        for (int source = 0; source < n; source++) {
+            if (affected[source]) {
+                computeRow(newGraph, source, updated);
+            }
+        }
+        return new FareMatrix(newGraph, updated);
+    }
+
+    /**
+     * 标记边u->v价格变化后需要重算的行
+     * 涨价/删除：旧最短路径经过该边（dist[s][u] + 旧价 == dist[s][v]）的行
+     * 降价/新增：经过该边可以更便宜（dist[s][u] + 新价 < dist[s][v]）的行
+     */
+    private int markAffectedRows(int u, int v, int oldPrice, int newPrice, boolean[] affected) {
+        int n = graph.getStationCount();
+        int marked = 0;
+        for (int s = 0; s < n; s++) {
+            if (affected[s]) continue;
+            int toU = fares[s * n + u];
+            if (toU == UNREACHABLE) continue;
+            int toV = fares[s * n + v];
+            boolean tight = oldPrice != UNREACHABLE && (long) toU + oldPrice == toV;
+            boolean improves = newPrice != UNREACHABLE && (long) toU + newPrice < toV;
+            if (tight || improves) {
+                affected[s] = true;
+                marked++;
+            }
+        }
+        return marked;
+    }
+
+    /**
+     * 单源Dijkstra，结果写入fares的第source行（复用当前线程的搜索上下文）
+     */
+    static void computeRow(NetworkGraph graph, int source, int[] fares) {
+        int n = graph.getStationCount();
+        RouteSearchContext.SearchSpace space = RouteSearchContext.get(graph).forward;
+        space.reset(n);
+        space.set(source, 0, -1);
+        space.heap.offer(source, 0);
+        while (!space.heap.isEmpty()) {
+            int current = space.heap.poll();
+            long distance = space.distance(current);
+            for (int e = graph.edgeStart(current), end = graph.edgeEnd(current); e < end; e++) {
+                int neighbor = graph.edgeTarget(e);
+                long newDistance = distance + graph.edgePrice(e);
+                if (newDistance < space.distance(neighbor)) {
+                    space.set(neighbor, newDistance, e);
+                    space.heap.offer(neighbor, newDistance);
+                }
+            }
+        }
+
+        int base = source * n;
+        for (int v = 0; v < n; v++) {
+            long distance = space.distance(v);
+            fares[base + v] = distance < UNREACHABLE ? (int) distance : UNREACHABLE;
+        }
+    }
+
+    // ==================== 查询方法 ====================
+
+    public NetworkGraph getGraph() {
+        return graph;
+    }
+
+    public long getVersion() {
+        return graph.getVersion();
+    }
+
+    public int getStationCount() {
+        return graph.getStationCount();
+    }
+
+    /**
+     * 按下标查询最低票价，无法到达返回UNREACHABLE
+     */
+    public int getFare(int from, int to) {
+        return fares[from * graph.getStationCount() + to];
+    }
+
+    /**
+     * 按车站编码查询最低票价，车站不存在或无法到达返回-1
+     */
+    public int getFare(String fromStation, String toStation) {
+        int from = graph.indexOf(fromStation);
+        int to = graph.indexOf(toStation);
+        if (from < 0 || to < 0) {
+            return -1;
+        }
+        int fare = getFare(from, to);
+        return fare == UNREACHABLE ? -1 : fare;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FareMatrix{version=%d, stations=%d}", graph.getVersion(), graph.getStationCount());
+    }
+}
@@ -0,0 +1,366 @@
+package com.easttown.ticketsystem.manager;
+
+import com.easttown.ticketsystem.TicketSystemMod;
+import com.easttown.ticketsystem.config.TicketSystemConfig;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 票价表导出 - 按FareCalculationEngine.calculateFare的规则批量计算全部站对票价
+ * 每个起点只做一次换乘图单源搜索，各起点在ForkJoinPool上并行计算，结果写入行优先的扁平int[]
+ * 结果可以流式写出为CSV或二进制格式（文件或HTTP响应）
+ */
+public class FareMatrixExporter {
+    /** 二进制格式标识 "TSFM" */
+    private static final int BINARY_MAGIC = 0x5453464D;
+    private static final int BINARY_VERSION = 1;
+    // 每个叶子任务处理的行数
+    private static final int ROWS_PER_TASK = 4;
+    // 换乘组票价缓存中的未计算标记
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+            pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("TicketSystem-FareExport-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            },
+            null, false);
+
+    private static volatile Progress progress;
+
+    /**
+     * 导出格式
+     */
+    public enum Format {
+        CSV("csv", "text/csv; charset=UTF-8"),
+        BINARY("bin", "application/octet-stream");
+
+        private final String extension;
+        private final String contentType;
+
+        Format(String extension, String contentType) {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    /**
+     * 导出进度
+     */
+    public static final class Progress {
+        private final int totalRows;
+        private final AtomicInteger completedRows = new AtomicInteger();
+        private final long startTime = System.currentTimeMillis();
+        private volatile long finishTime;
+
+        Progress(int totalRows) {
+            this.totalRows = totalRows;
+        }
+
+        public int getTotalRows() {
+            return totalRows;
+        }
+
+        public int getCompletedRows() {
+            return completedRows.get();
+        }
+
+        public boolean isFinished() {
+            return finishTime != 0;
+        }
+
+        public long getElapsedMillis() {
+            return (isFinished() ? finishTime : System.currentTimeMillis()) - startTime;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Fare export: %d/%d rows, %d ms%s",
+                    getCompletedRows(), totalRows, getElapsedMillis(), isFinished() ? "" : " (running)");
+        }
+    }
+
+    /**
+     * 最近一次（或正在进行的）导出的进度，从未导出时返回null
+     */
+    public static Progress getProgress() {
+        return progress;
+    }
+
+    /**
+     * 可以导出的最大车站数，与后台票价矩阵共用fare_matrix_max_stations（票价表为n*n的int数组）
+     */
+    public static int getMaxStations() {
+        return TicketSystemConfig.getFareMatrixMaxStations();
+    }
+
+    /**
+     * 计算票价表
+     * @param stationCodes 车站编码列表（行列顺序相同）
+     * @param isRegular 是否为普通票价
+     * @return 扁平数组，fares[i * n + j]为i到j的票价，-1表示无法到达
+     * @throws IllegalArgumentException 车站数超过getMaxStations()
+     */
+    public static int[] compute(List<String> stationCodes, boolean isRegular) {
+        int n = stationCodes.size();
+        if (n > getMaxStations()) {
+            throw new IllegalArgumentException(String.format(
+                    "Fare matrix of %d stations exceeds fare_matrix_max_stations (%d)", n, getMaxStations()));
+        }
+        NetworkManager.initialize();
+        NetworkGraph graph = NetworkManager.getGraph();
+        String[] codes = stationCodes.toArray(new String[0]);
+        // 每个车站只解析一次：图下标、线路前缀、站序号、换乘组
+        StationInfo info = new StationInfo(n);
+        for (int i = 0; i < n; i++) {
+            String code = codes[i];
+            boolean valid = code != null && !code.isEmpty();
+            info.graphIndex[i] = valid ? graph.indexOf(code) : -1;
+            info.prefix[i] = valid ? FareCalculationEngine.linePrefix(code) : null;
+            info.number[i] = info.prefix[i] != null ? FareCalculationEngine.parseCode(code).num : 0;
+            info.group[i] = valid ? StationGroupIndex.groupOf(code) : StationGroupIndex.NO_GROUP;
+            info.groupCount = Math.max(info.groupCount, info.group[i] + 1);
+        }
+
+        int[] fares = new int[n * n];
+        Progress current = new Progress(n);
+        progress = current;
+        try {
+            POOL.invoke(new RowTask(graph, codes, info, isRegular, fares, current, 0, n));
+        } finally {
+            current.finishTime = System.currentTimeMillis();
+        }
+        TicketSystemMod.LOGGER.debug("Computed fare matrix for {} stations in {} ms", n, current.getElapsedMillis());
+        return fares;
+    }
+
+    /**
+     * 预先解析的车站信息（按行列下标）
+     */
+    private static final class StationInfo {
+        final int[] graphIndex;
+        final String[] prefix;
+        final int[] number;
+        final int[] group;
+        int groupCount;
+
+        StationInfo(int n) {
+            graphIndex = new int[n];
+            prefix = new String[n];
+            number = new int[n];
+            group = new int[n];
+        }
+    }
+
+    /**
+     * 按行区间拆分的并行任务
+     */
+    private static final class RowTask extends RecursiveAction {
+        private final NetworkGraph graph;
+        private final String[] codes;
+        private final StationInfo info;
+        private final boolean isRegular;
+        private final int[] fares;
+        private final Progress progress;
+        private final int from;
+        private final int to;
+
+        RowTask(NetworkGraph graph, String[] codes, StationInfo info, boolean isRegular, int[] fares,
+                Progress progress, int from, int to) {
+            this.graph = graph;
+            this.codes = codes;
+            this.info = info;
+            this.isRegular = isRegular;
+            this.fares = fares;
+            this.progress = progress;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= ROWS_PER_TASK) {
+                for (int row = from; row < to; row++) {
+                    computeRow(row);
+                    progress.completedRows.incrementAndGet();
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RowTask(graph, codes, info, isRegular, fares, progress, from, mid),
+                    new RowTask(graph, codes, info, isRegular, fares, progress, mid, to));
+        }
+
+        /**
+         * 与sumWithTransfer相同的规则：同线票价，否则同名车站组之间的单次换乘；都不适用返回-1
+         */
+        private int pairFare(int row, int col, int[] groupFares) {
+            String prefix = info.prefix[row];
+            if (prefix != null && prefix.equals(info.prefix[col])) {
+                return FareCalculationEngine.lineFare(prefix, info.number[row], info.number[col], isRegular);
+            }
+            int fromGroup = info.group[row];
+            int toGroup = info.group[col];
+            if (fromGroup == StationGroupIndex.NO_GROUP || toGroup == StationGroupIndex.NO_GROUP) {
+                return -1;
+            }
+            if (fromGroup == toGroup) {
+                return 0;
+            }
+            // 同一行内起点组固定，按终点组缓存
+            if (groupFares[toGroup] == UNKNOWN) {
+                groupFares[toGroup] = FareCalculationEngine.groupTransferFare(fromGroup, toGroup, isRegular);
+            }
+            return groupFares[toGroup];
+        }
+
+        /**
+         * 一行：同线/单次换乘按原规则直接计算，其余站对取本行单源搜索的结果
+         */
+        private void computeRow(int row) {
+            int n = codes.length;
+            int base = row * n;
+            String origin = codes[row];
+            if (origin == null || origin.isEmpty()) {
+                for (int col = 0; col < n; col++) {
+                    fares[base + col] = -1;
+                }
+                return;
+            }
+
+            RouteSearchContext.SearchSpace space = null;
+            int source = info.graphIndex[row];
+            if (source >= 0) {
+                space = RouteSearchContext.get(graph).forward;
+                FareCalculationEngine.searchTransferFares(graph, source, -1, space);
+            }
+
+            int[] groupFares = new int[info.groupCount];
+            Arrays.fill(groupFares, UNKNOWN);
+            for (int col = 0; col < n; col++) {
+                String destination = codes[col];
+                int fare;
+                if (destination == null || destination.isEmpty()) {
+                    fare = -1;
+                } else if (origin.equals(destination)) {
+                    fare = 0;
+                } else {
+                    fare = pairFare(row, col, groupFares);
+                    int target = info.graphIndex[col];
+                    if (fare < 0 && space != null && target >= 0 && space.reached(target)) {
+                        fare = (int) space.distance(target);
+                    }
+                }
+                fares[base + col] = fare;
+            }
+        }
+    }
+
+    // ==================== 输出 ====================
+
+    /**
+     * 写出票价表（不关闭输出流）
+     * CSV：首行为车站编码表头，之后每行为一个起点，无法到达的单元格为空
+     * 二进制：magic、版本、车站数、UTF车站编码、行优先的int票价（大端序，-1为无法到达）
+     */
+    public static void write(List<String> stationCodes, int[] fares, Format format, OutputStream output) throws IOException {
+        if (format == Format.BINARY) {
+            writeBinary(stationCodes, fares, output);
+        } else {
+            writeCsv(stationCodes, fares, output);
+        }
+    }
+
+    private static void writeCsv(List<String> stationCodes, int[] fares, OutputStream output) throws IOException {
+        int n = stationCodes.size();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 1 << 16);
+        StringBuilder line = new StringBuilder(n * 4 + 16);
+        line.append("from\\to");
+        for (String code : stationCodes) {
+            line.append(',').append(csvField(code));
+        }
+        writer.write(line.append('\n').toString());
+
+        for (int i = 0; i < n; i++) {
+            line.setLength(0);
+            line.append(csvField(stationCodes.get(i)));
+            int base = i * n;
+            for (int j = 0; j < n; j++) {
+                line.append(',');
+                if (fares[base + j] >= 0) {
+                    line.append(fares[base + j]);
+                }
+            }
+            writer.write(line.append('\n').toString());
+        }
+        writer.flush();
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static void writeBinary(List<String> stationCodes, int[] fares, OutputStream output) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output, 1 << 16));
+        out.writeInt(BINARY_MAGIC);
+        out.writeInt(BINARY_VERSION);
+        out.writeInt(stationCodes.size());
+        for (String code : stationCodes) {
+            out.writeUTF(code != null ? code : "");
+        }
+        for (int fare : fares) {
+            out.writeInt(fare);
+        }
+        out.flush();
+    }
+
+    /**
+     * 计算全部车站的票价表并写入文件（先写临时文件再替换）
+     * @return 导出的车站数
+     */
+    public static int exportToFile(File file, Format format, boolean isRegular) throws IOException {
+        NetworkManager.initialize();
+        List<String> stationCodes = new ArrayList<>(NetworkManager.getStationCodes());
+        stationCodes.sort(null);
+        int[] fares = compute(stationCodes, isRegular);
+
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (OutputStream output = new FileOutputStream(temp)) {
+            write(stationCodes, fares, format, output);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        TicketSystemMod.LOGGER.info("Exported fare matrix ({} stations) to {}", stationCodes.size(), file);
+        return stationCodes.size();
+    }
+}
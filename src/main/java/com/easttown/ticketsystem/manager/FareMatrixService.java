@@ -0,0 +1,106 @@
+package com.easttown.ticketsystem.manager;
+
+import com.easttown.ticketsystem.TicketSystemMod;
+import com.easttown.ticketsystem.config.TicketSystemConfig;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 票价矩阵服务
+ * 在后台线程维护全站点最低票价矩阵，网络数据变化时只重算受影响的行
+ * 矩阵与当前数据版本一致时，票价查询为O(1)的数组访问
+ */
+public class FareMatrixService {
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TicketSystem-FareMatrix");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile FareMatrix matrix;
+    private static final AtomicBoolean updateScheduled = new AtomicBoolean(false);
+
+    static {
+        NetworkManager.addChangeListener(event -> requestUpdate());
+    }
+
+    /**
+     * 获取与当前数据版本一致的票价矩阵
+     * 矩阵尚未就绪或已过期时返回null（并安排后台更新），调用方应回退到实时路径计算
+     */
+    public static FareMatrix getMatrix() {
+        FareMatrix current = matrix;
+        if (current != null && current.getVersion() == NetworkManager.getDataVersion()) {
+            return current;
+        }
+        requestUpdate();
+        return null;
+    }
+
+    /**
+     * 安排一次后台更新（多次请求会合并）
+     */
+    public static void requestUpdate() {
+        if (!TicketSystemConfig.isFareMatrixEnabled()) {
+            matrix = null;
+            return;
+        }
+        if (updateScheduled.compareAndSet(false, true)) {
+            EXECUTOR.execute(FareMatrixService::runUpdate);
+        }
+    }
+
+    private static void runUpdate() {
+        updateScheduled.set(false);
+        try {
+            NetworkGraph graph = NetworkManager.getGraph();
+            FareMatrix current = matrix;
+            if (current != null && current.getVersion() == graph.getVersion()) {
+                return;
+            }
+
+            if (graph.getStationCount() > TicketSystemConfig.getFareMatrixMaxStations()) {
+                TicketSystemMod.LOGGER.warn("Fare matrix disabled: {} stations exceeds limit {}",
+                        graph.getStationCount(), TicketSystemConfig.getFareMatrixMaxStations());
+                matrix = null;
+                return;
+            }
+
+            long start = System.nanoTime();
+            FareMatrix updated = current != null ? current.update(graph) : null;
+            boolean incremental = updated != null;
+            if (updated == null) {
+                updated = FareMatrix.compute(graph);
+            }
+            matrix = updated;
+
+            TicketSystemMod.LOGGER.debug("{} {} in {} ms", incremental ? "Updated" : "Computed",
+                    updated, (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            TicketSystemMod.LOGGER.error("Failed to update fare matrix", e);
+        }
+    }
+
+    /**
+     * 丢弃当前矩阵并重新完整计算
+     */
+    public static void invalidate() {
+        matrix = null;
+        requestUpdate();
+    }
+
+    /**
+     * 获取矩阵状态
+     */
+    public static String getStatus() {
+        FareMatrix current = matrix;
+        if (current == null) {
+            return "Fare matrix: not ready";
+        }
+        boolean upToDate = current.getVersion() == NetworkManager.getDataVersion();
+        return String.format("Fare matrix: %d stations, version %d%s",
+                current.getStationCount(), current.getVersion(), upToDate ? "" : " (updating)");
+    }
+}
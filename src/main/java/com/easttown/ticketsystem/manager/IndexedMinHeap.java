@@ -0,0 +1,135 @@
+package com.easttown.ticketsystem.manager;
+
+import java.util.Arrays;
+
+/**
+ * 索引二叉堆 - 路径搜索使用的优先队列
+ * 元素为[0, capacity)范围内的整数（车站或边下标），键为long，支持降键操作
+ * 所有数组在扩容后复用，入队/出队不产生任何对象分配
+ */
+final class IndexedMinHeap {
+    private int[] heap = new int[0];      // 堆数组：位置 -> 元素
+    private int[] positions = new int[0]; // 元素 -> 位置，-1表示不在堆中
+    private long[] keys = new long[0];    // 元素 -> 键
+    private int size;
+
+    /**
+     * 确保可容纳[0, capacity)范围内的元素
+     */
+    void ensureCapacity(int capacity) {
+        if (positions.length < capacity) {
+            int newCapacity = Math.max(capacity, positions.length * 2);
+            int oldLength = positions.length;
+            heap = Arrays.copyOf(heap, newCapacity);
+            positions = Arrays.copyOf(positions, newCapacity);
+            keys = Arrays.copyOf(keys, newCapacity);
+            Arrays.fill(positions, oldLength, newCapacity, -1);
+        }
+    }
+
+    /**
+     * 清空堆（只重置仍在堆中的元素）
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(int element) {
+        return positions[element] >= 0;
+    }
+
+    /**
+     * 堆顶元素的键
+     */
+    long peekKey() {
+        return keys[heap[0]];
+    }
+
+    /**
+     * 插入元素；若已在堆中且新键更小则降键
+     * @return 是否插入或更新
+     */
+    boolean offer(int element, long key) {
+        int position = positions[element];
+        if (position < 0) {
+            keys[element] = key;
+            heap[size] = element;
+            positions[element] = size;
+            siftUp(size++);
+            return true;
+        }
+        if (key < keys[element]) {
+            keys[element] = key;
+            siftUp(position);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 取出键最小的元素
+     */
+    int poll() {
+        int top = heap[0];
+        positions[top] = -1;
+        size--;
+        if (size > 0) {
+            int last = heap[size];
+            heap[0] = last;
+            positions[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int position) {
+        int element = heap[position];
+        long key = keys[element];
+        while (position > 0) {
+            int parentPosition = (position - 1) >>> 1;
+            int parent = heap[parentPosition];
+            if (keys[parent] <= key) {
+                break;
+            }
+            heap[position] = parent;
+            positions[parent] = position;
+            position = parentPosition;
+        }
+        heap[position] = element;
+        positions[element] = position;
+    }
+
+    private void siftDown(int position) {
+        int element = heap[position];
+        long key = keys[element];
+        int half = size >>> 1;
+        while (position < half) {
+            int childPosition = 2 * position + 1;
+            int child = heap[childPosition];
+            int rightPosition = childPosition + 1;
+            if (rightPosition < size && keys[heap[rightPosition]] < keys[child]) {
+                childPosition = rightPosition;
+                child = heap[childPosition];
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            heap[position] = child;
+            positions[child] = position;
+            position = childPosition;
+        }
+        heap[position] = element;
+        positions[element] = position;
+    }
+}
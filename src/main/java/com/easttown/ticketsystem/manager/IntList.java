@@ -0,0 +1,23 @@
+package com.easttown.ticketsystem.manager;
+
+import java.util.Arrays;
+
+/**
+ * 可增长的int列表 - 路径搜索与收缩层次索引中用来收集下标，避免装箱
+ * 热点循环直接读写data与size
+ */
+final class IntList {
+    int[] data = new int[8];
+    int size;
+
+    void add(int value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, size * 2);
+        }
+        data[size++] = value;
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
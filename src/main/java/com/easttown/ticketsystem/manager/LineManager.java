@@ -84,8 +84,9 @@ public class LineManager {
             return false;
         }
 
-        line.addStation(stationCode);
-        return updateLine(line);
+        Line updated = line.copy();
+        updated.addStation(stationCode);
+        return updateLine(updated);
     }
 
     /**
@@ -97,8 +98,9 @@ public class LineManager {
             return false;
         }
 
-        line.insertStation(index, stationCode);
-        return updateLine(line);
+        Line updated = line.copy();
+        updated.insertStation(index, stationCode);
+        return updateLine(updated);
     }
 
     /**
@@ -110,9 +112,10 @@ public class LineManager {
             return false;
         }
 
-        boolean removed = line.removeStation(stationCode);
+        Line updated = line.copy();
+        boolean removed = updated.removeStation(stationCode);
         if (removed) {
-            return updateLine(line);
+            return updateLine(updated);
         }
         return false;
     }
@@ -0,0 +1,65 @@
+package com.easttown.ticketsystem.manager;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 网络数据变化事件
+ * 携带变化类型与受影响的车站编码，监听器可以据此只失效相关的派生数据
+ */
+public final class NetworkChangeEvent {
+    public enum Type {
+        STATION,  // 车站增删改
+        LINE,     // 线路增删改
+        FARE,     // 票价增删改
+        RELOAD    // 整体重新加载，所有派生数据都应失效
+    }
+
+    private final long version;
+    private final Type type;
+    private final Set<String> stationCodes;
+
+    NetworkChangeEvent(long version, Type type, Collection<String> stationCodes) {
+        this.version = version;
+        this.type = type;
+        this.stationCodes = stationCodes == null || stationCodes.isEmpty()
+                ? Collections.emptySet()
+                : Collections.unmodifiableSet(new LinkedHashSet<>(stationCodes));
+    }
+
+    /**
+     * 变化后的数据版本号
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * 受影响的车站编码（RELOAD事件为空）
+     */
+    public Set<String> getStationCodes() {
+        return stationCodes;
+    }
+
+    public boolean isFullReload() {
+        return type == Type.RELOAD;
+    }
+
+    /**
+     * 检查事件是否可能影响指定车站
+     */
+    public boolean affectsStation(String stationCode) {
+        return type == Type.RELOAD || stationCodes.contains(stationCode);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NetworkChangeEvent{version=%d, type=%s, stations=%s}", version, type, stationCodes);
+    }
+}
@@ -0,0 +1,13 @@
+package com.easttown.ticketsystem.manager;
+
+/**
+ * 网络数据变化监听器
+ * NetworkManager在车站/线路/票价变化后回调，供路径图、票价矩阵等派生缓存失效或更新
+ */
+@FunctionalInterface
+public interface NetworkChangeListener {
+    /**
+     * @param event 变化事件（包含变化后的数据版本号与受影响的车站）
+     */
+    void onNetworkChanged(NetworkChangeEvent event);
+}
@@ -0,0 +1,61 @@
+package com.easttown.ticketsystem.manager;
+
+/**
+ * 增量重新加载的结果 - 各数据集新增、修改、删除的条目数与重新读取的分片文件数
+ */
+public final class NetworkDiff {
+    private final int[] added = new int[NetworkPersistence.DataSet.values().length];
+    private final int[] updated = new int[added.length];
+    private final int[] removed = new int[added.length];
+    private int changedFiles;
+
+    NetworkDiff() {
+    }
+
+    void added(NetworkPersistence.DataSet dataSet) {
+        added[dataSet.ordinal()]++;
+    }
+
+    void updated(NetworkPersistence.DataSet dataSet) {
+        updated[dataSet.ordinal()]++;
+    }
+
+    void removed(NetworkPersistence.DataSet dataSet) {
+        removed[dataSet.ordinal()]++;
+    }
+
+    void fileChanged() {
+        changedFiles++;
+    }
+
+    /**
+     * 重新读取的分片文件数
+     */
+    public int getChangedFiles() {
+        return changedFiles;
+    }
+
+    /**
+     * 变化的条目总数
+     */
+    public int getChangeCount() {
+        int count = 0;
+        for (int i = 0; i < added.length; i++) {
+            count += added[i] + updated[i] + removed[i];
+        }
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return getChangeCount() == 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("车站 +%d/~%d/-%d，线路 +%d/~%d/-%d，票价 +%d/~%d/-%d（%d个文件）",
+                added[0], updated[0], removed[0],
+                added[1], updated[1], removed[1],
+                added[2], updated[2], removed[2],
+                changedFiles);
+    }
+}
@@ -0,0 +1,117 @@
+package com.easttown.ticketsystem.manager;
+
+import com.easttown.ticketsystem.TicketSystemMod;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 数据目录监视 - 分片文件在磁盘上被修改后自动增量载入
+ * 一段时间内没有新的文件事件后才载入，避免读到编辑器写了一半的文件；
+ * 自己写出的分片文件状态与记录一致，载入时直接跳过
+ */
+final class NetworkFileWatcher {
+    // 最后一次文件事件之后等待的毫秒数
+    private static final long QUIET_MILLIS = 1000;
+
+    private static WatchService service;
+    private static Thread thread;
+
+    private NetworkFileWatcher() {
+    }
+
+    /**
+     * 开始监视数据目录下的车站、线路、票价目录（替换之前的监视）
+     */
+    static synchronized void watch(File root) {
+        stop();
+        WatchService watchService = null;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (NetworkPersistence.DataSet dataSet : NetworkPersistence.DataSet.values()) {
+                NetworkStorage.getDirectory(dataSet).toPath().register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        } catch (IOException e) {
+            TicketSystemMod.LOGGER.warn("Failed to watch network data directory {}", root, e);
+            close(watchService);
+            return;
+        }
+        WatchService current = watchService;
+        service = current;
+        thread = new Thread(() -> run(current), "TicketSystem-FileWatcher");
+        thread.setDaemon(true);
+        thread.start();
+        TicketSystemMod.LOGGER.info("Watching network data directory {} for changes", root);
+    }
+
+    /**
+     * 停止监视
+     */
+    static synchronized void stop() {
+        if (service != null) {
+            close(service);
+            thread.interrupt();
+            service = null;
+            thread = null;
+        }
+    }
+
+    private static void run(WatchService watchService) {
+        try {
+            while (true) {
+                boolean changed = drain(watchService.take());
+                WatchKey key;
+                while ((key = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= drain(key);
+                }
+                if (changed) {
+                    NetworkDiff diff = NetworkManager.reloadChanges();
+                    if (!diff.isEmpty()) {
+                        TicketSystemMod.LOGGER.info("Reloaded changed network data files: {}", diff);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 已停止监视
+        } catch (Exception e) {
+            TicketSystemMod.LOGGER.error("Network data file watcher stopped", e);
+        }
+    }
+
+    /**
+     * 取出一个目录的事件，返回其中是否有分片文件（忽略写出时的临时文件）
+     */
+    private static boolean drain(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || ((Path) event.context()).toString().endsWith(".json")) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    private static void close(WatchService watchService) {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            TicketSystemMod.LOGGER.warn("Failed to close file watcher", e);
+        }
+    }
+}
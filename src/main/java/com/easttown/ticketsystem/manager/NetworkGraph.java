@@ -0,0 +1,497 @@
+package com.easttown.ticketsystem.manager;
+
+import com.easttown.ticketsystem.data.Fare;
+import com.easttown.ticketsystem.data.Line;
+import com.easttown.ticketsystem.data.Station;
+
+import java.util.*;
+
+/**
+ * 票价网络图快照 - 供路径计算使用的不可变邻接索引
+ * 车站映射为连续整数下标，边以CSR（压缩稀疏行）数组存储，每条边携带票价和线路下标
+ * 只在NetworkManager的车站/线路/票价发生变化时重建，查询期间无需再扫描全部票价
+ */
+public final class NetworkGraph {
+    /** 无线路归属的边 */
+    public static final int NO_LINE = -1;
+
+    private final long version;
+
+    // 车站下标
+    private final String[] stationCodes;
+    private final Map<String, Integer> stationIndex;
+
+    // 车站坐标（没有车站数据的编码坐标记为0）
+    private final int[] stationX;
+    private final int[] stationY;
+    private final int[] stationZ;
+    // 每格距离的最低票价（A*启发值的系数），坐标不完整时为0
+    private final double minFarePerBlock;
+    // 内容指纹（延迟计算，0表示尚未计算）
+    private volatile long fingerprint;
+
+    // 线路下标
+    private final String[] lineIds;
+
+    // CSR边数组：车站i的出边为 [edgeOffsets[i], edgeOffsets[i + 1])
+    private final int[] edgeOffsets;
+    private final int[] edgeSources;
+    private final int[] edgeTargets;
+    private final int[] edgePrices;
+    private final int[] edgeLines;
+
+    // 反向CSR：车站i的入边（正向边下标）为 reverseEdges[reverseOffsets[i] .. reverseOffsets[i + 1])
+    private final int[] reverseOffsets;
+    private final int[] reverseEdges;
+
+    // 车站是否有票价边（没有时其出边均为估算边）
+    private final boolean[] hasFareEdge;
+    // 换乘邻接（CSR）：同名车站组内的其他车站，换乘为零票价
+    private final int[] transferOffsets;
+    private final int[] transferTargets;
+
+    private NetworkGraph(long version, String[] stationCodes, Map<String, Integer> stationIndex,
+                         int[] stationX, int[] stationY, int[] stationZ, double minFarePerBlock, String[] lineIds,
+                         int[] edgeOffsets, int[] edgeSources, int[] edgeTargets, int[] edgePrices, int[] edgeLines,
+                         int[] reverseOffsets, int[] reverseEdges,
+                         boolean[] hasFareEdge, int[] transferOffsets, int[] transferTargets) {
+        this.version = version;
+        this.stationCodes = stationCodes;
+        this.stationIndex = stationIndex;
+        this.stationX = stationX;
+        this.stationY = stationY;
+        this.stationZ = stationZ;
+        this.minFarePerBlock = minFarePerBlock;
+        this.lineIds = lineIds;
+        this.edgeOffsets = edgeOffsets;
+        this.edgeSources = edgeSources;
+        this.edgeTargets = edgeTargets;
+        this.edgePrices = edgePrices;
+        this.edgeLines = edgeLines;
+        this.reverseOffsets = reverseOffsets;
+        this.reverseEdges = reverseEdges;
+        this.hasFareEdge = hasFareEdge;
+        this.transferOffsets = transferOffsets;
+        this.transferTargets = transferTargets;
+    }
+
+    /**
+     * 根据当前网络数据构建图快照
+     * 边的规则与原RouteCalculator.getNeighbors一致：
+     * 1. 每个有效票价生成双向边；若区间在某条线路上相邻，则每条这样的线路生成一条边
+     * 2. 没有任何票价边的车站，按线路相邻关系生成估算票价的边
+     */
+    static NetworkGraph build(long version, Collection<Station> stations, Collection<Line> lines, Collection<Fare> fares) {
+        // 车站下标：已登记车站 + 线路/票价中引用的车站，按编码排序保证下标稳定
+        TreeSet<String> codes = new TreeSet<>();
+        Map<String, Station> stationByCode = new HashMap<>();
+        for (Station station : stations) {
+            if (station.getCode() != null) {
+                codes.add(station.getCode());
+                stationByCode.put(station.getCode(), station);
+            }
+        }
+        List<Line> sortedLines = new ArrayList<>();
+        for (Line line : lines) {
+            if (line.getId() == null) continue;
+            sortedLines.add(line);
+            for (String code : line.getStationCodes()) {
+                if (code != null) codes.add(code);
+            }
+        }
+        sortedLines.sort(Comparator.comparing(Line::getId));
+        for (Fare fare : fares) {
+            if (fare.isValid()) {
+                codes.add(fare.getFromStation());
+                codes.add(fare.getToStation());
+            }
+        }
+
+        String[] stationCodes = codes.toArray(new String[0]);
+        Map<String, Integer> stationIndex = new HashMap<>(stationCodes.length * 2);
+        for (int i = 0; i < stationCodes.length; i++) {
+            stationIndex.put(stationCodes[i], i);
+        }
+
+        String[] lineIds = new String[sortedLines.size()];
+        // 区间 -> 该区间相邻的线路下标列表
+        Map<Long, List<Integer>> segmentLines = new HashMap<>();
+        for (int l = 0; l < sortedLines.size(); l++) {
+            Line line = sortedLines.get(l);
+            lineIds[l] = line.getId();
+            List<String> lineStations = line.getStationCodes();
+            for (int i = 0; i + 1 < lineStations.size(); i++) {
+                Integer a = stationIndex.get(lineStations.get(i));
+                Integer b = stationIndex.get(lineStations.get(i + 1));
+                if (a == null || b == null || a.equals(b)) continue;
+                List<Integer> owners = segmentLines.computeIfAbsent(segmentKey(a, b), k -> new ArrayList<>(1));
+                if (!owners.contains(l)) owners.add(l);
+            }
+        }
+
+        // 收集有向边（from, to, price, line）
+        int n = stationCodes.length;
+        EdgeList edges = new EdgeList();
+        boolean[] hasFareEdge = new boolean[n];
+        for (Fare fare : fares) {
+            if (!fare.isValid()) continue;
+            int a = stationIndex.get(fare.getFromStation());
+            int b = stationIndex.get(fare.getToStation());
+            if (a == b) continue;
+            int price = fare.getPrice();
+            List<Integer> owners = segmentLines.get(segmentKey(a, b));
+            if (owners == null || owners.isEmpty()) {
+                edges.add(a, b, price, NO_LINE);
+                edges.add(b, a, price, NO_LINE);
+            } else {
+                for (int owner : owners) {
+                    edges.add(a, b, price, owner);
+                    edges.add(b, a, price, owner);
+                }
+            }
+            hasFareEdge[a] = true;
+            hasFareEdge[b] = true;
+        }
+
+        // 没有票价定义的车站：按线路相邻关系估算
+        for (int l = 0; l < sortedLines.size(); l++) {
+            List<String> lineStations = sortedLines.get(l).getStationCodes();
+            for (int i = 0; i < lineStations.size(); i++) {
+                Integer current = stationIndex.get(lineStations.get(i));
+                if (current == null || hasFareEdge[current]) continue;
+                Station currentStation = stationByCode.get(lineStations.get(i));
+                if (i > 0) {
+                    addEstimatedEdge(edges, stationIndex, stationByCode, current, currentStation, lineStations.get(i - 1), l);
+                }
+                if (i < lineStations.size() - 1) {
+                    addEstimatedEdge(edges, stationIndex, stationByCode, current, currentStation, lineStations.get(i + 1), l);
+                }
+            }
+        }
+
+        // 计数排序生成CSR数组，同一车站的出边保持添加顺序
+        int m = edges.size;
+        int[] edgeOffsets = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            edgeOffsets[edges.from[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            edgeOffsets[i + 1] += edgeOffsets[i];
+        }
+        int[] cursor = Arrays.copyOf(edgeOffsets, n);
+        int[] edgeSources = new int[m];
+        int[] edgeTargets = new int[m];
+        int[] edgePrices = new int[m];
+        int[] edgeLines = new int[m];
+        for (int e = 0; e < m; e++) {
+            int slot = cursor[edges.from[e]]++;
+            edgeSources[slot] = edges.from[e];
+            edgeTargets[slot] = edges.to[e];
+            edgePrices[slot] = edges.price[e];
+            edgeLines[slot] = edges.line[e];
+        }
+
+        // 反向索引（用于从终点出发的反向搜索）
+        int[] reverseOffsets = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            reverseOffsets[edgeTargets[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            reverseOffsets[i + 1] += reverseOffsets[i];
+        }
+        cursor = Arrays.copyOf(reverseOffsets, n);
+        int[] reverseEdges = new int[m];
+        for (int e = 0; e < m; e++) {
+            reverseEdges[cursor[edgeTargets[e]]++] = e;
+        }
+
+        // 换乘边：同名车站组内两两相连（零票价），与StationGroupIndex的分组规则一致
+        Map<String, List<Integer>> groups = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            Station station = stationByCode.get(stationCodes[i]);
+            if (station == null) continue;
+            for (String key : StationGroupIndex.groupKeys(station)) {
+                groups.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            }
+        }
+        List<Set<Integer>> transferSets = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            transferSets.add(null);
+        }
+        for (List<Integer> members : groups.values()) {
+            if (members.size() < 2) continue;
+            for (int member : members) {
+                Set<Integer> targets = transferSets.get(member);
+                if (targets == null) {
+                    targets = new TreeSet<>();
+                    transferSets.set(member, targets);
+                }
+                targets.addAll(members);
+                targets.remove(member);
+            }
+        }
+        int[] transferOffsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            Set<Integer> targets = transferSets.get(i);
+            transferOffsets[i + 1] = transferOffsets[i] + (targets == null ? 0 : targets.size());
+        }
+        int[] transferTargets = new int[transferOffsets[n]];
+        for (int i = 0; i < n; i++) {
+            Set<Integer> targets = transferSets.get(i);
+            if (targets == null) continue;
+            int slot = transferOffsets[i];
+            for (int target : targets) {
+                transferTargets[slot++] = target;
+            }
+        }
+
+        // 坐标与每格最低票价：任一边的端点缺少车站数据时无法给出下界，系数取0
+        int[] stationX = new int[n];
+        int[] stationY = new int[n];
+        int[] stationZ = new int[n];
+        boolean[] hasCoordinates = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            Station station = stationByCode.get(stationCodes[i]);
+            if (station != null) {
+                stationX[i] = station.getX();
+                stationY[i] = station.getY();
+                stationZ[i] = station.getZ();
+                hasCoordinates[i] = true;
+            }
+        }
+        double minFarePerBlock = Double.MAX_VALUE;
+        for (int e = 0; e < m && minFarePerBlock > 0; e++) {
+            int a = edgeSources[e];
+            int b = edgeTargets[e];
+            if (!hasCoordinates[a] || !hasCoordinates[b]) {
+                minFarePerBlock = 0;
+            } else {
+                double distance = distance(stationX, stationY, stationZ, a, b);
+                if (distance > 0) {
+                    minFarePerBlock = Math.min(minFarePerBlock, edgePrices[e] / distance);
+                }
+            }
+        }
+        // 留出浮点误差余量，保证启发值不会高估
+        minFarePerBlock = minFarePerBlock == Double.MAX_VALUE ? 0 : minFarePerBlock * (1 - 1e-9);
+
+        return new NetworkGraph(version, stationCodes, stationIndex, stationX, stationY, stationZ, minFarePerBlock, lineIds,
+                edgeOffsets, edgeSources, edgeTargets, edgePrices, edgeLines, reverseOffsets, reverseEdges,
+                hasFareEdge, transferOffsets, transferTargets);
+    }
+
+    private static void addEstimatedEdge(EdgeList edges, Map<String, Integer> stationIndex, Map<String, Station> stationByCode,
+                                         int from, Station fromStation, String toCode, int line) {
+        Integer to = stationIndex.get(toCode);
+        if (to == null || to == from) return;
+        edges.add(from, to, estimateFare(fromStation, stationByCode.get(toCode)), line);
+    }
+
+    /**
+     * 基于坐标距离估算票价（没有票价定义时使用）
+     * 简单价格公式：每100格1铜币，最低10铜币；车站不存在时默认100铜币
+     */
+    static int estimateFare(Station s1, Station s2) {
+        if (s1 == null || s2 == null) {
+            return 100;
+        }
+        long dx = (long) s1.getX() - s2.getX();
+        long dy = (long) s1.getY() - s2.getY();
+        long dz = (long) s1.getZ() - s2.getZ();
+        double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        return Math.max(10, (int) (distance / 100));
+    }
+
+    private static double distance(int[] x, int[] y, int[] z, int a, int b) {
+        double dx = (double) x[a] - x[b];
+        double dy = (double) y[a] - y[b];
+        double dz = (double) z[a] - z[b];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    private static long segmentKey(int a, int b) {
+        int lo = Math.min(a, b);
+        int hi = Math.max(a, b);
+        return ((long) lo << 32) | (hi & 0xFFFFFFFFL);
+    }
+
+    // ==================== 查询方法 ====================
+
+    /**
+     * 构建时对应的NetworkManager数据版本
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getStationCount() {
+        return stationCodes.length;
+    }
+
+    public int getEdgeCount() {
+        return edgeTargets.length;
+    }
+
+    /**
+     * 车站编码 -> 下标，不存在返回-1
+     */
+    public int indexOf(String stationCode) {
+        Integer index = stationCode != null ? stationIndex.get(stationCode) : null;
+        return index != null ? index : -1;
+    }
+
+    public String stationCode(int index) {
+        return stationCodes[index];
+    }
+
+    /**
+     * 检查两个快照的车站下标是否完全一致（下标一致时可以按下标比较边的变化）
+     */
+    public boolean hasSameStations(NetworkGraph other) {
+        return other != null && Arrays.equals(stationCodes, other.stationCodes);
+    }
+
+    /**
+     * 图内容的指纹（车站、线路与全部边），与数据版本号无关
+     * 用于判断持久化的派生索引是否仍然适用于当前图
+     */
+    public long fingerprint() {
+        long hash = fingerprint;
+        if (hash == 0) {
+            hash = 1125899906842597L;
+            for (String code : stationCodes) {
+                hash = 31 * hash + code.hashCode();
+            }
+            for (String lineId : lineIds) {
+                hash = 31 * hash + lineId.hashCode();
+            }
+            for (int e = 0; e < edgeTargets.length; e++) {
+                hash = 31 * hash + edgeSources[e];
+                hash = 31 * hash + edgeTargets[e];
+                hash = 31 * hash + edgePrices[e];
+                hash = 31 * hash + edgeLines[e];
+            }
+            hash = hash == 0 ? 1 : hash;
+            fingerprint = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * 两站之间票价的下界：直线距离 × 每格最低票价
+     * 由三角不等式可知该值不超过任何路径的实际票价（可采纳且一致），用作A*启发值
+     */
+    public long fareLowerBound(int from, int to) {
+        if (minFarePerBlock <= 0) {
+            return 0;
+        }
+        return (long) Math.floor(distance(stationX, stationY, stationZ, from, to) * minFarePerBlock);
+    }
+
+    public double getMinFarePerBlock() {
+        return minFarePerBlock;
+    }
+
+    /**
+     * 线路下标 -> 线路ID，NO_LINE返回null
+     */
+    public String lineId(int lineIndex) {
+        return lineIndex == NO_LINE ? null : lineIds[lineIndex];
+    }
+
+    public int edgeStart(int station) {
+        return edgeOffsets[station];
+    }
+
+    public int edgeEnd(int station) {
+        return edgeOffsets[station + 1];
+    }
+
+    public int edgeSource(int edge) {
+        return edgeSources[edge];
+    }
+
+    public int edgeTarget(int edge) {
+        return edgeTargets[edge];
+    }
+
+    public int edgePrice(int edge) {
+        return edgePrices[edge];
+    }
+
+    public int edgeLine(int edge) {
+        return edgeLines[edge];
+    }
+
+    /**
+     * 车站入边在反向索引中的范围，配合reverseEdge使用
+     */
+    public int reverseStart(int station) {
+        return reverseOffsets[station];
+    }
+
+    public int reverseEnd(int station) {
+        return reverseOffsets[station + 1];
+    }
+
+    /**
+     * 反向索引位置 -> 正向边下标
+     */
+    public int reverseEdge(int position) {
+        return reverseEdges[position];
+    }
+
+    /**
+     * 边的票价是否为坐标估算值（起点车站没有任何票价定义）
+     */
+    public boolean isEstimatedEdge(int edge) {
+        return !hasFareEdge[edgeSources[edge]];
+    }
+
+    /**
+     * 车站换乘邻接的范围[transferStart, transferEnd)
+     */
+    public int transferStart(int station) {
+        return transferOffsets[station];
+    }
+
+    public int transferEnd(int station) {
+        return transferOffsets[station + 1];
+    }
+
+    public int transferTarget(int position) {
+        return transferTargets[position];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NetworkGraph{version=%d, stations=%d, edges=%d, lines=%d}",
+                version, stationCodes.length, edgeTargets.length, lineIds.length);
+    }
+
+    /**
+     * 构建期间使用的可增长边列表
+     */
+    private static class EdgeList {
+        int[] from = new int[16];
+        int[] to = new int[16];
+        int[] price = new int[16];
+        int[] line = new int[16];
+        int size;
+
+        void add(int f, int t, int p, int l) {
+            if (size == from.length) {
+                int capacity = size * 2;
+                from = Arrays.copyOf(from, capacity);
+                to = Arrays.copyOf(to, capacity);
+                price = Arrays.copyOf(price, capacity);
+                line = Arrays.copyOf(line, capacity);
+            }
+            from[size] = f;
+            to[size] = t;
+            price[size] = p;
+            line[size] = l;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.easttown.ticketsystem.manager;
+
+import com.easttown.ticketsystem.TicketSystemMod;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 网络数据预写日志 - 只追加的二进制修改记录
+ * 文件头：magic、版本；每条记录：载荷长度、载荷CRC32、载荷（操作码、键、JSON值）
+ * 记录都是对单个键的覆盖或删除，重复回放同一段记录结果不变，
+ * 因此快照写出后再截掉已包含的前缀即可，中途崩溃最多导致重放已写入快照的记录
+ */
+final class NetworkJournal {
+    /** 文件标识 "TSWJ" */
+    private static final int MAGIC = 0x5453574A;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    // 单条记录载荷上限，超过视为损坏
+    private static final int MAX_RECORD_SIZE = 16 << 20;
+
+    /**
+     * 修改操作
+     */
+    enum Op {
+        PUT_STATION(NetworkPersistence.DataSet.STATIONS),
+        REMOVE_STATION(NetworkPersistence.DataSet.STATIONS),
+        PUT_LINE(NetworkPersistence.DataSet.LINES),
+        REMOVE_LINE(NetworkPersistence.DataSet.LINES),
+        PUT_FARE(NetworkPersistence.DataSet.FARES),
+        REMOVE_FARE(NetworkPersistence.DataSet.FARES);
+
+        private static final Op[] VALUES = values();
+
+        private final NetworkPersistence.DataSet dataSet;
+
+        Op(NetworkPersistence.DataSet dataSet) {
+            this.dataSet = dataSet;
+        }
+
+        NetworkPersistence.DataSet getDataSet() {
+            return dataSet;
+        }
+    }
+
+    /**
+     * 一条修改记录，删除操作的value为null
+     */
+    static final class Record {
+        final Op op;
+        final String key;
+        final String value;
+
+        Record(Op op, String key, String value) {
+            this.op = op;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private final File file;
+    private DataOutputStream output;
+    private long size;
+
+    private NetworkJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * 打开日志用于追加，文件不存在时创建
+     */
+    static NetworkJournal open(File file) throws IOException {
+        NetworkJournal journal = new NetworkJournal(file);
+        journal.openOutput();
+        return journal;
+    }
+
+    private void openOutput() throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        boolean fresh = !file.exists() || file.length() < HEADER_SIZE;
+        if (fresh) {
+            try (DataOutputStream header = new DataOutputStream(new FileOutputStream(file))) {
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+            }
+        }
+        output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        size = file.length();
+    }
+
+    /**
+     * 追加一条记录到缓冲区，调用flush()后才写入操作系统
+     */
+    synchronized void append(Op op, String key, String value) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 + (value != null ? value.length() : 0));
+        DataOutputStream payload = new DataOutputStream(buffer);
+        payload.writeByte(op.ordinal());
+        payload.writeUTF(key);
+        if (value != null) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            payload.writeInt(bytes.length);
+            payload.write(bytes);
+        } else {
+            payload.writeInt(-1);
+        }
+        byte[] bytes = buffer.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        output.writeInt(bytes.length);
+        output.writeInt((int) crc.getValue());
+        output.write(bytes);
+        size += 8 + bytes.length;
+    }
+
+    /**
+     * 把缓冲区中的记录刷新到操作系统
+     */
+    synchronized void flush() throws IOException {
+        output.flush();
+    }
+
+    /**
+     * 当前文件大小（含文件头）
+     */
+    synchronized long size() {
+        return size;
+    }
+
+    /**
+     * 是否包含记录
+     */
+    synchronized boolean hasRecords() {
+        return size > HEADER_SIZE;
+    }
+
+    /**
+     * 丢弃position之前的记录（它们已写入快照），保留之后追加的记录
+     */
+    synchronized void discardBefore(long position) throws IOException {
+        output.close();
+        File temp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile source = new RandomAccessFile(file, "r");
+             FileOutputStream stream = new FileOutputStream(temp);
+             DataOutputStream target = new DataOutputStream(new BufferedOutputStream(stream))) {
+            target.writeInt(MAGIC);
+            target.writeInt(VERSION);
+            source.seek(Math.max(position, HEADER_SIZE));
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = source.read(buffer)) > 0) {
+                target.write(buffer, 0, read);
+            }
+            // position之后的记录只存在于日志中，替换前必须落盘
+            target.flush();
+            stream.getFD().sync();
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            openOutput();
+        }
+    }
+
+    synchronized void close() {
+        try {
+            output.close();
+        } catch (IOException e) {
+            TicketSystemMod.LOGGER.warn("Failed to close journal {}", file, e);
+        }
+    }
+
+    /**
+     * 按顺序回放日志中的记录
+     * 遇到不完整或校验失败的记录（写入时崩溃）即停止；truncate为true时截掉文件中该位置之后的内容
+     * @param truncate 回放后继续向该文件追加时为true；只读回放（旧的全局目录）时为false，不修改文件
+     * @return 回放的记录数
+     */
+    static int replay(File file, boolean truncate, Consumer<Record> consumer) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        int count = 0;
+        long validLength = HEADER_SIZE;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (file.length() < HEADER_SIZE) {
+                validLength = 0;
+            } else if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Unsupported journal format: " + file);
+            } else {
+                CRC32 crc = new CRC32();
+                while (true) {
+                    Record record;
+                    int length;
+                    try {
+                        length = input.readInt();
+                        int checksum = input.readInt();
+                        if (length <= 0 || length > MAX_RECORD_SIZE) {
+                            break;
+                        }
+                        byte[] bytes = new byte[length];
+                        input.readFully(bytes);
+                        crc.reset();
+                        crc.update(bytes);
+                        if ((int) crc.getValue() != checksum) {
+                            break;
+                        }
+                        record = decode(bytes);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (record == null) {
+                        break;
+                    }
+                    consumer.accept(record);
+                    validLength += 8 + length;
+                    count++;
+                }
+            }
+        }
+
+        if (validLength < file.length()) {
+            if (!truncate) {
+                TicketSystemMod.LOGGER.warn("Journal {} has a torn tail, ignoring {} bytes after {} records",
+                        file, file.length() - validLength, count);
+                return count;
+            }
+            TicketSystemMod.LOGGER.warn("Journal {} has a torn tail, truncating {} bytes after {} records",
+                    file, file.length() - validLength, count);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+        return count;
+    }
+
+    private static Record decode(byte[] bytes) throws IOException {
+        DataInputStream payload = new DataInputStream(new ByteArrayInputStream(bytes));
+        int opIndex = payload.readUnsignedByte();
+        if (opIndex >= Op.VALUES.length) {
+            return null;
+        }
+        String key = payload.readUTF();
+        int valueLength = payload.readInt();
+        String value = null;
+        if (valueLength >= 0) {
+            byte[] valueBytes = new byte[valueLength];
+            payload.readFully(valueBytes);
+            value = new String(valueBytes, StandardCharsets.UTF_8);
+        }
+        return new Record(Op.VALUES[opIndex], key, value);
+    }
+}
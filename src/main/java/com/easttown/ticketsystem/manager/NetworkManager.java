@@ -1,44 +1,49 @@
 package com.easttown.ticketsystem.manager;
 
 import com.easttown.ticketsystem.TicketSystemMod;
+import com.easttown.ticketsystem.config.TicketSystemConfig;
 import com.easttown.ticketsystem.data.Station;
 import com.easttown.ticketsystem.data.Line;
 import com.easttown.ticketsystem.data.Fare;
+import com.easttown.ticketsystem.util.FareTrace;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
  * 网络数据管理器 - 替换现有的StationManager
  * 文档要求：修复数据存储位置bug，所有数据操作在服务器端执行
  * 统一管理车站、线路、票价数据
+ * 数据以不可变版本（NetworkState）发布：修改方法互斥执行并生成新版本，读取方法在任何线程都不加锁
  */
 public class NetworkManager {
-    private static final String BASE_PATH = "mods/" + TicketSystemMod.MODID + "/";
-    private static final String STATIONS_DIR = BASE_PATH + "stations/";
-    private static final String LINES_DIR = BASE_PATH + "lines/";
-    private static final String FARES_DIR = BASE_PATH + "fares/";
-
-    private static final String STATIONS_FILE = STATIONS_DIR + "stations.json";
-    private static final String LINES_FILE = LINES_DIR + "lines.json";
-    private static final String FARES_FILE = FARES_DIR + "fares.json";
-
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    // 日志记录与默认的快照输出使用紧凑格式
+    private static final Gson COMPACT_GSON = new Gson();
+    private static final Type STATION_MAP_TYPE = new TypeToken<Map<String, Station>>() {}.getType();
+    private static final Type LINE_MAP_TYPE = new TypeToken<Map<String, Line>>() {}.getType();
 
-    // 数据缓存
-    private static Map<String, Station> stations = new HashMap<>();
-    private static Map<String, Line> lines = new HashMap<>();
-    private static Map<String, Fare> fares = new HashMap<>(); // key: "from-to"
+    // 当前数据版本：修改在锁内基于当前版本生成新版本后整体替换，读取不加锁
+    private static volatile NetworkState state = NetworkState.EMPTY;
 
     // 初始化标志
-    private static boolean initialized = false;
+    private static volatile boolean initialized = false;
+
+    // 数据变化监听器（票价矩阵等派生缓存）
+    private static final List<NetworkChangeListener> changeListeners = new CopyOnWriteArrayList<>();
 
     /**
      * 初始化管理器，加载所有数据
@@ -48,81 +53,161 @@ public class NetworkManager {
         if (initialized) {
             return;
         }
+        synchronized (NetworkManager.class) {
+            if (!initialized) {
+                load();
+            }
+        }
+    }
 
+    /**
+     * 加载数据并发布（持有锁，后台写出线程在发布之前不会读取到空数据）
+     */
+    private static void load() {
         try {
             // 确保目录存在
-            ensureDirectories();
-
-            // 加载数据
-            loadStations();
-            loadLines();
-            loadFares();
-
-            TicketSystemMod.LOGGER.info("NetworkManager initialized: {} stations, {} lines, {} fares loaded",
-                    stations.size(), lines.size(), fares.size());
+            NetworkStorage.ensureDirectories();
+
+            // 当前世界还没有数据时从旧的全局目录导入
+            boolean migrate = NetworkStorage.needsMigration();
+            File source = migrate ? NetworkStorage.LEGACY_ROOT : NetworkStorage.getRoot();
+
+            // 加载数据：二进制快照有效时优先使用，否则解析JSON分片
+            long start = System.nanoTime();
+            NetworkState.Draft draft = NetworkState.EMPTY.edit();
+            boolean fromSnapshot = !migrate && TicketSystemConfig.isBinarySnapshotEnabled() && loadBinarySnapshot(draft);
+            if (!fromSnapshot) {
+                loadShards(draft, source, migrate);
+            }
+            long loadTime = System.nanoTime() - start;
+            // 回放快照之后的修改记录
+            // 旧的全局目录只读，不打开日志追加
+            NetworkPersistence.replayJournal(NetworkStorage.getJournalFile(source),
+                    NetworkStorage.isLegacyRoot() ? null : NetworkStorage.getJournalFile(NetworkStorage.getRoot()),
+                    record -> applyJournalRecord(draft, record));
+            commit(draft);
+            markChanged(NetworkChangeEvent.Type.RELOAD, null);
+
+            NetworkState current = state;
+            if (migrate) {
+                TicketSystemMod.LOGGER.info("Imported network data from {} into {}", source, NetworkStorage.getRoot());
+            }
+            TicketSystemMod.LOGGER.info("NetworkManager initialized: {} stations, {} lines, {} fares loaded from {} in {} ms",
+                    current.getStations().size(), current.getLines().size(), current.getFares().size(),
+                    fromSnapshot ? "binary snapshot" : source,
+                    loadTime / 1_000_000);
 
             initialized = true;
         } catch (Exception e) {
             TicketSystemMod.LOGGER.error("Failed to initialize NetworkManager", e);
             // 使用空数据继续运行
-            stations = new HashMap<>();
-            lines = new HashMap<>();
-            fares = new HashMap<>();
+            commit(NetworkState.EMPTY.edit());
+            markChanged(NetworkChangeEvent.Type.RELOAD, null);
         }
     }
 
-    private static void ensureDirectories() {
-        new File(STATIONS_DIR).mkdirs();
-        new File(LINES_DIR).mkdirs();
-        new File(FARES_DIR).mkdirs();
+    /**
+     * 从二进制快照加载全部数据，快照不存在或已过期时返回false
+     */
+    private static boolean loadBinarySnapshot(NetworkState.Draft draft) {
+        try {
+            NetworkSnapshot.Data data = NetworkSnapshot.read(NetworkStorage.getSnapshotFile(),
+                    NetworkStorage.listAllShardFiles());
+            if (data == null) {
+                return false;
+            }
+            draft.replace(data.stations, data.lines, data.fares);
+            NetworkStorage.clearStamps();
+            for (File file : NetworkStorage.listAllShardFiles()) {
+                NetworkStorage.recordStamp(file);
+            }
+            return true;
+        } catch (Exception e) {
+            TicketSystemMod.LOGGER.warn("Failed to read binary snapshot, loading JSON instead", e);
+            return false;
+        }
     }
 
-    // ==================== 车站管理 ====================
+    /**
+     * 读取数据目录下的全部分片
+     * 条目不在其规范分片中（旧的单文件布局或手工移动）时，把两个分片都标记为待保存，写回时自动归位
+     * @param migrate 从旧目录导入，全部条目都需要写入当前数据目录
+     */
+    private static void loadShards(NetworkState.Draft draft, File base, boolean migrate) {
+        Map<String, Station> stations = new HashMap<>();
+        Map<String, Line> lines = new HashMap<>();
+        Map<String, Fare> fares = new HashMap<>();
+        NetworkStorage.clearStamps();
+
+        for (File file : NetworkStorage.listShardFiles(base, NetworkPersistence.DataSet.STATIONS)) {
+            Map<String, Station> loaded = readShard(file, STATION_MAP_TYPE);
+            for (Map.Entry<String, Station> entry : loaded.entrySet()) {
+                stations.put(entry.getKey(), entry.getValue());
+                checkShard(NetworkPersistence.DataSet.STATIONS, file,
+                        NetworkStorage.stationShard(entry.getKey()), migrate);
+            }
+        }
 
-    private static void loadStations() {
-        File file = new File(STATIONS_FILE);
-        if (!file.exists()) {
-            saveStations(); // 创建空文件
-            return;
+        for (File file : NetworkStorage.listShardFiles(base, NetworkPersistence.DataSet.LINES)) {
+            Map<String, Line> loaded = readShard(file, LINE_MAP_TYPE);
+            for (Map.Entry<String, Line> entry : loaded.entrySet()) {
+                lines.put(entry.getKey(), entry.getValue());
+                checkShard(NetworkPersistence.DataSet.LINES, file,
+                        NetworkStorage.lineShard(entry.getKey()), migrate);
+            }
+        }
+
+        int rawCount = 0;
+        for (File file : NetworkStorage.listShardFiles(base, NetworkPersistence.DataSet.FARES)) {
+            rawCount += readFares(file, fares, fare -> checkShard(NetworkPersistence.DataSet.FARES, file,
+                    NetworkStorage.fareShard(fare.getFromStation()), migrate));
         }
+        TicketSystemMod.LOGGER.info("Loaded and normalized {} fares (from {} raw entries)", fares.size(), rawCount);
+        draft.replace(stations, lines, fares);
+    }
 
+    /**
+     * 读取一个车站或线路分片，文件不存在（已被删除）时返回空表
+     */
+    private static <T> Map<String, T> readShard(File file, Type type) {
+        NetworkStorage.recordStamp(file);
+        if (!file.exists()) {
+            return Collections.emptyMap();
+        }
         try (FileReader reader = new FileReader(file)) {
-            Type type = new TypeToken<Map<String, Station>>() {}.getType();
-            Map<String, Station> loaded = GSON.fromJson(reader, type);
+            Map<String, T> loaded = GSON.fromJson(reader, type);
             if (loaded != null) {
-                stations = loaded;
+                return loaded;
             }
         } catch (Exception e) {
-            TicketSystemMod.LOGGER.error("Failed to load stations", e);
+            TicketSystemMod.LOGGER.error("Failed to load {}", file, e);
         }
+        return Collections.emptyMap();
     }
 
-    private static void saveStations() {
-        try (FileWriter writer = new FileWriter(STATIONS_FILE)) {
-            GSON.toJson(stations, writer);
-        } catch (IOException e) {
-            TicketSystemMod.LOGGER.error("Failed to save stations", e);
+    private static void checkShard(NetworkPersistence.DataSet dataSet, File file, String shard, boolean migrate) {
+        if (NetworkStorage.isLegacyRoot()) {
+            // 世界加载前读取的旧目录保持原样，由导入拆分到世界存档下
+            return;
+        }
+        String fileShard = NetworkStorage.shardName(file);
+        if (migrate) {
+            NetworkPersistence.markDirty(dataSet, shard);
+        } else if (!fileShard.equals(shard)) {
+            NetworkPersistence.markDirty(dataSet, shard);
+            NetworkPersistence.markDirty(dataSet, fileShard);
         }
     }
 
+    // ==================== 车站管理 ====================
+
     /**
      * 添加车站
      * @param station 车站对象
      * @return 是否成功添加
      */
     public static boolean addStation(Station station) {
-        if (station == null || station.getCode() == null || station.getCode().isEmpty()) {
-            return false;
-        }
-
-        if (!station.isValidCoordinate()) {
-            TicketSystemMod.LOGGER.warn("Invalid coordinate for station: {}", station);
-            return false;
-        }
-
-        stations.put(station.getCode(), station);
-        saveStations();
-        return true;
+        return new NetworkTransaction().addStation(station).commit();
     }
 
     /**
@@ -131,168 +216,93 @@ public class NetworkManager {
      * @return 是否成功移除
      */
     public static boolean removeStation(String stationCode) {
-        if (!stations.containsKey(stationCode)) {
-            return false;
-        }
-
-        // 从所有线路中移除该车站
-        for (Line line : lines.values()) {
-            line.removeStation(stationCode);
-        }
-        saveLines();
-
-        // 移除所有涉及该车站的票价
-        removeFaresInvolvingStation(stationCode);
-
-        // 移除车站
-        stations.remove(stationCode);
-        saveStations();
-
-        return true;
+        return new NetworkTransaction().removeStation(stationCode).commit();
     }
 
     /**
      * 获取车站
      */
     public static Station getStation(String stationCode) {
-        return stations.get(stationCode);
+        return state.getStation(stationCode);
     }
 
     /**
      * 获取所有车站编码
      */
     public static Set<String> getStationCodes() {
-        return stations.keySet();
+        return state.getStations().keySet();
     }
 
     /**
      * 获取所有车站
      */
     public static Collection<Station> getAllStations() {
-        return stations.values();
+        return state.getStations().values();
     }
 
     /**
      * 检查车站是否存在
      */
     public static boolean hasStation(String stationCode) {
-        return stations.containsKey(stationCode);
+        return state.getStations().containsKey(stationCode);
     }
 
     /**
      * 更新车站信息
      */
     public static boolean updateStation(Station station) {
-        if (!hasStation(station.getCode())) {
-            return false;
-        }
-
-        stations.put(station.getCode(), station);
-        saveStations();
-        return true;
+        return new NetworkTransaction().updateStation(station).commit();
     }
 
     // ==================== 线路管理 ====================
 
-    private static void loadLines() {
-        File file = new File(LINES_FILE);
-        if (!file.exists()) {
-            saveLines(); // 创建空文件
-            return;
-        }
-
-        try (FileReader reader = new FileReader(file)) {
-            Type type = new TypeToken<Map<String, Line>>() {}.getType();
-            Map<String, Line> loaded = GSON.fromJson(reader, type);
-            if (loaded != null) {
-                lines = loaded;
-            }
-        } catch (Exception e) {
-            TicketSystemMod.LOGGER.error("Failed to load lines", e);
-        }
-    }
-
-    private static void saveLines() {
-        try (FileWriter writer = new FileWriter(LINES_FILE)) {
-            GSON.toJson(lines, writer);
-        } catch (IOException e) {
-            TicketSystemMod.LOGGER.error("Failed to save lines", e);
-        }
-    }
-
     /**
      * 添加线路
      */
     public static boolean addLine(Line line) {
-        if (line == null || line.getId() == null || line.getId().isEmpty()) {
-            return false;
-        }
-
-        // 验证线路中的车站是否存在
-        for (String stationCode : line.getStationCodes()) {
-            if (!hasStation(stationCode)) {
-                TicketSystemMod.LOGGER.warn("Station {} not found when adding line {}", stationCode, line.getId());
-                // 可以继续，线路可以包含尚未添加的车站
-            }
-        }
-
-        lines.put(line.getId(), line);
-        saveLines();
-        return true;
+        return new NetworkTransaction().addLine(line).commit();
     }
 
     /**
      * 移除线路
      */
     public static boolean removeLine(String lineId) {
-        if (!lines.containsKey(lineId)) {
-            return false;
-        }
-
-        lines.remove(lineId);
-        saveLines();
-        return true;
+        return new NetworkTransaction().removeLine(lineId).commit();
     }
 
     /**
      * 获取线路
      */
     public static Line getLine(String lineId) {
-        return lines.get(lineId);
+        return state.getLine(lineId);
     }
 
     /**
      * 获取所有线路ID
      */
     public static Set<String> getLineIds() {
-        return lines.keySet();
+        return state.getLines().keySet();
     }
 
     /**
      * 获取所有线路
      */
     public static Collection<Line> getAllLines() {
-        return lines.values();
+        return state.getLines().values();
     }
 
     /**
      * 检查线路是否存在
      */
     public static boolean hasLine(String lineId) {
-        return lines.containsKey(lineId);
+        return state.getLines().containsKey(lineId);
     }
 
     /**
      * 更新线路
      */
     public static boolean updateLine(Line line) {
-        if (!hasLine(line.getId())) {
-            return false;
-        }
-
-        lines.put(line.getId(), line);
-        saveLines();
-        return true;
+        return new NetworkTransaction().updateLine(line).commit();
     }
 
     /**
@@ -300,7 +310,7 @@ public class NetworkManager {
      */
     public static List<Line> getLinesContainingStation(String stationCode) {
         List<Line> result = new ArrayList<>();
-        for (Line line : lines.values()) {
+        for (Line line : state.getLines().values()) {
             if (line.containsStation(stationCode)) {
                 result.add(line);
             }
@@ -310,53 +320,108 @@ public class NetworkManager {
 
     // ==================== 票价管理 ====================
 
-    private static void loadFares() {
-        File file = new File(FARES_FILE);
+    /**
+     * 读取一个票价分片
+     * @param target 规范化后的票价放入的表
+     * @param loaded 每放入一条票价后调用
+     * @return 分片中的原始条目数
+     */
+    private static int readFares(File file, Map<String, Fare> target, Consumer<Fare> loaded) {
+        NetworkStorage.recordStamp(file);
         if (!file.exists()) {
-            saveFares(); // 创建空文件
-            return;
+            return 0;
         }
-
-        try (FileReader reader = new FileReader(file)) {
-            Type type = new TypeToken<Map<String, Fare>>() {}.getType();
-            Map<String, Fare> loaded = GSON.fromJson(reader, type);
-            if (loaded != null) {
-                // 规范化加载的票价数据
-                Map<String, Fare> normalizedFares = new HashMap<>();
-                for (Map.Entry<String, Fare> entry : loaded.entrySet()) {
-                    Fare fare = entry.getValue();
-                    if (fare != null && fare.isValid()) {
-                        Fare normalizedFare = normalizeFare(fare);
-                        String key = getFareKey(normalizedFare.getFromStation(), normalizedFare.getToStation());
-
-                        // 检查重复键（可能由于旧数据有双向票价）
-                        if (normalizedFares.containsKey(key)) {
-                            Fare existing = normalizedFares.get(key);
-                            if (existing.getPrice() != normalizedFare.getPrice()) {
-                                TicketSystemMod.LOGGER.warn("Duplicate fare for segment {}: existing price {}, new price {}",
-                                        key, existing.getPrice(), normalizedFare.getPrice());
-                            }
-                        }
-                        normalizedFares.put(key, normalizedFare);
-                    } else {
-                        TicketSystemMod.LOGGER.warn("Invalid fare skipped during loading: {}", entry.getKey());
-                    }
+        // 流式读取：逐条规范化、校验后放入结果表，不构建中间Map
+        try (JsonReader reader = new JsonReader(new BufferedReader(new FileReader(file)))) {
+            reader.setLenient(true);
+            if (reader.peek() == JsonToken.NULL) {
+                return 0;
+            }
+            int rawCount = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String entryKey = reader.nextName();
+                Fare fare = readFare(reader);
+                rawCount++;
+                if (fare == null || !fare.isValid()) {
+                    TicketSystemMod.LOGGER.warn("Invalid fare skipped during loading: {}", entryKey);
+                    continue;
+                }
+                Fare normalizedFare = normalizeFare(fare);
+                String key = getFareKey(normalizedFare.getFromStation(), normalizedFare.getToStation());
+
+                // 检查重复键（可能由于旧数据有双向票价）
+                Fare existing = target.put(key, normalizedFare);
+                if (existing != null && existing.getPrice() != normalizedFare.getPrice()) {
+                    TicketSystemMod.LOGGER.warn("Duplicate fare for segment {}: existing price {}, new price {}",
+                            key, existing.getPrice(), normalizedFare.getPrice());
                 }
-                fares = normalizedFares;
-                TicketSystemMod.LOGGER.info("Loaded and normalized {} fares (from {} raw entries)",
-                        fares.size(), loaded.size());
+                loaded.accept(normalizedFare);
             }
+            reader.endObject();
+            return rawCount;
         } catch (Exception e) {
-            TicketSystemMod.LOGGER.error("Failed to load fares", e);
+            TicketSystemMod.LOGGER.error("Failed to load {}", file, e);
+            return 0;
+        }
+    }
+
+    /**
+     * 读取一条票价对象，值为null时返回null，未知字段忽略
+     */
+    private static Fare readFare(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        String from = null;
+        String to = null;
+        int price = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "fromStation":
+                    from = reader.nextString();
+                    break;
+                case "toStation":
+                    to = reader.nextString();
+                    break;
+                case "price":
+                    price = reader.nextInt();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
         }
+        reader.endObject();
+        return new Fare(from, to, price);
     }
 
-    private static void saveFares() {
-        try (FileWriter writer = new FileWriter(FARES_FILE)) {
-            GSON.toJson(fares, writer);
-        } catch (IOException e) {
-            TicketSystemMod.LOGGER.error("Failed to save fares", e);
+    /**
+     * 流式写出票价表，格式与Gson序列化Map<String, Fare>相同
+     */
+    private static void writeFares(Fare[] snapshot, Writer output, boolean pretty) throws IOException {
+        JsonWriter writer = new JsonWriter(output);
+        if (pretty) {
+            writer.setIndent("  ");
+        }
+        writer.beginObject();
+        for (Fare fare : snapshot) {
+            writer.name(getFareKey(fare.getFromStation(), fare.getToStation()));
+            writer.beginObject();
+            writer.name("fromStation").value(fare.getFromStation());
+            writer.name("toStation").value(fare.getToStation());
+            writer.name("price").value(fare.getPrice());
+            writer.endObject();
         }
+        writer.endObject();
+        writer.flush();
     }
 
     private static String getFareKey(String from, String to) {
@@ -393,38 +458,7 @@ public class NetworkManager {
      * 添加票价
      */
     public static boolean addFare(Fare fare) {
-        TicketSystemMod.LOGGER.info("开始添加票价: {}", fare);
-        if (fare == null || !fare.isValid()) {
-            TicketSystemMod.LOGGER.info("票价无效: {}", fare);
-            return false;
-        }
-
-        // 验证车站存在
-        String from = fare.getFromStation();
-        String to = fare.getToStation();
-        boolean hasFrom = hasStation(from);
-        boolean hasTo = hasStation(to);
-        if (!hasFrom || !hasTo) {
-            TicketSystemMod.LOGGER.warn("车站不存在: from={} (exists={}), to={} (exists={})", from, hasFrom, to, hasTo);
-            return false;
-        }
-
-        // 规范化票价对象和键
-        Fare normalizedFare = normalizeFare(fare);
-        String key = getFareKey(normalizedFare.getFromStation(), normalizedFare.getToStation());
-        TicketSystemMod.LOGGER.info("规范化后票价: {}, 存储键: {}", normalizedFare, key);
-
-        // 检查票价是否已存在（区间票价无方向性）
-        if (fares.containsKey(key)) {
-            Fare existing = fares.get(key);
-            TicketSystemMod.LOGGER.warn("票价已存在: 区间 {} 已有票价 {} (尝试添加 {})", key, existing, normalizedFare);
-            return false;
-        }
-
-        fares.put(key, normalizedFare);
-        saveFares();
-        TicketSystemMod.LOGGER.info("票价添加成功: {}", normalizedFare);
-        return true;
+        return new NetworkTransaction().addFare(fare).commit();
     }
 
     /**
@@ -441,64 +475,31 @@ public class NetworkManager {
      * 移除票价
      */
     public static boolean removeFare(String fromStation, String toStation) {
-        String key = getFareKey(fromStation, toStation);
-        if (!fares.containsKey(key)) {
-            return false;
-        }
-
-        fares.remove(key);
-        saveFares();
-        return true;
-    }
-
-    /**
-     * 移除涉及指定车站的所有票价
-     */
-    private static void removeFaresInvolvingStation(String stationCode) {
-        List<String> toRemove = new ArrayList<>();
-        for (String key : fares.keySet()) {
-            Fare fare = fares.get(key);
-            if (fare.getFromStation().equals(stationCode) || fare.getToStation().equals(stationCode)) {
-                toRemove.add(key);
-            }
-        }
-
-        for (String key : toRemove) {
-            fares.remove(key);
-        }
-
-        if (!toRemove.isEmpty()) {
-            saveFares();
-        }
+        return new NetworkTransaction().removeFare(fromStation, toStation).commit();
     }
 
     /**
      * 获取票价
      */
     public static Fare getFare(String fromStation, String toStation) {
-        TicketSystemMod.LOGGER.info("查询票价: {} -> {}", fromStation, toStation);
+        // 报价计算的内层循环会反复调用，这里只保留采样的跟踪日志
+        Map<String, Fare> fares = state.getFares();
 
         // 先尝试正向查询
         String key = getFareKey(fromStation, toStation);
         Fare fare = fares.get(key);
-        TicketSystemMod.LOGGER.info("第一次查询键: {}, 结果: {}", key, fare);
 
         if (fare == null) {
             // 尝试反向查询（双向票价）
             String reverseKey = getFareKey(toStation, fromStation);
             if (!reverseKey.equals(key)) {
-                TicketSystemMod.LOGGER.info("第一次查询未找到，尝试反向键: {}", reverseKey);
                 fare = fares.get(reverseKey);
-                TicketSystemMod.LOGGER.info("反向查询结果: {}", fare);
             }
         }
 
-        if (fare != null) {
-            TicketSystemMod.LOGGER.info("找到票价: {}", fare);
-        } else {
-            TicketSystemMod.LOGGER.info("未找到票价: {} -> {}", fromStation, toStation);
+        if (FareTrace.sample()) {
+            FareTrace.trace("getFare {} -> {}: key={}, fare={}", fromStation, toStation, key, fare);
         }
-
         return fare;
     }
 
@@ -506,7 +507,7 @@ public class NetworkManager {
      * 获取所有票价
      */
     public static Collection<Fare> getAllFares() {
-        return fares.values();
+        return state.getFares().values();
     }
 
     /**
@@ -520,20 +521,467 @@ public class NetworkManager {
      * 更新票价
      */
     public static boolean updateFare(Fare fare) {
-        if (fare == null || !fare.isValid()) {
+        return new NetworkTransaction().updateFare(fare).commit();
+    }
+
+    // ==================== 批量修改 ====================
+
+    /**
+     * 开始一次批量修改，登记的修改在commit时一次性校验、发布和保存
+     */
+    public static NetworkTransaction beginTransaction() {
+        return new NetworkTransaction();
+    }
+
+    /**
+     * 把一组修改应用到同一个新版本：全部成功才发布，每种数据类型发出一个变化事件，变化的条目各记录一次
+     * @param errors 收集各条修改的错误信息
+     * @return 是否全部成功
+     */
+    static synchronized boolean commitTransaction(List<NetworkTransaction.Operation> operations, List<String> errors) {
+        NetworkState.Draft draft = state.edit();
+        NetworkTransaction.Changes changes = new NetworkTransaction.Changes();
+        for (NetworkTransaction.Operation operation : operations) {
+            String error = operation.apply(draft, changes);
+            if (error != null) {
+                errors.add(error);
+            }
+        }
+        if (!errors.isEmpty()) {
+            TicketSystemMod.LOGGER.warn("Rejected network change: {} of {} operations failed, first: {}",
+                    errors.size(), operations.size(), errors.get(0));
             return false;
         }
+        if (!draft.isModified()) {
+            return true;
+        }
+
+        commit(draft);
+        if (!changes.stations.isEmpty()) {
+            markChanged(NetworkChangeEvent.Type.STATION, changes.stationEventCodes);
+        }
+        if (!changes.lines.isEmpty()) {
+            markChanged(NetworkChangeEvent.Type.LINE, changes.lineEventCodes);
+        }
+        if (!changes.fares.isEmpty()) {
+            markChanged(NetworkChangeEvent.Type.FARE, changes.fareEventCodes);
+        }
+
+        NetworkPersistence.beginBatch();
+        try {
+            for (String code : changes.stations) {
+                recordStation(code);
+            }
+            for (String lineId : changes.lines) {
+                recordLine(lineId);
+            }
+            for (Map.Entry<String, Fare> entry : changes.fares.entrySet()) {
+                recordFare(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            NetworkPersistence.endBatch();
+        }
+        return true;
+    }
+
+    static String applyAddStation(NetworkState.Draft draft, Station station, NetworkTransaction.Changes changes) {
+        if (station == null || station.getCode() == null || station.getCode().isEmpty()) {
+            return "车站编码为空";
+        }
+        if (!station.isValidCoordinate()) {
+            return "车站坐标无效: " + station.getCode();
+        }
+
+        draft.editStations().put(station.getCode(), station);
+        changes.station(station.getCode());
+        return null;
+    }
+
+    static String applyUpdateStation(NetworkState.Draft draft, Station station, NetworkTransaction.Changes changes) {
+        if (station == null || !draft.stations().containsKey(station.getCode())) {
+            return "车站不存在: " + (station != null ? station.getCode() : null);
+        }
+
+        draft.editStations().put(station.getCode(), station);
+        changes.station(station.getCode());
+        return null;
+    }
+
+    static String applyRemoveStation(NetworkState.Draft draft, String stationCode, NetworkTransaction.Changes changes) {
+        if (!draft.stations().containsKey(stationCode)) {
+            return "车站不存在: " + stationCode;
+        }
+
+        // 从所有线路中移除该车站（替换为副本，已发布的线路对象不变）
+        List<Line> changedLines = new ArrayList<>();
+        for (Line line : draft.lines().values()) {
+            if (line.containsStation(stationCode)) {
+                changedLines.add(line);
+            }
+        }
+        for (Line line : changedLines) {
+            Line updated = line.copy();
+            updated.removeStation(stationCode);
+            draft.editLines().put(updated.getId(), updated);
+            changes.line(line.getId(), line.getStationCodes());
+        }
+
+        // 移除所有涉及该车站的票价
+        Map<String, Fare> removedFares = new HashMap<>();
+        for (Map.Entry<String, Fare> entry : draft.fares().entrySet()) {
+            Fare fare = entry.getValue();
+            if (fare.getFromStation().equals(stationCode) || fare.getToStation().equals(stationCode)) {
+                removedFares.put(entry.getKey(), fare);
+            }
+        }
+        if (!removedFares.isEmpty()) {
+            draft.editFares().keySet().removeAll(removedFares.keySet());
+            removedFares.forEach(changes::fare);
+        }
+
+        draft.editStations().remove(stationCode);
+        changes.station(stationCode);
+        return null;
+    }
+
+    static String applyAddLine(NetworkState.Draft draft, Line line, NetworkTransaction.Changes changes) {
+        if (line == null || line.getId() == null || line.getId().isEmpty()) {
+            return "线路ID为空";
+        }
+
+        // 验证线路中的车站是否存在
+        for (String stationCode : line.getStationCodes()) {
+            if (!draft.stations().containsKey(stationCode)) {
+                TicketSystemMod.LOGGER.warn("Station {} not found when adding line {}", stationCode, line.getId());
+                // 可以继续，线路可以包含尚未添加的车站
+            }
+        }
+
+        draft.editLines().put(line.getId(), line);
+        changes.line(line.getId(), line.getStationCodes());
+        return null;
+    }
+
+    static String applyUpdateLine(NetworkState.Draft draft, Line line, NetworkTransaction.Changes changes) {
+        if (line == null || !draft.lines().containsKey(line.getId())) {
+            return "线路不存在: " + (line != null ? line.getId() : null);
+        }
+
+        Line previous = draft.editLines().put(line.getId(), line);
+        changes.line(line.getId(), line.getStationCodes());
+        changes.line(line.getId(), previous.getStationCodes());
+        return null;
+    }
+
+    static String applyRemoveLine(NetworkState.Draft draft, String lineId, NetworkTransaction.Changes changes) {
+        if (!draft.lines().containsKey(lineId)) {
+            return "线路不存在: " + lineId;
+        }
+
+        Line removed = draft.editLines().remove(lineId);
+        changes.line(lineId, removed.getStationCodes());
+        return null;
+    }
+
+    static String applyAddFare(NetworkState.Draft draft, Fare fare, NetworkTransaction.Changes changes) {
+        if (fare == null || !fare.isValid()) {
+            return "票价无效: " + fare;
+        }
+
+        // 验证车站存在（可以是同一批修改中添加的车站）
+        String from = fare.getFromStation();
+        String to = fare.getToStation();
+        if (!draft.stations().containsKey(from)) {
+            return "车站不存在: " + from;
+        }
+        if (!draft.stations().containsKey(to)) {
+            return "车站不存在: " + to;
+        }
 
-        // 规范化票价对象和键
+        // 检查票价是否已存在（区间票价无方向性）
         Fare normalizedFare = normalizeFare(fare);
         String key = getFareKey(normalizedFare.getFromStation(), normalizedFare.getToStation());
-        if (!fares.containsKey(key)) {
-            return false;
+        Fare existing = draft.fares().get(key);
+        if (existing != null) {
+            return "票价已存在: 区间 " + key + " 已有票价 " + existing.getPrice();
         }
 
-        fares.put(key, normalizedFare);
-        saveFares();
-        return true;
+        draft.editFares().put(key, normalizedFare);
+        changes.fare(key, normalizedFare);
+        if (FareTrace.sample()) {
+            FareTrace.trace("addFare {}: key={}", normalizedFare, key);
+        }
+        return null;
+    }
+
+    static String applyUpdateFare(NetworkState.Draft draft, Fare fare, NetworkTransaction.Changes changes) {
+        if (fare == null || !fare.isValid()) {
+            return "票价无效: " + fare;
+        }
+
+        Fare normalizedFare = normalizeFare(fare);
+        String key = getFareKey(normalizedFare.getFromStation(), normalizedFare.getToStation());
+        if (!draft.fares().containsKey(key)) {
+            return "票价不存在: " + key;
+        }
+
+        draft.editFares().put(key, normalizedFare);
+        changes.fare(key, normalizedFare);
+        return null;
+    }
+
+    static String applyRemoveFare(NetworkState.Draft draft, String fromStation, String toStation,
+                                  NetworkTransaction.Changes changes) {
+        String key = getFareKey(fromStation, toStation);
+        if (!draft.fares().containsKey(key)) {
+            return "票价不存在: " + key;
+        }
+
+        Fare removed = draft.editFares().remove(key);
+        changes.fare(key, removed);
+        return null;
+    }
+
+    // ==================== 数据版本 ====================
+
+    /**
+     * 发布修改后的新版本（调用方持有锁），版本号递增，路径图快照将在下次查询时重建
+     */
+    private static void commit(NetworkState.Draft draft) {
+        state = draft.build(state.getVersion() + 1);
+    }
+
+    /**
+     * 通知监听器网络数据已变化（在commit之后调用，事件携带新版本的版本号）
+     * @param type 变化类型
+     * @param stationCodes 受影响的车站编码（RELOAD时可为null）
+     */
+    private static void markChanged(NetworkChangeEvent.Type type, Collection<String> stationCodes) {
+        NetworkChangeEvent event = new NetworkChangeEvent(state.getVersion(), type, stationCodes);
+        for (NetworkChangeListener listener : changeListeners) {
+            try {
+                listener.onNetworkChanged(event);
+            } catch (Exception e) {
+                TicketSystemMod.LOGGER.error("Network change listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * 注册数据变化监听器
+     */
+    public static void addChangeListener(NetworkChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    // ==================== 持久化 ====================
+
+    /**
+     * 记录车站的当前值（不存在即为删除），由持久化层写入日志或标记所在分片待保存
+     */
+    private static void recordStation(String code) {
+        Station station = state.getStation(code);
+        NetworkPersistence.record(station != null ? NetworkJournal.Op.PUT_STATION : NetworkJournal.Op.REMOVE_STATION,
+                code, station != null ? COMPACT_GSON.toJson(station) : null, NetworkStorage.stationShard(code));
+    }
+
+    private static void recordLine(String lineId) {
+        Line line = state.getLine(lineId);
+        NetworkPersistence.record(line != null ? NetworkJournal.Op.PUT_LINE : NetworkJournal.Op.REMOVE_LINE,
+                lineId, line != null ? COMPACT_GSON.toJson(line) : null, NetworkStorage.lineShard(lineId));
+    }
+
+    /**
+     * @param segment 该区间的新票价或被删除的票价（用于确定分片）
+     */
+    private static void recordFare(String key, Fare segment) {
+        Fare fare = state.getFares().get(key);
+        NetworkPersistence.record(fare != null ? NetworkJournal.Op.PUT_FARE : NetworkJournal.Op.REMOVE_FARE,
+                key, fare != null ? COMPACT_GSON.toJson(fare) : null, NetworkStorage.fareShard(segment.getFromStation()));
+    }
+
+    /**
+     * 把一条日志记录应用到内存数据（初始化时回放，不触发变化事件），并标记所在分片待保存
+     */
+    private static void applyJournalRecord(NetworkState.Draft draft, NetworkJournal.Record record) {
+        switch (record.op) {
+            case PUT_STATION:
+                draft.editStations().put(record.key, GSON.fromJson(record.value, Station.class));
+                NetworkPersistence.markDirty(NetworkPersistence.DataSet.STATIONS, NetworkStorage.stationShard(record.key));
+                break;
+            case REMOVE_STATION:
+                draft.editStations().remove(record.key);
+                NetworkPersistence.markDirty(NetworkPersistence.DataSet.STATIONS, NetworkStorage.stationShard(record.key));
+                break;
+            case PUT_LINE:
+                draft.editLines().put(record.key, GSON.fromJson(record.value, Line.class));
+                NetworkPersistence.markDirty(NetworkPersistence.DataSet.LINES, NetworkStorage.lineShard(record.key));
+                break;
+            case REMOVE_LINE:
+                draft.editLines().remove(record.key);
+                NetworkPersistence.markDirty(NetworkPersistence.DataSet.LINES, NetworkStorage.lineShard(record.key));
+                break;
+            case PUT_FARE:
+                Fare fare = GSON.fromJson(record.value, Fare.class);
+                if (fare != null && fare.isValid()) {
+                    Fare normalizedFare = normalizeFare(fare);
+                    draft.editFares().put(record.key, normalizedFare);
+                    NetworkPersistence.markDirty(NetworkPersistence.DataSet.FARES,
+                            NetworkStorage.fareShard(normalizedFare.getFromStation()));
+                }
+                break;
+            case REMOVE_FARE:
+                Fare removed = draft.editFares().remove(record.key);
+                if (removed != null) {
+                    NetworkPersistence.markDirty(NetworkPersistence.DataSet.FARES,
+                            NetworkStorage.fareShard(removed.getFromStation()));
+                }
+                break;
+        }
+    }
+
+    /**
+     * 在锁内获取若干分片的一致快照（供后台持久化线程在锁外写出）
+     * 车站/线路对象可变，直接序列化为字符串；票价对象不可变，只复制引用数组，写出时流式输出
+     * @return 分片名 -> 内容，分片已没有条目时内容为null
+     */
+    static synchronized Map<String, NetworkPersistence.Content> serializeShards(NetworkPersistence.DataSet dataSet,
+                                                                                Set<String> shards) {
+        boolean pretty = TicketSystemConfig.isPrettyJsonEnabled();
+        Gson gson = pretty ? GSON : COMPACT_GSON;
+        NetworkState current = state;
+        Map<String, NetworkPersistence.Content> result = new HashMap<>();
+        for (String shard : shards) {
+            result.put(shard, null);
+        }
+        switch (dataSet) {
+            case STATIONS: {
+                Map<String, Map<String, Station>> grouped = new HashMap<>();
+                for (Map.Entry<String, Station> entry : current.getStations().entrySet()) {
+                    String shard = NetworkStorage.stationShard(entry.getKey());
+                    if (shards.contains(shard)) {
+                        grouped.computeIfAbsent(shard, k -> new TreeMap<>()).put(entry.getKey(), entry.getValue());
+                    }
+                }
+                grouped.forEach((shard, entries) -> {
+                    String json = gson.toJson(entries);
+                    result.put(shard, writer -> writer.write(json));
+                });
+                break;
+            }
+            case LINES: {
+                Map<String, Map<String, Line>> grouped = new HashMap<>();
+                for (Map.Entry<String, Line> entry : current.getLines().entrySet()) {
+                    String shard = NetworkStorage.lineShard(entry.getKey());
+                    if (shards.contains(shard)) {
+                        grouped.computeIfAbsent(shard, k -> new TreeMap<>()).put(entry.getKey(), entry.getValue());
+                    }
+                }
+                grouped.forEach((shard, entries) -> {
+                    String json = gson.toJson(entries);
+                    result.put(shard, writer -> writer.write(json));
+                });
+                break;
+            }
+            default: {
+                Map<String, List<Fare>> grouped = new HashMap<>();
+                for (Fare fare : current.getFares().values()) {
+                    String shard = NetworkStorage.fareShard(fare.getFromStation());
+                    if (shards.contains(shard)) {
+                        grouped.computeIfAbsent(shard, k -> new ArrayList<>()).add(fare);
+                    }
+                }
+                grouped.forEach((shard, entries) -> {
+                    Fare[] snapshot = entries.toArray(new Fare[0]);
+                    result.put(shard, writer -> writeFares(snapshot, writer, pretty));
+                });
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 在锁内编码二进制快照正文
+     */
+    static synchronized byte[] encodeSnapshot() throws IOException {
+        NetworkState current = state;
+        return NetworkSnapshot.encode(current.getStations().values(), current.getLines().values(),
+                current.getFares().values());
+    }
+
+    /**
+     * 立即写出所有尚未保存的修改
+     * 修改默认在合并窗口结束后由后台线程保存，服务器停止时必须调用本方法
+     */
+    public static void flush() {
+        NetworkPersistence.flush();
+    }
+
+    /**
+     * 切换数据目录（服务器启动时设为世界存档下的目录）并重新加载
+     * 目录下还没有数据时自动从旧的全局目录mods/ticketsystem/导入
+     */
+    public static void setDataDirectory(File directory) {
+        if (initialized && directory.getAbsoluteFile().equals(NetworkStorage.getRoot().getAbsoluteFile())) {
+            return;
+        }
+        // 先把尚未保存的修改写入原目录
+        flush();
+        synchronized (NetworkManager.class) {
+            NetworkStorage.setRoot(directory);
+            initialized = false;
+        }
+        initialize();
+        if (TicketSystemConfig.isDataFileWatchEnabled()) {
+            NetworkFileWatcher.watch(directory);
+        } else {
+            NetworkFileWatcher.stop();
+        }
+    }
+
+    /**
+     * 服务器停止时调用：停止监视数据目录并写出尚未保存的修改
+     */
+    public static void close() {
+        NetworkFileWatcher.stop();
+        flush();
+    }
+
+    /**
+     * 当前数据目录
+     */
+    public static File getDataDirectory() {
+        return NetworkStorage.getRoot();
+    }
+
+    /**
+     * 票价数据目录（派生索引文件与票价分片存放在一起）
+     */
+    static File getFaresDirectory() {
+        return NetworkStorage.getDirectory(NetworkPersistence.DataSet.FARES);
+    }
+
+    /**
+     * 获取当前数据版本号
+     */
+    public static long getDataVersion() {
+        return state.getVersion();
+    }
+
+    /**
+     * 获取当前数据版本，同一版本内的多次读取彼此一致，可以在任何线程使用
+     */
+    public static NetworkState getState() {
+        return state;
+    }
+
+    /**
+     * 获取路径计算用的图快照
+     * 只有在车站/线路/票价变化后才重建，否则直接返回缓存的快照
+     */
+    public static NetworkGraph getGraph() {
+        return state.getGraph();
     }
 
     // ==================== 工具方法 ====================
@@ -542,16 +990,170 @@ public class NetworkManager {
      * 重新加载所有数据
      */
     public static void reloadAll() {
+        // 先写出尚未保存的修改，避免被重新加载的旧文件覆盖
+        flush();
         initialized = false;
         initialize();
     }
 
+    /**
+     * 增量重新加载：只重新读取在磁盘上新增、修改或删除的分片文件，
+     * 与内存中同一分片的条目逐条比较，只应用有变化的条目，并按车站/线路/票价分别发出变化事件，
+     * 监听器只失效受影响车站的派生数据，不必像reloadAll那样全部重建
+     * @return 变化统计
+     */
+    public static NetworkDiff reloadChanges() {
+        if (!initialized) {
+            initialize();
+            return new NetworkDiff();
+        }
+        // 先写出内存中的修改，此后磁盘与内存只在被外部修改的分片上不同
+        return NetworkPersistence.flushAndRun(() -> {
+            synchronized (NetworkManager.class) {
+                NetworkDiff diff = new NetworkDiff();
+                NetworkState.Draft draft = state.edit();
+                Set<String> stationCodes = new HashSet<>();
+                for (String shard : NetworkStorage.changedShards(NetworkPersistence.DataSet.STATIONS)) {
+                    reloadStationShard(draft, shard, diff, stationCodes);
+                }
+                Set<String> lineStationCodes = new HashSet<>();
+                for (String shard : NetworkStorage.changedShards(NetworkPersistence.DataSet.LINES)) {
+                    reloadLineShard(draft, shard, diff, lineStationCodes);
+                }
+                Set<String> fareStationCodes = new HashSet<>();
+                for (String shard : NetworkStorage.changedShards(NetworkPersistence.DataSet.FARES)) {
+                    reloadFareShard(draft, shard, diff, fareStationCodes);
+                }
+                if (draft.isModified()) {
+                    commit(draft);
+                }
+
+                if (!stationCodes.isEmpty()) {
+                    markChanged(NetworkChangeEvent.Type.STATION, stationCodes);
+                }
+                if (!lineStationCodes.isEmpty()) {
+                    markChanged(NetworkChangeEvent.Type.LINE, lineStationCodes);
+                }
+                if (!fareStationCodes.isEmpty()) {
+                    markChanged(NetworkChangeEvent.Type.FARE, fareStationCodes);
+                }
+                TicketSystemMod.LOGGER.info("Reloaded network data changes: {}", diff);
+                return diff;
+            }
+        });
+    }
+
+    private static void reloadStationShard(NetworkState.Draft draft, String shard, NetworkDiff diff, Set<String> affected) {
+        NetworkPersistence.DataSet dataSet = NetworkPersistence.DataSet.STATIONS;
+        File file = NetworkStorage.getShardFile(dataSet, shard);
+        Map<String, Station> onDisk = readShard(file, STATION_MAP_TYPE);
+        diff.fileChanged();
+
+        List<String> removed = new ArrayList<>();
+        for (String code : draft.stations().keySet()) {
+            if (!onDisk.containsKey(code) && NetworkStorage.stationShard(code).equals(shard)) {
+                removed.add(code);
+            }
+        }
+        for (String code : removed) {
+            draft.editStations().remove(code);
+            affected.add(code);
+            diff.removed(dataSet);
+        }
+        for (Map.Entry<String, Station> entry : onDisk.entrySet()) {
+            Station current = draft.stations().get(entry.getKey());
+            if (current != null && COMPACT_GSON.toJson(current).equals(COMPACT_GSON.toJson(entry.getValue()))) {
+                continue;
+            }
+            draft.editStations().put(entry.getKey(), entry.getValue());
+            affected.add(entry.getKey());
+            if (current == null) {
+                diff.added(dataSet);
+            } else {
+                diff.updated(dataSet);
+            }
+            checkShard(dataSet, file, NetworkStorage.stationShard(entry.getKey()), false);
+        }
+    }
+
+    private static void reloadLineShard(NetworkState.Draft draft, String shard, NetworkDiff diff, Set<String> affected) {
+        NetworkPersistence.DataSet dataSet = NetworkPersistence.DataSet.LINES;
+        File file = NetworkStorage.getShardFile(dataSet, shard);
+        Map<String, Line> onDisk = readShard(file, LINE_MAP_TYPE);
+        diff.fileChanged();
+
+        List<String> removed = new ArrayList<>();
+        for (String lineId : draft.lines().keySet()) {
+            if (!onDisk.containsKey(lineId) && NetworkStorage.lineShard(lineId).equals(shard)) {
+                removed.add(lineId);
+            }
+        }
+        for (String lineId : removed) {
+            affected.addAll(draft.editLines().remove(lineId).getStationCodes());
+            diff.removed(dataSet);
+        }
+        for (Map.Entry<String, Line> entry : onDisk.entrySet()) {
+            Line current = draft.lines().get(entry.getKey());
+            if (current != null && COMPACT_GSON.toJson(current).equals(COMPACT_GSON.toJson(entry.getValue()))) {
+                continue;
+            }
+            draft.editLines().put(entry.getKey(), entry.getValue());
+            affected.addAll(entry.getValue().getStationCodes());
+            if (current == null) {
+                diff.added(dataSet);
+            } else {
+                affected.addAll(current.getStationCodes());
+                diff.updated(dataSet);
+            }
+            checkShard(dataSet, file, NetworkStorage.lineShard(entry.getKey()), false);
+        }
+    }
+
+    private static void reloadFareShard(NetworkState.Draft draft, String shard, NetworkDiff diff, Set<String> affected) {
+        NetworkPersistence.DataSet dataSet = NetworkPersistence.DataSet.FARES;
+        File file = NetworkStorage.getShardFile(dataSet, shard);
+        Map<String, Fare> onDisk = new HashMap<>();
+        readFares(file, onDisk, fare -> { });
+        diff.fileChanged();
+
+        List<String> removed = new ArrayList<>();
+        for (Map.Entry<String, Fare> entry : draft.fares().entrySet()) {
+            if (!onDisk.containsKey(entry.getKey())
+                    && NetworkStorage.fareShard(entry.getValue().getFromStation()).equals(shard)) {
+                removed.add(entry.getKey());
+            }
+        }
+        for (String key : removed) {
+            Fare fare = draft.editFares().remove(key);
+            affected.add(fare.getFromStation());
+            affected.add(fare.getToStation());
+            diff.removed(dataSet);
+        }
+        for (Map.Entry<String, Fare> entry : onDisk.entrySet()) {
+            Fare fare = entry.getValue();
+            Fare current = draft.fares().get(entry.getKey());
+            if (current != null && current.getPrice() == fare.getPrice()) {
+                continue;
+            }
+            draft.editFares().put(entry.getKey(), fare);
+            affected.add(fare.getFromStation());
+            affected.add(fare.getToStation());
+            if (current == null) {
+                diff.added(dataSet);
+            } else {
+                diff.updated(dataSet);
+            }
+            checkShard(dataSet, file, NetworkStorage.fareShard(fare.getFromStation()), false);
+        }
+    }
+
     /**
      * 获取管理器状态
      */
     public static String getStatus() {
+        NetworkState current = state;
         return String.format("Stations: %d, Lines: %d, Fares: %d",
-                stations.size(), lines.size(), fares.size());
+                current.getStations().size(), current.getLines().size(), current.getFares().size());
     }
 
     /**
@@ -559,22 +1161,23 @@ public class NetworkManager {
      */
     public static List<String> validateData() {
         List<String> issues = new ArrayList<>();
+        NetworkState current = state;
 
         // 检查线路中的车站是否存在
-        for (Line line : lines.values()) {
+        for (Line line : current.getLines().values()) {
             for (String stationCode : line.getStationCodes()) {
-                if (!hasStation(stationCode)) {
+                if (!current.getStations().containsKey(stationCode)) {
                     issues.add(String.format("线路 %s 包含不存在的车站: %s", line.getId(), stationCode));
                 }
             }
         }
 
         // 检查票价对应的车站是否存在
-        for (Fare fare : fares.values()) {
-            if (!hasStation(fare.getFromStation())) {
+        for (Fare fare : current.getFares().values()) {
+            if (!current.getStations().containsKey(fare.getFromStation())) {
                 issues.add(String.format("票价起点车站不存在: %s", fare.getFromStation()));
             }
-            if (!hasStation(fare.getToStation())) {
+            if (!current.getStations().containsKey(fare.getToStation())) {
                 issues.add(String.format("票价终点车站不存在: %s", fare.getToStation()));
             }
         }
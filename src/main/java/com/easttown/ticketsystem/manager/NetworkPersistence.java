@@ -0,0 +1,332 @@
+package com.easttown.ticketsystem.manager;
+
+import com.easttown.ticketsystem.TicketSystemMod;
+import com.easttown.ticketsystem.config.TicketSystemConfig;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 网络数据后台持久化
+ * 修改只把所在分片标记为脏，由后台线程统一写出，同一分片在一次写出中只写一次：
+ * 启用预写日志时每次修改只向日志追加一条记录，日志超过阈值后写出脏分片并截断日志；
+ * 未启用时在合并窗口结束后写出脏分片。
+ * 分片先写临时文件再原子替换，中途崩溃不会留下半个文件
+ */
+final class NetworkPersistence {
+    /**
+     * 需要持久化的数据集
+     */
+    enum DataSet {
+        STATIONS,
+        LINES,
+        FARES
+    }
+
+    /**
+     * 待写出的分片内容
+     */
+    interface Content {
+        void writeTo(Writer writer) throws IOException;
+    }
+
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TicketSystem-Persistence");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 各数据集待写出的分片名
+    private static final Map<DataSet, Set<String>> dirty = new EnumMap<>(DataSet.class);
+    private static final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+    // 串行化后台写出与停服时的同步写出
+    private static final Object WRITE_LOCK = new Object();
+
+    private static volatile NetworkJournal journal;
+    // 批量修改进行中：日志记录先留在缓冲区，结束时一起刷新（只在持有NetworkManager的锁时访问）
+    private static boolean batching;
+
+    static {
+        for (DataSet dataSet : DataSet.values()) {
+            dirty.put(dataSet, ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    private NetworkPersistence() {
+    }
+
+    /**
+     * 标记分片需要保存，在合并窗口结束后由后台线程写出
+     */
+    static void markDirty(DataSet dataSet, String shard) {
+        dirty.get(dataSet).add(shard);
+        scheduleWrite(TicketSystemConfig.getSaveDelayMillis());
+    }
+
+    /**
+     * 记录一次修改（调用方持有NetworkManager的锁，保证日志顺序与内存修改顺序一致）
+     * @param value 新值的JSON，删除操作为null
+     * @param shard 条目所在分片
+     */
+    static void record(NetworkJournal.Op op, String key, String value, String shard) {
+        NetworkJournal current = journal;
+        if (current == null || !TicketSystemConfig.isJournalEnabled()) {
+            markDirty(op.getDataSet(), shard);
+            return;
+        }
+        // 日志模式下分片只记为脏，等日志压缩时统一写出
+        dirty.get(op.getDataSet()).add(shard);
+        try {
+            current.append(op, key, value);
+        } catch (IOException e) {
+            TicketSystemMod.LOGGER.error("Failed to append to journal, falling back to snapshot save", e);
+            scheduleWrite(TicketSystemConfig.getSaveDelayMillis());
+            return;
+        }
+        if (!batching) {
+            flushJournal(current);
+        }
+    }
+
+    /**
+     * 开始批量记录：之后的记录只追加到日志缓冲区（调用方持有NetworkManager的锁）
+     */
+    static void beginBatch() {
+        batching = true;
+    }
+
+    /**
+     * 结束批量记录，把这一批记录一次性刷新到日志
+     */
+    static void endBatch() {
+        batching = false;
+        NetworkJournal current = journal;
+        if (current != null && TicketSystemConfig.isJournalEnabled()) {
+            flushJournal(current);
+        }
+    }
+
+    private static void flushJournal(NetworkJournal current) {
+        try {
+            current.flush();
+        } catch (IOException e) {
+            TicketSystemMod.LOGGER.error("Failed to flush journal, falling back to snapshot save", e);
+            scheduleWrite(TicketSystemConfig.getSaveDelayMillis());
+            return;
+        }
+        if (current.size() > TicketSystemConfig.getJournalCompactBytes()) {
+            scheduleWrite(0);
+        }
+    }
+
+    /**
+     * 回放日志并打开日志用于追加（NetworkManager加载分片后调用）
+     * 回放了记录时立即安排一次后台写出，让JSON分片尽快追上
+     * @param file 要回放的日志
+     * @param appendTo 回放后用于追加的日志（通常与file相同，从旧目录导入时为新目录下的日志；为null时只回放）
+     * @return 回放的记录数
+     */
+    static int replayJournal(File file, File appendTo, Consumer<NetworkJournal.Record> consumer) {
+        NetworkJournal previous = journal;
+        journal = null;
+        if (previous != null) {
+            previous.close();
+        }
+
+        int replayed = 0;
+        try {
+            // 只有回放后继续追加的日志才截掉损坏的尾部，旧目录中的日志保持原样
+            boolean truncate = appendTo != null && file.getAbsoluteFile().equals(appendTo.getAbsoluteFile());
+            replayed = NetworkJournal.replay(file, truncate, consumer);
+        } catch (IOException e) {
+            TicketSystemMod.LOGGER.error("Failed to replay journal {}", file, e);
+        }
+        try {
+            journal = appendTo != null ? NetworkJournal.open(appendTo) : null;
+        } catch (IOException e) {
+            TicketSystemMod.LOGGER.error("Failed to open journal {}, saving snapshots directly", appendTo, e);
+        }
+        if (replayed > 0) {
+            TicketSystemMod.LOGGER.info("Replayed {} journal records from {}", replayed, file);
+            scheduleWrite(0);
+        }
+        return replayed;
+    }
+
+    private static void scheduleWrite(long delayMillis) {
+        if (writeScheduled.compareAndSet(false, true)) {
+            EXECUTOR.schedule(NetworkPersistence::runScheduledWrite, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void runScheduledWrite() {
+        writeScheduled.set(false);
+        writeDirty();
+    }
+
+    /**
+     * 立即在当前线程写出所有待保存的数据（停服时调用）
+     */
+    static void flush() {
+        writeDirty();
+    }
+
+    /**
+     * 写出所有待保存的数据后在写出锁内执行操作，操作期间后台线程不会写出分片
+     * （增量重新加载时保证磁盘上的分片只会被外部修改）
+     */
+    static <T> T flushAndRun(Supplier<T> action) {
+        synchronized (WRITE_LOCK) {
+            writeDirty();
+            return action.get();
+        }
+    }
+
+    /**
+     * 是否还有未写出的修改
+     */
+    static boolean hasPendingWrites() {
+        for (Set<String> shards : dirty.values()) {
+            if (!shards.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 写出全部脏分片，成功后丢弃日志中已包含在分片里的记录
+     */
+    private static void writeDirty() {
+        synchronized (WRITE_LOCK) {
+            if (NetworkStorage.isLegacyRoot()) {
+                // 世界加载之前使用旧的全局目录：只读，不写回，旧数据完整留给导入
+                boolean discarded = false;
+                for (Set<String> shards : dirty.values()) {
+                    discarded |= !shards.isEmpty();
+                    shards.clear();
+                }
+                if (discarded) {
+                    TicketSystemMod.LOGGER.warn("Network data changed before a world was loaded; changes are not saved to {}",
+                            NetworkStorage.LEGACY_ROOT);
+                }
+                return;
+            }
+            NetworkJournal current = journal;
+            Map<DataSet, Map<String, Content>> contents = new EnumMap<>(DataSet.class);
+            byte[] binarySnapshot = null;
+            long position = -1;
+            long start = System.nanoTime();
+            // 与修改互斥：分片内容与日志位置必须一致
+            synchronized (NetworkManager.class) {
+                for (DataSet dataSet : DataSet.values()) {
+                    Set<String> shards = drain(dirty.get(dataSet));
+                    if (!shards.isEmpty()) {
+                        contents.put(dataSet, NetworkManager.serializeShards(dataSet, shards));
+                    }
+                }
+                if (contents.isEmpty() && (current == null || !current.hasRecords())) {
+                    return;
+                }
+                if (TicketSystemConfig.isBinarySnapshotEnabled()) {
+                    try {
+                        binarySnapshot = NetworkManager.encodeSnapshot();
+                    } catch (IOException e) {
+                        TicketSystemMod.LOGGER.error("Failed to encode binary snapshot", e);
+                    }
+                }
+                if (current != null) {
+                    position = current.size();
+                }
+            }
+
+            boolean failed = false;
+            int written = 0;
+            for (Map.Entry<DataSet, Map<String, Content>> dataSetEntry : contents.entrySet()) {
+                for (Map.Entry<String, Content> entry : dataSetEntry.getValue().entrySet()) {
+                    File file = NetworkStorage.getShardFile(dataSetEntry.getKey(), entry.getKey());
+                    try {
+                        if (entry.getValue() == null) {
+                            // 分片已经没有条目
+                            Files.deleteIfExists(file.toPath());
+                        } else {
+                            writeAtomically(file, entry.getValue());
+                        }
+                        NetworkStorage.recordStamp(file);
+                        written++;
+                    } catch (IOException e) {
+                        TicketSystemMod.LOGGER.error("Failed to save {}, will retry", file, e);
+                        dirty.get(dataSetEntry.getKey()).add(entry.getKey());
+                        failed = true;
+                    }
+                }
+            }
+            if (failed) {
+                // 日志保持完整，重试或下次启动回放即可恢复
+                scheduleWrite(TicketSystemConfig.getSaveDelayMillis());
+                return;
+            }
+
+            try {
+                if (binarySnapshot != null) {
+                    // 在JSON之后写出，快照内容不会比JSON旧
+                    NetworkSnapshot.write(NetworkStorage.getSnapshotFile(), binarySnapshot, NetworkStorage.listAllShardFiles());
+                }
+                if (current != null && position > 0) {
+                    synchronized (NetworkManager.class) {
+                        current.discardBefore(position);
+                    }
+                }
+            } catch (IOException e) {
+                TicketSystemMod.LOGGER.error("Failed to finish saving network data", e);
+            }
+            TicketSystemMod.LOGGER.debug("Saved {} network data shards in {} ms",
+                    written, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    private static Set<String> drain(Set<String> shards) {
+        Set<String> drained = new HashSet<>();
+        for (Iterator<String> iterator = shards.iterator(); iterator.hasNext(); ) {
+            drained.add(iterator.next());
+            iterator.remove();
+        }
+        return drained;
+    }
+
+    /**
+     * 先写入同目录下的临时文件，再替换目标文件
+     */
+    static void writeAtomically(File file, Content content) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(temp);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(output), 1 << 16)) {
+            content.writeTo(writer);
+            writer.flush();
+            output.getFD().sync();
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.easttown.ticketsystem.manager;
+
+import com.easttown.ticketsystem.data.Fare;
+import com.easttown.ticketsystem.data.Line;
+import com.easttown.ticketsystem.data.Station;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * 网络数据二进制快照 - JSON快照的启动加速副本
+ * 所有字符串（车站编码、名称等）存入字符串表，车站/线路/票价只保存下标与整数字段，
+ * 加载时一次读入内存后顺序解析，不经过反射，票价按已规范化的形式保存无需再次规范化
+ * 文件头记录写出时各JSON分片文件的路径、修改时间与长度，分片被手工修改、增加或删除后快照自动失效，仍以JSON为准
+ *
+ * 格式：magic、版本、分片数、各分片(相对路径, 修改时间, 长度)、正文长度、正文CRC32、正文
+ * 正文：字符串表、车站、线路、票价
+ */
+final class NetworkSnapshot {
+    /** 文件标识 "TSNS" */
+    private static final int MAGIC = 0x54534E53;
+    private static final int VERSION = 2;
+    private static final int MIN_HEADER_SIZE = 4 + 4 + 4 + 4 + 4;
+    private static final int NULL = -1;
+
+    /**
+     * 加载结果
+     */
+    static final class Data {
+        final Map<String, Station> stations;
+        final Map<String, Line> lines;
+        final Map<String, Fare> fares;
+
+        Data(Map<String, Station> stations, Map<String, Line> lines, Map<String, Fare> fares) {
+            this.stations = stations;
+            this.lines = lines;
+            this.fares = fares;
+        }
+    }
+
+    private NetworkSnapshot() {
+    }
+
+    // ==================== 写出 ====================
+
+    /**
+     * 编码快照正文（调用方持有NetworkManager的锁）
+     */
+    static byte[] encode(Collection<Station> stations, Collection<Line> lines, Collection<Fare> fares) throws IOException {
+        StringTable strings = new StringTable();
+        ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(64 + fares.size() * 12 + stations.size() * 36);
+        DataOutputStream records = new DataOutputStream(recordBuffer);
+
+        records.writeInt(stations.size());
+        for (Station station : stations) {
+            records.writeInt(strings.indexOf(station.getCode()));
+            records.writeInt(strings.indexOf(station.getName()));
+            records.writeInt(strings.indexOf(station.getEnName()));
+            records.writeInt(station.getX());
+            records.writeInt(station.getY());
+            records.writeInt(station.getZ());
+            records.writeInt(station.getStationNumber());
+            records.writeInt(strings.indexOf(station.getUuid()));
+            records.writeInt(strings.indexOf(station.getCustomId()));
+        }
+
+        records.writeInt(lines.size());
+        for (Line line : lines) {
+            records.writeInt(strings.indexOf(line.getId()));
+            records.writeInt(strings.indexOf(line.getName()));
+            records.writeInt(strings.indexOf(line.getEnName()));
+            records.writeInt(strings.indexOf(line.getColor()));
+            records.writeInt(strings.indexOf(line.getUuid()));
+            records.writeInt(strings.indexOf(line.getCustomId()));
+            List<String> codes = line.getStationCodes();
+            if (codes == null) {
+                records.writeInt(NULL);
+                continue;
+            }
+            records.writeInt(codes.size());
+            for (String code : codes) {
+                records.writeInt(strings.indexOf(code));
+            }
+        }
+
+        records.writeInt(fares.size());
+        for (Fare fare : fares) {
+            records.writeInt(strings.indexOf(fare.getFromStation()));
+            records.writeInt(strings.indexOf(fare.getToStation()));
+            records.writeInt(fare.getPrice());
+        }
+        records.flush();
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(recordBuffer.size() + strings.size() * 16 + 4);
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeInt(strings.size());
+        for (String value : strings.values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        recordBuffer.writeTo(out);
+        out.flush();
+        return body.toByteArray();
+    }
+
+    /**
+     * 写出快照文件（先写临时文件再替换）
+     * @param jsonFiles 写出时数据目录下的全部JSON分片文件，用于判断快照是否过期
+     */
+    static void write(File file, byte[] body, List<File> jsonFiles) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(jsonFiles.size());
+            for (File json : jsonFiles) {
+                out.writeUTF(NetworkStorage.relativePath(json));
+                out.writeLong(json.lastModified());
+                out.writeLong(json.length());
+            }
+            out.writeInt(body.length);
+            out.writeInt((int) crc.getValue());
+            out.write(body);
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // ==================== 读取 ====================
+
+    /**
+     * 读取快照；文件不存在、格式不符、校验失败或JSON分片已在快照之后被修改时返回null
+     */
+    static Data read(File file, List<File> jsonFiles) throws IOException {
+        if (!file.exists() || file.length() < MIN_HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return null;
+            }
+            buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // 读满整个文件
+            }
+            buffer.flip();
+        }
+
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        if (buffer.getInt() != jsonFiles.size()) {
+            return null;
+        }
+        for (File json : jsonFiles) {
+            int pathLength = buffer.getShort() & 0xFFFF;
+            String path = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), pathLength, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + pathLength);
+            long lastModified = buffer.getLong();
+            long length = buffer.getLong();
+            if (!path.equals(NetworkStorage.relativePath(json))
+                    || json.lastModified() != lastModified || json.length() != length) {
+                return null;
+            }
+        }
+        int bodyLength = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (bodyLength != buffer.remaining()) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice());
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        return decode(buffer);
+    }
+
+    private static Data decode(ByteBuffer buffer) {
+        String[] strings = new String[buffer.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            int length = buffer.getInt();
+            strings[i] = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        }
+
+        int stationCount = buffer.getInt();
+        Map<String, Station> stations = new HashMap<>(stationCount * 4 / 3 + 1);
+        for (int i = 0; i < stationCount; i++) {
+            String code = string(strings, buffer.getInt());
+            String name = string(strings, buffer.getInt());
+            String enName = string(strings, buffer.getInt());
+            int x = buffer.getInt();
+            int y = buffer.getInt();
+            int z = buffer.getInt();
+            int stationNumber = buffer.getInt();
+            String uuid = string(strings, buffer.getInt());
+            String customId = string(strings, buffer.getInt());
+            stations.put(code, new Station(code, name, enName, x, y, z, stationNumber, uuid, customId));
+        }
+
+        int lineCount = buffer.getInt();
+        Map<String, Line> lines = new HashMap<>(lineCount * 4 / 3 + 1);
+        for (int i = 0; i < lineCount; i++) {
+            String id = string(strings, buffer.getInt());
+            String name = string(strings, buffer.getInt());
+            String enName = string(strings, buffer.getInt());
+            String color = string(strings, buffer.getInt());
+            String uuid = string(strings, buffer.getInt());
+            String customId = string(strings, buffer.getInt());
+            int codeCount = buffer.getInt();
+            List<String> codes = new ArrayList<>(Math.max(codeCount, 0));
+            for (int j = 0; j < codeCount; j++) {
+                codes.add(string(strings, buffer.getInt()));
+            }
+            lines.put(id, new Line(id, name, enName, color, codes, uuid, customId));
+        }
+
+        int fareCount = buffer.getInt();
+        Map<String, Fare> fares = new HashMap<>(fareCount * 4 / 3 + 1);
+        for (int i = 0; i < fareCount; i++) {
+            String from = string(strings, buffer.getInt());
+            String to = string(strings, buffer.getInt());
+            int price = buffer.getInt();
+            // 快照中的票价已规范化，键与NetworkManager.getFareKey一致
+            fares.put(from + "-" + to, new Fare(from, to, price));
+        }
+        return new Data(stations, lines, fares);
+    }
+
+    private static String string(String[] strings, int index) {
+        return index == NULL ? null : strings[index];
+    }
+
+    /**
+     * 写出时使用的字符串表，相同字符串只保存一次
+     */
+    private static final class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int indexOf(String value) {
+            if (value == null) {
+                return NULL;
+            }
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = values.size();
+                indexes.put(value, index);
+                values.add(value);
+            }
+            return index;
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+}
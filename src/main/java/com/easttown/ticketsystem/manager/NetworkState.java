@@ -0,0 +1,168 @@
+package com.easttown.ticketsystem.manager;
+
+import com.easttown.ticketsystem.TicketSystemMod;
+import com.easttown.ticketsystem.data.Fare;
+import com.easttown.ticketsystem.data.Line;
+import com.easttown.ticketsystem.data.Station;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 网络数据的不可变版本 - 某一时刻的车站、线路、票价及其数据版本号
+ * NetworkManager通过volatile引用发布当前版本，修改时复制被修改的表、生成新版本后整体替换，
+ * 读取方在任何线程拿到的都是完整的一个版本，不需要加锁；车站/线路对象发布后只读，修改时先copy()
+ */
+public final class NetworkState {
+    static final NetworkState EMPTY = new NetworkState(0,
+            Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
+
+    private final long version;
+    // 各版本共用未修改的表，因此只对外提供只读视图
+    private final Map<String, Station> stations;
+    private final Map<String, Line> lines;
+    private final Map<String, Fare> fares; // key: "from-to"
+    private final Map<String, Station> stationView;
+    private final Map<String, Line> lineView;
+    private final Map<String, Fare> fareView;
+
+    // 路径图在第一次查询时构建，之后随本版本一起复用
+    private volatile NetworkGraph graph;
+
+    /**
+     * 直接持有传入的表，调用方之后不得再修改它们
+     */
+    private NetworkState(long version, Map<String, Station> stations, Map<String, Line> lines, Map<String, Fare> fares) {
+        this.version = version;
+        this.stations = stations;
+        this.lines = lines;
+        this.fares = fares;
+        this.stationView = Collections.unmodifiableMap(stations);
+        this.lineView = Collections.unmodifiableMap(lines);
+        this.fareView = Collections.unmodifiableMap(fares);
+    }
+
+    /**
+     * 数据版本号：车站/线路/票价每次变化递增
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public Map<String, Station> getStations() {
+        return stationView;
+    }
+
+    public Map<String, Line> getLines() {
+        return lineView;
+    }
+
+    /**
+     * 票价表，键为规范化的"from-to"（from按字母顺序较小）
+     */
+    public Map<String, Fare> getFares() {
+        return fareView;
+    }
+
+    public Station getStation(String stationCode) {
+        return stations.get(stationCode);
+    }
+
+    public Line getLine(String lineId) {
+        return lines.get(lineId);
+    }
+
+    /**
+     * 本版本对应的路径图
+     */
+    public NetworkGraph getGraph() {
+        NetworkGraph current = graph;
+        if (current == null) {
+            synchronized (this) {
+                current = graph;
+                if (current == null) {
+                    long start = System.nanoTime();
+                    current = NetworkGraph.build(version, stations.values(), lines.values(), fares.values());
+                    graph = current;
+                    TicketSystemMod.LOGGER.debug("Rebuilt {} in {} us", current, (System.nanoTime() - start) / 1000);
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 基于本版本开始一次修改
+     */
+    Draft edit() {
+        return new Draft(this);
+    }
+
+    /**
+     * 修改中的版本：第一次修改某张表时才复制它，未修改的表与原版本共用
+     */
+    static final class Draft {
+        private final NetworkState base;
+        private Map<String, Station> stations;
+        private Map<String, Line> lines;
+        private Map<String, Fare> fares;
+
+        private Draft(NetworkState base) {
+            this.base = base;
+        }
+
+        Map<String, Station> stations() {
+            return stations != null ? stations : base.stations;
+        }
+
+        Map<String, Line> lines() {
+            return lines != null ? lines : base.lines;
+        }
+
+        Map<String, Fare> fares() {
+            return fares != null ? fares : base.fares;
+        }
+
+        Map<String, Station> editStations() {
+            if (stations == null) {
+                stations = new HashMap<>(base.stations);
+            }
+            return stations;
+        }
+
+        Map<String, Line> editLines() {
+            if (lines == null) {
+                lines = new HashMap<>(base.lines);
+            }
+            return lines;
+        }
+
+        Map<String, Fare> editFares() {
+            if (fares == null) {
+                fares = new HashMap<>(base.fares);
+            }
+            return fares;
+        }
+
+        /**
+         * 整体替换表（加载数据时使用）
+         */
+        void replace(Map<String, Station> stations, Map<String, Line> lines, Map<String, Fare> fares) {
+            this.stations = stations;
+            this.lines = lines;
+            this.fares = fares;
+        }
+
+        boolean isModified() {
+            return stations != null || lines != null || fares != null;
+        }
+
+        /**
+         * 生成新版本，之后不能再通过本对象修改
+         */
+        NetworkState build(long version) {
+            return new NetworkState(version, stations(), lines(), fares());
+        }
+    }
+}
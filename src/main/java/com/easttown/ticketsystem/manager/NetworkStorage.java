@@ -0,0 +1,222 @@
+package com.easttown.ticketsystem.manager;
+
+import com.easttown.ticketsystem.TicketSystemMod;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 网络数据存储布局 - 按世界存档分目录、按分片分文件
+ * 车站按编码前缀分片（stations/01.json），线路每条一个文件（lines/1.json），
+ * 票价按起点车站的线路前缀分片（fares/01.json）；修改只重写所在分片，预写日志与二进制快照放在数据目录根下
+ * 服务器启动前使用旧的全局目录mods/ticketsystem/，此时数据只读：旧的stations.json等文件按普通分片读取，
+ * 不整理分片也不写回，留给世界加载后导入
+ */
+final class NetworkStorage {
+    private static final String FILE_EXTENSION = ".json";
+    // 编码不符合"前缀-序号"格式的条目所在的分片
+    private static final String MISC_SHARD = "_";
+
+    static final File LEGACY_ROOT = new File("mods/" + TicketSystemMod.MODID);
+
+    private static volatile File root = LEGACY_ROOT;
+
+    // 最近一次读取或写出时各分片文件的(修改时间, 长度)，用于找出在磁盘上被修改的分片
+    private static final Map<String, long[]> stamps = new ConcurrentHashMap<>();
+
+    private NetworkStorage() {
+    }
+
+    /**
+     * 当前数据目录
+     */
+    static File getRoot() {
+        return root;
+    }
+
+    static void setRoot(File directory) {
+        root = directory;
+    }
+
+    /**
+     * 当前是否还是旧的全局目录（世界加载之前）
+     */
+    static boolean isLegacyRoot() {
+        return root.getAbsoluteFile().equals(LEGACY_ROOT.getAbsoluteFile());
+    }
+
+    static File getDirectory(NetworkPersistence.DataSet dataSet) {
+        return getDirectory(root, dataSet);
+    }
+
+    private static File getDirectory(File base, NetworkPersistence.DataSet dataSet) {
+        switch (dataSet) {
+            case STATIONS:
+                return new File(base, "stations");
+            case LINES:
+                return new File(base, "lines");
+            default:
+                return new File(base, "fares");
+        }
+    }
+
+    static File getJournalFile(File base) {
+        return new File(base, "network.journal");
+    }
+
+    static File getSnapshotFile() {
+        return new File(root, "network.snapshot");
+    }
+
+    static void ensureDirectories() {
+        for (NetworkPersistence.DataSet dataSet : NetworkPersistence.DataSet.values()) {
+            getDirectory(dataSet).mkdirs();
+        }
+    }
+
+    // ==================== 分片 ====================
+
+    /**
+     * 车站所在分片：编码前缀
+     */
+    static String stationShard(String stationCode) {
+        return sanitize(stationCode != null ? FareCalculationEngine.linePrefix(stationCode) : null);
+    }
+
+    /**
+     * 线路所在分片：线路ID
+     */
+    static String lineShard(String lineId) {
+        return sanitize(lineId);
+    }
+
+    /**
+     * 票价所在分片：规范化后起点车站的编码前缀
+     */
+    static String fareShard(String fromStation) {
+        return stationShard(fromStation);
+    }
+
+    /**
+     * 分片名同时作为文件名，只保留字母、数字、'-'与'_'；不同的键映射到同一分片名时共用一个文件
+     */
+    private static String sanitize(String key) {
+        if (key == null || key.isEmpty()) {
+            return MISC_SHARD;
+        }
+        StringBuilder builder = new StringBuilder(key.length());
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            builder.append(Character.isLetterOrDigit(c) || c == '-' || c == '_' ? c : '_');
+        }
+        return builder.toString();
+    }
+
+    static File getShardFile(NetworkPersistence.DataSet dataSet, String shard) {
+        return new File(getDirectory(dataSet), shard + FILE_EXTENSION);
+    }
+
+    /**
+     * 分片文件对应的分片名
+     */
+    static String shardName(File file) {
+        String name = file.getName();
+        return name.substring(0, name.length() - FILE_EXTENSION.length());
+    }
+
+    /**
+     * 列出数据集在当前数据目录下的全部分片文件（按文件名排序）
+     */
+    static List<File> listShardFiles(NetworkPersistence.DataSet dataSet) {
+        return listShardFiles(root, dataSet);
+    }
+
+    static List<File> listShardFiles(File base, NetworkPersistence.DataSet dataSet) {
+        File[] files = getDirectory(base, dataSet).listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(files);
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    /**
+     * 当前数据目录下全部分片文件（车站、线路、票价顺序）
+     */
+    static List<File> listAllShardFiles() {
+        List<File> files = new ArrayList<>();
+        for (NetworkPersistence.DataSet dataSet : NetworkPersistence.DataSet.values()) {
+            files.addAll(listShardFiles(dataSet));
+        }
+        return files;
+    }
+
+    /**
+     * 分片文件相对数据目录的路径（用于二进制快照的过期判断）
+     */
+    static String relativePath(File file) {
+        return file.getParentFile().getName() + "/" + file.getName();
+    }
+
+    // ==================== 文件状态 ====================
+
+    /**
+     * 记录分片文件当前的状态（读取或写出之后调用）
+     */
+    static void recordStamp(File file) {
+        if (file.exists()) {
+            stamps.put(file.getAbsolutePath(), new long[]{file.lastModified(), file.length()});
+        } else {
+            stamps.remove(file.getAbsolutePath());
+        }
+    }
+
+    static void clearStamps() {
+        stamps.clear();
+    }
+
+    /**
+     * 找出自上次读取/写出后在磁盘上新增、修改或删除的分片
+     */
+    static List<String> changedShards(NetworkPersistence.DataSet dataSet) {
+        List<String> changed = new ArrayList<>();
+        List<File> files = listShardFiles(dataSet);
+        for (File file : files) {
+            long[] stamp = stamps.get(file.getAbsolutePath());
+            if (stamp == null || stamp[0] != file.lastModified() || stamp[1] != file.length()) {
+                changed.add(shardName(file));
+            }
+        }
+        String directory = getDirectory(dataSet).getAbsolutePath();
+        for (String path : stamps.keySet()) {
+            File file = new File(path);
+            if (file.getParent().equals(directory) && !file.exists()) {
+                changed.add(shardName(file));
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 当前数据目录还没有任何数据，而旧的全局目录有数据时，需要从旧目录导入
+     */
+    static boolean needsMigration() {
+        File current = root;
+        if (isLegacyRoot()) {
+            return false;
+        }
+        if (!listAllShardFiles().isEmpty() || getJournalFile(current).exists()) {
+            return false;
+        }
+        for (NetworkPersistence.DataSet dataSet : NetworkPersistence.DataSet.values()) {
+            if (!listShardFiles(LEGACY_ROOT, dataSet).isEmpty()) {
+                return true;
+            }
+        }
+        return getJournalFile(LEGACY_ROOT).exists();
+    }
+}
@@ -0,0 +1,142 @@
+package com.easttown.ticketsystem.manager;
+
+import com.easttown.ticketsystem.data.Fare;
+import com.easttown.ticketsystem.data.Line;
+import com.easttown.ticketsystem.data.Station;
+
+import java.util.*;
+
+/**
+ * 网络数据批量修改 - 先登记一组车站/线路/票价修改，commit时一次性校验并应用
+ * 所有修改基于同一个数据版本按登记顺序应用（后面的修改能看到前面的结果，例如先加车站再加票价），
+ * 任何一条失败则全部放弃；成功时只发布一个新版本，每种数据类型只发出一个变化事件，每个条目只持久化一次
+ *
+ * 用法：
+ * <pre>
+ * NetworkTransaction transaction = NetworkManager.beginTransaction();
+ * transaction.addFare(fare1).addFare(fare2);
+ * if (!transaction.commit()) {
+ *     transaction.getErrors();
+ * }
+ * </pre>
+ */
+public final class NetworkTransaction {
+    /**
+     * 一条修改：应用到修改中的版本，失败时返回错误信息
+     */
+    interface Operation {
+        String apply(NetworkState.Draft draft, Changes changes);
+    }
+
+    /**
+     * 修改涉及的条目与车站，提交后据此发出事件、写入日志
+     */
+    static final class Changes {
+        final Set<String> stations = new LinkedHashSet<>();
+        final Set<String> lines = new LinkedHashSet<>();
+        // 票价键 -> 该区间的票价（用于确定分片）
+        final Map<String, Fare> fares = new LinkedHashMap<>();
+        final Set<String> stationEventCodes = new HashSet<>();
+        final Set<String> lineEventCodes = new HashSet<>();
+        final Set<String> fareEventCodes = new HashSet<>();
+
+        void station(String code) {
+            stations.add(code);
+            stationEventCodes.add(code);
+        }
+
+        void line(String lineId, Collection<String> stationCodes) {
+            lines.add(lineId);
+            lineEventCodes.addAll(stationCodes);
+        }
+
+        void fare(String key, Fare segment) {
+            fares.put(key, segment);
+            fareEventCodes.add(segment.getFromStation());
+            fareEventCodes.add(segment.getToStation());
+        }
+    }
+
+    private final List<Operation> operations = new ArrayList<>();
+    private final List<String> errors = new ArrayList<>();
+    private boolean committed;
+
+    NetworkTransaction() {
+    }
+
+    public NetworkTransaction addStation(Station station) {
+        return add((draft, changes) -> NetworkManager.applyAddStation(draft, station, changes));
+    }
+
+    public NetworkTransaction updateStation(Station station) {
+        return add((draft, changes) -> NetworkManager.applyUpdateStation(draft, station, changes));
+    }
+
+    /**
+     * 移除车站，同时从线路中移除该车站并删除涉及它的票价
+     */
+    public NetworkTransaction removeStation(String stationCode) {
+        return add((draft, changes) -> NetworkManager.applyRemoveStation(draft, stationCode, changes));
+    }
+
+    public NetworkTransaction addLine(Line line) {
+        return add((draft, changes) -> NetworkManager.applyAddLine(draft, line, changes));
+    }
+
+    public NetworkTransaction updateLine(Line line) {
+        return add((draft, changes) -> NetworkManager.applyUpdateLine(draft, line, changes));
+    }
+
+    public NetworkTransaction removeLine(String lineId) {
+        return add((draft, changes) -> NetworkManager.applyRemoveLine(draft, lineId, changes));
+    }
+
+    /**
+     * 添加票价，区间已有票价时失败
+     */
+    public NetworkTransaction addFare(Fare fare) {
+        return add((draft, changes) -> NetworkManager.applyAddFare(draft, fare, changes));
+    }
+
+    public NetworkTransaction updateFare(Fare fare) {
+        return add((draft, changes) -> NetworkManager.applyUpdateFare(draft, fare, changes));
+    }
+
+    public NetworkTransaction removeFare(String fromStation, String toStation) {
+        return add((draft, changes) -> NetworkManager.applyRemoveFare(draft, fromStation, toStation, changes));
+    }
+
+    private NetworkTransaction add(Operation operation) {
+        if (committed) {
+            throw new IllegalStateException("Transaction already committed");
+        }
+        operations.add(operation);
+        return this;
+    }
+
+    /**
+     * 已登记的修改数
+     */
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * 校验并应用全部修改
+     * @return 全部成功返回true；任何一条失败返回false，数据保持不变，失败原因见getErrors()
+     */
+    public boolean commit() {
+        if (committed) {
+            throw new IllegalStateException("Transaction already committed");
+        }
+        committed = true;
+        return NetworkManager.commitTransaction(operations, errors);
+    }
+
+    /**
+     * commit失败时各条修改的错误信息
+     */
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+}
@@ -12,10 +12,6 @@ import net.minecraft.world.entity.player.Player;
  * 优先使用票价表，如果没有定义则回退到距离计算
  */
 public class PriceCalculator {
-    // 缓存最近的计算结果（简单实现）
-    private static final java.util.Map<String, Integer> priceCache = new java.util.HashMap<>();
-    private static final int CACHE_SIZE = 100;
-
     /**
      * 计算票价（主要方法）
      * @param startStation 起点车站名称（兼容旧代码）或车站编码
@@ -34,12 +30,6 @@ public class PriceCalculator {
 
         // 初始化折扣管理器
         DiscountManager.initialize();
-        // 检查缓存（使用规范化缓存键，使区间票价无方向性）
-        String cacheKey = getNormalizedCacheKey(startStation, destination);
-        Integer cachedPrice = priceCache.get(cacheKey);
-        if (cachedPrice != null) {
-            return cachedPrice;
-        }
 
         // 转换车站名称到编码（如果需要）
         String startCode = convertToStationCode(startStation);
@@ -53,17 +43,6 @@ public class PriceCalculator {
         // 使用票价表计算
         int price = calculatePriceByFareTable(startCode, destCode);
 
-        // 更新缓存
-        if (priceCache.size() >= CACHE_SIZE) {
-            // 简单LRU：清除一半缓存
-            java.util.Iterator<String> it = priceCache.keySet().iterator();
-            for (int i = 0; i < CACHE_SIZE / 2 && it.hasNext(); i++) {
-                it.next();
-                it.remove();
-            }
-        }
-        priceCache.put(cacheKey, price);
-
         // 应用折扣
         int finalPrice = DiscountManager.applyDiscount(price);
         return finalPrice;
@@ -82,13 +61,25 @@ public class PriceCalculator {
             return fare.getPrice();
         }
 
-        // 方法2：使用路线计算器查找最优路径
+        // 方法2：查询后台预计算的票价矩阵（O(1)）
+        FareMatrix matrix = FareMatrixService.getMatrix();
+        if (matrix != null) {
+            int matrixFare = matrix.getFare(startCode, destCode);
+            if (matrixFare > 0) {
+                return matrixFare;
+            }
+            TicketSystemMod.LOGGER.debug("No route in fare matrix for {} -> {}, falling back to distance calculation",
+                    startCode, destCode);
+            return calculatePriceByDistance(startCode, destCode);
+        }
+
+        // 方法3：矩阵未就绪时，使用路线计算器查找最优路径
         Route route = RouteCalculator.findCheapestRoute(startCode, destCode);
         if (route != null && route.getTotalPrice() > 0) {
             return route.getTotalPrice();
         }
 
-        // 方法3：如果票价表不完整，使用距离计算作为回退
+        // 方法4：如果票价表不完整，使用距离计算作为回退
         TicketSystemMod.LOGGER.debug("No fare definition found for {} -> {}, falling back to distance calculation",
                 startCode, destCode);
         return calculatePriceByDistance(startCode, destCode);
@@ -181,17 +172,17 @@ public class PriceCalculator {
     }
 
     /**
-     * 清除价格缓存
+     * 清除价格缓存（丢弃票价矩阵并在后台重新计算）
      */
     public static void clearCache() {
-        priceCache.clear();
+        FareMatrixService.invalidate();
     }
 
     /**
      * 获取缓存统计
      */
     public static String getCacheStats() {
-        return String.format("Price cache: %d entries", priceCache.size());
+        return FareMatrixService.getStatus() + "; " + ContractionHierarchyService.getStatus();
     }
 
     /**
@@ -244,18 +235,6 @@ public class PriceCalculator {
         return generatedCount > 0;
     }
 
-    /**
-     * 获取规范化缓存键（使区间票价无方向性）
-     * 对两个车站标识符按字母顺序排序，然后连接
-     */
-    private static String getNormalizedCacheKey(String station1, String station2) {
-        if (station1.compareTo(station2) <= 0) {
-            return station1 + "->" + station2;
-        } else {
-            return station2 + "->" + station1;
-        }
-    }
-
     // ==================== 辅助类 ====================
 
     /**
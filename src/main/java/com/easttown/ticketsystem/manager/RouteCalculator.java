@@ -1,17 +1,56 @@
 package com.easttown.ticketsystem.manager;
 
-import com.easttown.ticketsystem.data.Fare;
-import com.easttown.ticketsystem.data.Line;
+import com.easttown.ticketsystem.config.TicketSystemConfig;
 import com.easttown.ticketsystem.data.Route;
-import com.easttown.ticketsystem.data.Station;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * 路线计算器 - 实现最短路径算法（Dijkstra）
+ * 路线计算器 - 实现最短路径算法（Dijkstra / A* / 双向Dijkstra / 收缩层次）
  * 用于计算最低价格的路径，支持换乘
+ * 搜索在NetworkManager提供的图快照（NetworkGraph）上进行，不再逐次扫描全部票价
  */
 public class RouteCalculator {
+    /**
+     * 实时搜索算法（配置项 route_search_mode）
+     */
+    public enum SearchMode {
+        DIJKSTRA("dijkstra"),
+        ASTAR("astar"),
+        BIDIRECTIONAL("bidirectional"),
+        // 不通过配置选择：启用contraction_hierarchy_enabled且索引就绪时自动使用
+        CONTRACTION_HIERARCHY("ch");
+
+        private final String configName;
+        // 查询次数与累计扩展车站数，用于比较各算法的搜索规模
+        private final AtomicLong queries = new AtomicLong();
+        private final AtomicLong expandedNodes = new AtomicLong();
+
+        SearchMode(String configName) {
+            this.configName = configName;
+        }
+
+        static SearchMode fromConfig() {
+            String name = TicketSystemConfig.getRouteSearchMode();
+            for (SearchMode mode : values()) {
+                if (mode != CONTRACTION_HIERARCHY && mode.configName.equalsIgnoreCase(name)) {
+                    return mode;
+                }
+            }
+            return DIJKSTRA;
+        }
+
+        private void record(int expanded) {
+            queries.incrementAndGet();
+            expandedNodes.addAndGet(expanded);
+        }
+
+        public String getConfigName() {
+            return configName;
+        }
+    }
+
     /**
      * 计算从起点到终点的最低价格路径
      * @param startStationCode 起点车站编码
@@ -29,225 +68,176 @@ public class RouteCalculator {
             return createDirectRoute(startStationCode, endStationCode);
         }
 
-        // 初始化数据结构
-        Map<String, Integer> distances = new HashMap<>();
-        Map<String, String> previousStations = new HashMap<>();
-        Map<String, String> previousLines = new HashMap<>();
-        PriorityQueue<Node> queue = new PriorityQueue<>(Comparator.comparingInt(n -> n.distance));
-
-        // 初始化所有车站
-        for (Station station : NetworkManager.getAllStations()) {
-            String code = station.getCode();
-            distances.put(code, Integer.MAX_VALUE);
+        NetworkGraph graph = NetworkManager.getGraph();
+        int source = graph.indexOf(startStationCode);
+        int target = graph.indexOf(endStationCode);
+        if (source < 0 || target < 0) {
+            return null;
         }
 
-        // 设置起点
-        distances.put(startStationCode, 0);
-        queue.add(new Node(startStationCode, 0, null));
-
-        // Dijkstra算法主循环
-        while (!queue.isEmpty()) {
-            Node current = queue.poll();
-
-            // 如果找到终点，提前结束
-            if (current.stationCode.equals(endStationCode)) {
-                break;
-            }
-
-            // 如果当前距离大于已知最短距离，跳过
-            if (current.distance > distances.get(current.stationCode)) {
-                continue;
-            }
-
-            // 探索邻居车站
-            exploreNeighbors(current, distances, previousStations, previousLines, queue);
+        // 收缩层次索引就绪时优先使用，否则按配置选择搜索算法
+        RouteSearchContext context = RouteSearchContext.get(graph);
+        ContractionHierarchy hierarchy = ContractionHierarchyService.getIndex(graph);
+        SearchMode mode = hierarchy != null ? SearchMode.CONTRACTION_HIERARCHY : SearchMode.fromConfig();
+        int[] edgePath;
+        if (hierarchy != null) {
+            edgePath = hierarchy.query(source, target, context);
+        } else if (mode == SearchMode.BIDIRECTIONAL) {
+            edgePath = searchBidirectional(graph, context, source, target);
+        } else {
+            edgePath = searchForward(graph, context, source, target, mode == SearchMode.ASTAR);
         }
+        mode.record(context.expandedNodes);
 
         // 构建路径
-        return buildRoute(startStationCode, endStationCode, distances, previousStations, previousLines);
-    }
-
-    /**
-     * 探索当前车站的邻居
-     */
-    private static void exploreNeighbors(Node current,
-                                        Map<String, Integer> distances,
-                                        Map<String, String> previousStations,
-                                        Map<String, String> previousLines,
-                                        PriorityQueue<Node> queue) {
-        String currentStation = current.stationCode;
-
-        // 获取所有相邻车站（通过票价定义）
-        List<Neighbor> neighbors = getNeighbors(currentStation, current.lineId);
-
-        for (Neighbor neighbor : neighbors) {
-            String neighborStation = neighbor.stationCode;
-            int farePrice = neighbor.farePrice;
-            String lineId = neighbor.lineId;
-
-            // 计算新距离
-            int newDistance = distances.get(currentStation) + farePrice;
-
-            // 如果找到更短路径
-            if (newDistance < distances.get(neighborStation)) {
-                distances.put(neighborStation, newDistance);
-                previousStations.put(neighborStation, currentStation);
-                if (lineId != null) {
-                    previousLines.put(neighborStation, lineId);
-                }
-
-                queue.add(new Node(neighborStation, newDistance, lineId));
-            }
+        if (edgePath == null) {
+            return null; // 没有路径
+        }
+        int totalPrice = 0;
+        for (int edge : edgePath) {
+            totalPrice += graph.edgePrice(edge);
         }
+        return buildRoute(graph, source, edgePath, totalPrice);
     }
 
     /**
-     * 获取车站的所有邻居（相邻车站）
+     * 单向搜索：Dijkstra，或以坐标下界为启发值的A*
+     * 启发值满足一致性，车站出队即确定最低票价，因此两种模式结果相同
      */
-    private static List<Neighbor> getNeighbors(String stationCode, String currentLineId) {
-        List<Neighbor> neighbors = new ArrayList<>();
-
-        // 方法1：通过票价定义查找邻居（双向检查）
-        for (Fare fare : NetworkManager.getAllFares()) {
-            String neighborStation = null;
-            if (fare.getFromStation().equals(stationCode)) {
-                neighborStation = fare.getToStation();
-            } else if (fare.getToStation().equals(stationCode)) {
-                neighborStation = fare.getFromStation();
-            }
-
-            if (neighborStation != null) {
-                int price = fare.getPrice();
-                if (price <= 0) continue; // 跳过无效票价
+    private static int[] searchForward(NetworkGraph graph, RouteSearchContext context, int source, int target, boolean useHeuristic) {
+        // 复用当前线程的搜索上下文（按车站下标，O(1)重置）
+        RouteSearchContext.SearchSpace space = context.forward;
+        space.reset(graph.getStationCount());
+        space.set(source, 0, -1);
+        space.heap.offer(source, useHeuristic ? graph.fareLowerBound(source, target) : 0);
+        int expanded = 0;
+
+        // 主循环（索引堆支持降键，每个车站只出队一次）
+        while (!space.heap.isEmpty()) {
+            int current = space.heap.poll();
+            expanded++;
 
-                // 尝试确定线路
-                String lineId = findLineForSegment(stationCode, neighborStation, currentLineId);
-                neighbors.add(new Neighbor(neighborStation, price, lineId));
+            // 如果找到终点，提前结束
+            if (current == target) {
+                break;
             }
-        }
 
-        // 方法2：通过线路查找相邻车站（如果没有票价定义）
-        if (neighbors.isEmpty()) {
-            for (Line line : NetworkManager.getAllLines()) {
-                if (line.containsStation(stationCode)) {
-                    String[] adjacent = line.getAdjacentStations(stationCode);
-                    if (adjacent != null) {
-                        // 前一个车站
-                        if (adjacent[0] != null) {
-                            int price = estimateFare(stationCode, adjacent[0]);
-                            neighbors.add(new Neighbor(adjacent[0], price, line.getId()));
-                        }
-                        // 后一个车站
-                        if (adjacent[1] != null) {
-                            int price = estimateFare(stationCode, adjacent[1]);
-                            neighbors.add(new Neighbor(adjacent[1], price, line.getId()));
-                        }
-                    }
+            // 探索邻居车站（CSR出边）
+            long distance = space.distance(current);
+            int previousEdge = space.previous(current);
+            int currentLine = previousEdge >= 0 ? graph.edgeLine(previousEdge) : NetworkGraph.NO_LINE;
+            for (int e = graph.edgeStart(current), end = graph.edgeEnd(current); e < end; e++) {
+                int neighbor = graph.edgeTarget(e);
+                long newDistance = distance + graph.edgePrice(e);
+                long known = space.distance(neighbor);
+
+                if (newDistance < known) {
+                    space.set(neighbor, newDistance, e);
+                    space.heap.offer(neighbor, useHeuristic ? newDistance + graph.fareLowerBound(neighbor, target) : newDistance);
+                } else if (newDistance == known && currentLine != NetworkGraph.NO_LINE
+                        && graph.edgeLine(e) == currentLine
+                        && graph.edgeLine(space.previous(neighbor)) != currentLine) {
+                    // 同价时优先沿当前线路继续，减少不必要的换乘
+                    space.set(neighbor, newDistance, e);
                 }
             }
         }
 
-        return neighbors;
+        context.expandedNodes = expanded;
+        return space.reached(target) ? collectEdges(graph, space, source, target) : null;
     }
 
     /**
-     * 为路径段查找线路
+     * 双向Dijkstra：正向从起点、反向从终点（反向CSR）交替扩展规模较小的一侧，
+     * 当两侧堆顶之和不小于已知最优相遇票价时停止
      */
-    private static String findLineForSegment(String fromStation, String toStation, String currentLineId) {
-        // 如果当前线路包含这两个连续车站，优先使用当前线路
-        if (currentLineId != null) {
-            Line currentLine = NetworkManager.getLine(currentLineId);
-            if (currentLine != null) {
-                String[] adjacent = currentLine.getAdjacentStations(fromStation);
-                if (adjacent != null && (toStation.equals(adjacent[0]) || toStation.equals(adjacent[1]))) {
-                    return currentLineId;
-                }
+    private static int[] searchBidirectional(NetworkGraph graph, RouteSearchContext context, int source, int target) {
+        int n = graph.getStationCount();
+        RouteSearchContext.SearchSpace forward = context.forward;
+        RouteSearchContext.SearchSpace backward = context.backward;
+        forward.reset(n);
+        backward.reset(n);
+        forward.set(source, 0, -1);
+        forward.heap.offer(source, 0);
+        backward.set(target, 0, -1);
+        backward.heap.offer(target, 0);
+
+        long best = RouteSearchContext.INFINITY;
+        int meetingEdge = -1;
+        int expanded = 0;
+
+        while (!forward.heap.isEmpty() && !backward.heap.isEmpty()) {
+            if (forward.heap.peekKey() + backward.heap.peekKey() >= best) {
+                break;
             }
-        }
-
-        // 查找包含这两个车站的线路
-        for (Line line : NetworkManager.getAllLines()) {
-            if (line.containsStation(fromStation) && line.containsStation(toStation)) {
-                // 检查是否相邻
-                String[] adjacent = line.getAdjacentStations(fromStation);
-                if (adjacent != null && (toStation.equals(adjacent[0]) || toStation.equals(adjacent[1]))) {
-                    return line.getId();
+            expanded++;
+            if (forward.heap.size() <= backward.heap.size()) {
+                int current = forward.heap.poll();
+                long distance = forward.distance(current);
+                for (int e = graph.edgeStart(current), end = graph.edgeEnd(current); e < end; e++) {
+                    int neighbor = graph.edgeTarget(e);
+                    long newDistance = distance + graph.edgePrice(e);
+                    if (newDistance < forward.distance(neighbor)) {
+                        forward.set(neighbor, newDistance, e);
+                        forward.heap.offer(neighbor, newDistance);
+                    }
+                    if (backward.reached(neighbor) && newDistance + backward.distance(neighbor) < best) {
+                        best = newDistance + backward.distance(neighbor);
+                        meetingEdge = e;
+                    }
+                }
+            } else {
+                int current = backward.heap.poll();
+                long distance = backward.distance(current);
+                for (int r = graph.reverseStart(current), end = graph.reverseEnd(current); r < end; r++) {
+                    int e = graph.reverseEdge(r);
+                    int neighbor = graph.edgeSource(e);
+                    long newDistance = distance + graph.edgePrice(e);
+                    if (newDistance < backward.distance(neighbor)) {
+                        backward.set(neighbor, newDistance, e);
+                        backward.heap.offer(neighbor, newDistance);
+                    }
+                    if (forward.reached(neighbor) && newDistance + forward.distance(neighbor) < best) {
+                        best = newDistance + forward.distance(neighbor);
+                        meetingEdge = e;
+                    }
                 }
             }
         }
 
-        return null; // 无法确定线路
-    }
-
-    /**
-     * 估算票价（当没有明确定义时）
-     */
-    private static int estimateFare(String fromStation, String toStation) {
-        // 先尝试获取已定义的票价
-        Fare fare = NetworkManager.getFare(fromStation, toStation);
-        if (fare != null) {
-            return fare.getPrice();
+        context.expandedNodes = expanded;
+        if (meetingEdge < 0) {
+            return null;
         }
 
-        // 使用基于距离的估算（回退到旧系统）
-        Station s1 = NetworkManager.getStation(fromStation);
-        Station s2 = NetworkManager.getStation(toStation);
-        if (s1 == null || s2 == null) {
-            return 100; // 默认票价
+        // 拼接：起点 -> 相遇边起点（正向前驱），相遇边，相遇边终点 -> 终点（反向树的下一条边）
+        IntList edges = new IntList();
+        int[] head = collectEdges(graph, forward, source, graph.edgeSource(meetingEdge));
+        for (int edge : head) {
+            edges.add(edge);
         }
-
-        // 简单距离估算（简化版）
-        long dx = (long) s1.getX() - s2.getX();
-        long dy = (long) s1.getY() - s2.getY();
-        long dz = (long) s1.getZ() - s2.getZ();
-        double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
-
-        // 简单价格公式：每100格1铜币，最低10铜币
-        return Math.max(10, (int) (distance / 100));
+        edges.add(meetingEdge);
+        for (int current = graph.edgeTarget(meetingEdge); current != target; ) {
+            int edge = backward.previous(current);
+            edges.add(edge);
+            current = graph.edgeTarget(edge);
+        }
+        return edges.toArray();
     }
 
     /**
-     * 构建路径结果
+     * 沿前驱边回溯，得到起点到终点的边序列
      */
-    private static Route buildRoute(String startStation, String endStation,
-                                   Map<String, Integer> distances,
-                                   Map<String, String> previousStations,
-                                   Map<String, String> previousLines) {
-        // 检查是否找到路径
-        if (distances.get(endStation) == Integer.MAX_VALUE) {
-            return null; // 没有路径
+    private static int[] collectEdges(NetworkGraph graph, RouteSearchContext.SearchSpace space, int source, int target) {
+        int length = 0;
+        for (int current = target; current != source; current = graph.edgeSource(space.previous(current))) {
+            length++;
         }
-
-        // 回溯构建车站路径
-        List<String> stationPath = new ArrayList<>();
-        List<String> linePath = new ArrayList<>();
-        String current = endStation;
-
-        while (current != null) {
-            stationPath.add(0, current);
-            String lineId = previousLines.get(current);
-            if (lineId != null) {
-                linePath.add(0, lineId);
-            }
-            current = previousStations.get(current);
-        }
-
-        // 确保起点正确
-        if (!stationPath.get(0).equals(startStation)) {
-            return null; // 路径不完整
+        int[] edges = new int[length];
+        for (int current = target; current != source; current = graph.edgeSource(space.previous(current))) {
+            edges[--length] = space.previous(current);
         }
-
-        // 计算换乘次数
-        int transferCount = calculateTransferCount(linePath);
-
-        // 创建路径对象
-        Route route = new Route(startStation, endStation);
-        route.setStationPath(stationPath);
-        route.setLinePath(linePath);
-        route.setTotalPrice(distances.get(endStation));
-        route.setTransferCount(transferCount);
-
-        return route;
+        return edges;
     }
 
     /**
@@ -288,61 +278,392 @@ public class RouteCalculator {
 
     /**
      * 查找最少换乘路径（备选算法）
+     * 在线路展开图上按（换乘次数, 票价）字典序搜索：状态为“经由某条边到达某站”，
+     * 换乘只在相邻两段属于不同线路时计数（未归属线路的区间视为独立线路）
      */
     public static Route findMinTransferRoute(String startStationCode, String endStationCode) {
-        // 简化实现：先找最低价格路径，然后优化换乘
-        Route cheapest = findCheapestRoute(startStationCode, endStationCode);
-        if (cheapest == null) {
+        if (startStationCode == null || endStationCode == null ||
+                startStationCode.isEmpty() || endStationCode.isEmpty()) {
+            return null;
+        }
+
+        if (startStationCode.equals(endStationCode)) {
+            return createDirectRoute(startStationCode, endStationCode);
+        }
+
+        NetworkGraph graph = NetworkManager.getGraph();
+        int source = graph.indexOf(startStationCode);
+        int target = graph.indexOf(endStationCode);
+        if (source < 0 || target < 0) {
             return null;
         }
 
-        // 这里可以添加换乘优化逻辑
-        return cheapest;
+        // 搜索空间的元素为边（“经由该边到达其终点”）
+        RouteSearchContext.SearchSpace space = RouteSearchContext.get(graph).forward;
+        space.reset(graph.getEdgeCount());
+
+        // 起点的每条出边都是初始状态
+        for (int e = graph.edgeStart(source); e < graph.edgeEnd(source); e++) {
+            long cost = transferCost(0, graph.edgePrice(e));
+            space.set(e, cost, -1);
+            space.heap.offer(e, cost);
+        }
+
+        int arrival = -1;
+        while (!space.heap.isEmpty()) {
+            int state = space.heap.poll();
+            int station = graph.edgeTarget(state);
+            if (station == target) {
+                arrival = state;
+                break;
+            }
+
+            long stateCost = space.distance(state);
+            int line = graph.edgeLine(state);
+            for (int e = graph.edgeStart(station), end = graph.edgeEnd(station); e < end; e++) {
+                if (graph.edgeTarget(e) == graph.edgeSource(state)) {
+                    continue; // 原路折返不可能更优
+                }
+                int nextLine = graph.edgeLine(e);
+                // 未归属线路的区间各自视为独立线路：进出这样的区间都算一次换乘
+                boolean transfer = line == NetworkGraph.NO_LINE || nextLine == NetworkGraph.NO_LINE || nextLine != line;
+                long cost = stateCost + (transfer ? transferCost(1, 0) : 0) + graph.edgePrice(e);
+                if (cost < space.distance(e)) {
+                    space.set(e, cost, state);
+                    space.heap.offer(e, cost);
+                }
+            }
+        }
+
+        if (arrival < 0) {
+            return null;
+        }
+
+        // 回溯边序列
+        int length = 0;
+        for (int state = arrival; state >= 0; state = space.previous(state)) {
+            length++;
+        }
+        int[] edgePath = new int[length];
+        int price = 0;
+        for (int state = arrival; state >= 0; state = space.previous(state)) {
+            edgePath[--length] = state;
+            price += graph.edgePrice(state);
+        }
+        return buildRoute(graph, source, edgePath, price);
+    }
+
+    /**
+     * 字典序代价编码：高位为换乘次数，低32位为票价
+     */
+    private static long transferCost(int transfers, int price) {
+        return ((long) transfers << 32) + price;
     }
 
     /**
      * 查找所有可能路径（限制数量）
+     * 使用Yen的K条最短路径算法，按票价从低到高返回最多maxPaths条不同车站序列的路径：
+     * 1. 先从终点做一次反向Dijkstra，得到各站到终点的精确最低票价，同时直接给出第一条路径
+     * 2. 偏离路径（spur）搜索以该票价作为A*启发值，并共享同一套搜索状态
+     * 3. 候选集合为容量受限的堆，堆满后超过最差候选的搜索会被提前剪枝
      */
     public static List<Route> findAllRoutes(String startStationCode, String endStationCode, int maxPaths) {
-        // 简化实现：返回最优路径
         List<Route> routes = new ArrayList<>();
-        Route route = findCheapestRoute(startStationCode, endStationCode);
-        if (route != null) {
-            routes.add(route);
+        if (maxPaths <= 0 || startStationCode == null || endStationCode == null ||
+                startStationCode.isEmpty() || endStationCode.isEmpty()) {
+            return routes;
+        }
+
+        if (startStationCode.equals(endStationCode)) {
+            routes.add(createDirectRoute(startStationCode, endStationCode));
+            return routes;
+        }
+
+        NetworkGraph graph = NetworkManager.getGraph();
+        int source = graph.indexOf(startStationCode);
+        int target = graph.indexOf(endStationCode);
+        if (source < 0 || target < 0) {
+            return routes;
+        }
+
+        KShortestSearch search = new KShortestSearch(graph, target, RouteSearchContext.get(graph));
+        for (Path path : search.run(source, maxPaths)) {
+            routes.add(buildRoute(graph, source, path.edges, path.cost));
         }
         return routes;
     }
 
-    // ==================== 内部辅助类 ====================
+    /**
+     * 由边序列构建路径结果
+     */
+    private static Route buildRoute(NetworkGraph graph, int source, int[] edgePath, int totalPrice) {
+        List<String> stationPath = new ArrayList<>(edgePath.length + 1);
+        List<String> linePath = new ArrayList<>(edgePath.length);
+        stationPath.add(graph.stationCode(source));
+        for (int edge : edgePath) {
+            stationPath.add(graph.stationCode(graph.edgeTarget(edge)));
+            String lineId = graph.lineId(graph.edgeLine(edge));
+            if (lineId != null) {
+                linePath.add(lineId);
+            }
+        }
+
+        Route route = new Route(stationPath.get(0), stationPath.get(stationPath.size() - 1));
+        route.setStationPath(stationPath);
+        route.setLinePath(linePath);
+        route.setTotalPrice(totalPrice);
+        route.setTransferCount(calculateTransferCount(linePath));
+        return route;
+    }
+
+    // ==================== K条最短路径 ====================
 
     /**
-     * Dijkstra算法节点
+     * 一条候选路径（以车站序列区分，平行边只保留一条）
      */
-    private static class Node {
-        String stationCode;
-        int distance;
-        String lineId;
+    private static final class Path {
+        final int[] nodes;
+        final int[] edges;
+        final int cost;
+        final int deviation; // 从第几个车站偏离上一条路径（Lawler优化：之前的偏离点无需再次尝试）
+
+        Path(int[] nodes, int[] edges, int cost, int deviation) {
+            this.nodes = nodes;
+            this.edges = edges;
+            this.cost = cost;
+            this.deviation = deviation;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Path && Arrays.equals(nodes, ((Path) obj).nodes);
+        }
 
-        Node(String stationCode, int distance, String lineId) {
-            this.stationCode = stationCode;
-            this.distance = distance;
-            this.lineId = lineId;
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(nodes);
         }
     }
 
     /**
-     * 邻居车站信息
+     * Yen算法的共享搜索状态
+     * 反向最短路径树只计算一次（存放在上下文的反向搜索空间中）；
+     * 各次偏离搜索复用正向搜索空间，每次重置为O(1)
      */
-    private static class Neighbor {
-        String stationCode;
-        int farePrice;
-        String lineId;
+    private static final class KShortestSearch {
+        private final NetworkGraph graph;
+        private final int target;
+        private final RouteSearchContext.SearchSpace reverse;
+        private final RouteSearchContext.SearchSpace spurSpace;
+        private final boolean[] bannedNodes;
+        private final boolean[] bannedEdges;
+
+        KShortestSearch(NetworkGraph graph, int target, RouteSearchContext context) {
+            this.graph = graph;
+            this.target = target;
+            this.reverse = context.backward;
+            this.spurSpace = context.forward;
+            this.bannedNodes = context.bannedNodes;
+            this.bannedEdges = context.bannedEdges;
+            computeReverseTree();
+        }
+
+        /**
+         * 从终点出发的反向Dijkstra：distance为到终点的最低票价，previous为最短路径树的下一条边
+         */
+        private void computeReverseTree() {
+            reverse.reset(graph.getStationCount());
+            reverse.set(target, 0, -1);
+            reverse.heap.offer(target, 0);
+            while (!reverse.heap.isEmpty()) {
+                int current = reverse.heap.poll();
+                long distance = reverse.distance(current);
+                for (int r = graph.reverseStart(current), end = graph.reverseEnd(current); r < end; r++) {
+                    int e = graph.reverseEdge(r);
+                    int from = graph.edgeSource(e);
+                    long newDistance = distance + graph.edgePrice(e);
+                    if (newDistance < reverse.distance(from)) {
+                        reverse.set(from, newDistance, e);
+                        reverse.heap.offer(from, newDistance);
+                    }
+                }
+            }
+        }
+
+        List<Path> run(int source, int k) {
+            List<Path> result = new ArrayList<>();
+            if (!reverse.reached(source)) {
+                return result;
+            }
+
+            // 第一条路径直接沿最短路径树得到
+            IntList nodes = new IntList();
+            IntList edges = new IntList();
+            nodes.add(source);
+            for (int current = source; current != target; ) {
+                int e = reverse.previous(current);
+                edges.add(e);
+                current = graph.edgeTarget(e);
+                nodes.add(current);
+            }
+            result.add(new Path(nodes.toArray(), edges.toArray(), (int) reverse.distance(source), 0));
+
+            Set<Path> seen = new HashSet<>(result);
+            // 候选集合：按票价降序的有界堆（堆顶为最差候选）
+            PriorityQueue<Path> candidates = new PriorityQueue<>((a, b) -> Integer.compare(b.cost, a.cost));
+
+            while (result.size() < k) {
+                Path previous = result.get(result.size() - 1);
+                int capacity = k - result.size();
+                int rootCost = 0;
+                for (int i = 0; i < previous.deviation; i++) {
+                    rootCost += graph.edgePrice(previous.edges[i]);
+                }
+
+                for (int i = previous.deviation; i < previous.nodes.length - 1; i++) {
+                    int spur = previous.nodes[i];
+
+                    // 禁用已有路径在同一前缀下使用过的下一段，以及前缀中的车站（保证路径无环）
+                    setBans(result, previous, i, true);
+                    long limit = candidates.size() >= capacity
+                            ? candidates.peek().cost - rootCost
+                            : Long.MAX_VALUE;
+                    Path spurPath = searchSpur(spur, limit);
+                    setBans(result, previous, i, false);
+
+                    if (spurPath != null) {
+                        Path candidate = join(previous, i, rootCost, spurPath);
+                        if (seen.add(candidate)) {
+                            candidates.add(candidate);
+                            if (candidates.size() > capacity) {
+                                seen.remove(candidates.poll());
+                            }
+                        }
+                    }
+
+                    rootCost += graph.edgePrice(previous.edges[i]);
+                }
+
+                if (candidates.isEmpty()) {
+                    break;
+                }
+
+                // 取出最便宜的候选
+                Path best = null;
+                for (Path candidate : candidates) {
+                    if (best == null || candidate.cost < best.cost) {
+                        best = candidate;
+                    }
+                }
+                candidates.remove(best);
+                result.add(best);
+            }
+            return result;
+        }
+
+        private void setBans(List<Path> result, Path previous, int spurIndex, boolean banned) {
+            int spur = previous.nodes[spurIndex];
+            for (Path path : result) {
+                if (path.nodes.length > spurIndex + 1 && samePrefix(path, previous, spurIndex)) {
+                    int next = path.nodes[spurIndex + 1];
+                    for (int e = graph.edgeStart(spur), end = graph.edgeEnd(spur); e < end; e++) {
+                        if (graph.edgeTarget(e) == next) {
+                            bannedEdges[e] = banned;
+                        }
+                    }
+                }
+            }
+            for (int j = 0; j < spurIndex; j++) {
+                bannedNodes[previous.nodes[j]] = banned;
+            }
+        }
+
+        private static boolean samePrefix(Path a, Path b, int length) {
+            for (int j = 0; j <= length; j++) {
+                if (a.nodes[j] != b.nodes[j]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 偏离搜索：A*，启发值为无禁用时到终点的最低票价（一致且可采纳）
+         * @param limit 偏离段票价上限（不含），超过则放弃
+         */
+        private Path searchSpur(int spur, long limit) {
+            if (bannedNodes[spur] || !reverse.reached(spur) || reverse.distance(spur) >= limit) {
+                return null;
+            }
+
+            spurSpace.reset(graph.getStationCount());
+            spurSpace.set(spur, 0, -1);
+            spurSpace.heap.offer(spur, reverse.distance(spur));
+
+            boolean found = false;
+            while (!spurSpace.heap.isEmpty()) {
+                if (spurSpace.heap.peekKey() >= limit) {
+                    break;
+                }
+                int current = spurSpace.heap.poll();
+                if (current == target) {
+                    found = true;
+                    break;
+                }
+                long distance = spurSpace.distance(current);
+                for (int e = graph.edgeStart(current), end = graph.edgeEnd(current); e < end; e++) {
+                    int neighbor = graph.edgeTarget(e);
+                    if (bannedEdges[e] || bannedNodes[neighbor] || !reverse.reached(neighbor)) {
+                        continue;
+                    }
+                    long newDistance = distance + graph.edgePrice(e);
+                    if (newDistance < spurSpace.distance(neighbor)) {
+                        spurSpace.set(neighbor, newDistance, e);
+                        spurSpace.heap.offer(neighbor, newDistance + reverse.distance(neighbor));
+                    }
+                }
+            }
+
+            if (!found) {
+                return null;
+            }
+            int[] edges = collectEdges(graph, spurSpace, spur, target);
+            int[] nodes = new int[edges.length + 1];
+            nodes[0] = spur;
+            for (int i = 0; i < edges.length; i++) {
+                nodes[i + 1] = graph.edgeTarget(edges[i]);
+            }
+            return new Path(nodes, edges, (int) spurSpace.distance(target), 0);
+        }
 
-        Neighbor(String stationCode, int farePrice, String lineId) {
-            this.stationCode = stationCode;
-            this.farePrice = farePrice;
-            this.lineId = lineId;
+        /**
+         * 拼接：上一条路径的前i段 + 偏离段
+         */
+        private Path join(Path previous, int i, int rootCost, Path spurPath) {
+            int[] nodes = new int[i + spurPath.nodes.length];
+            int[] edges = new int[i + spurPath.edges.length];
+            System.arraycopy(previous.nodes, 0, nodes, 0, i);
+            System.arraycopy(spurPath.nodes, 0, nodes, i, spurPath.nodes.length);
+            System.arraycopy(previous.edges, 0, edges, 0, i);
+            System.arraycopy(spurPath.edges, 0, edges, i, spurPath.edges.length);
+            return new Path(nodes, edges, rootCost + spurPath.cost, i);
+        }
+    }
+
+    /**
+     * 各搜索算法的查询次数与平均扩展车站数
+     */
+    public static String getSearchStats() {
+        StringBuilder sb = new StringBuilder();
+        for (SearchMode mode : SearchMode.values()) {
+            long queries = mode.queries.get();
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(String.format("%s: 查询%d次, 平均扩展%.1f个车站", mode.configName, queries,
+                    queries == 0 ? 0.0 : (double) mode.expandedNodes.get() / queries));
         }
+        return sb.toString();
     }
 
     /**
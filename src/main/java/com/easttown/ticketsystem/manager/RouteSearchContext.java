@@ -0,0 +1,88 @@
+package com.easttown.ticketsystem.manager;
+
+import java.util.Arrays;
+
+/**
+ * 路径搜索上下文 - 每个线程一份，跨查询复用
+ * 包含正向/反向两套搜索空间（距离、前驱边、索引堆）以及禁用标记，
+ * 通过代数戳（generation）实现O(1)重置，查询过程中不分配对象
+ */
+final class RouteSearchContext {
+    /** 距离未设置 */
+    static final long INFINITY = Long.MAX_VALUE;
+
+    private static final ThreadLocal<RouteSearchContext> CONTEXT = ThreadLocal.withInitial(RouteSearchContext::new);
+
+    final SearchSpace forward = new SearchSpace();
+    final SearchSpace backward = new SearchSpace();
+
+    // Yen算法使用的禁用标记（使用后由调用方还原）
+    boolean[] bannedNodes = new boolean[0];
+    boolean[] bannedEdges = new boolean[0];
+
+    // 最近一次最低票价搜索扩展（出队）的车站数
+    int expandedNodes;
+
+    /**
+     * 获取当前线程的搜索上下文，并确保容量满足图的规模
+     */
+    static RouteSearchContext get(NetworkGraph graph) {
+        RouteSearchContext context = CONTEXT.get();
+        int n = graph.getStationCount();
+        int m = graph.getEdgeCount();
+        if (context.bannedNodes.length < n) {
+            context.bannedNodes = new boolean[n];
+        }
+        if (context.bannedEdges.length < m) {
+            context.bannedEdges = new boolean[m];
+        }
+        return context;
+    }
+
+    /**
+     * 一套搜索空间：元素可以是车站（普通搜索）或边（线路展开搜索）
+     */
+    static final class SearchSpace {
+        private long[] distances = new long[0];
+        private int[] previous = new int[0];
+        private int[] stamps = new int[0];
+        private int generation;
+        final IndexedMinHeap heap = new IndexedMinHeap();
+
+        /**
+         * 开始新的搜索：容量不足时扩容，否则只递增代数戳
+         */
+        void reset(int capacity) {
+            if (stamps.length < capacity) {
+                int newCapacity = Math.max(capacity, stamps.length * 2);
+                distances = Arrays.copyOf(distances, newCapacity);
+                previous = Arrays.copyOf(previous, newCapacity);
+                stamps = Arrays.copyOf(stamps, newCapacity);
+            }
+            heap.ensureCapacity(capacity);
+            heap.clear();
+            if (++generation == 0) {
+                Arrays.fill(stamps, 0);
+                generation = 1;
+            }
+        }
+
+        boolean reached(int element) {
+            return stamps[element] == generation;
+        }
+
+        long distance(int element) {
+            return stamps[element] == generation ? distances[element] : INFINITY;
+        }
+
+        int previous(int element) {
+            return previous[element];
+        }
+
+        void set(int element, long distance, int previousElement) {
+            stamps[element] = generation;
+            distances[element] = distance;
+            previous[element] = previousElement;
+        }
+    }
+}
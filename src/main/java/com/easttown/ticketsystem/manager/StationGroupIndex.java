@@ -0,0 +1,203 @@
+package com.easttown.ticketsystem.manager;
+
+import com.easttown.ticketsystem.data.Station;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 同名车站组索引 - 中文名或英文名相同的车站视为同一物理车站（零成本换乘）
+ * 常驻维护 车站编码 -> 组ID 与 组ID -> 成员数组，车站增删改时只更新该车站所在的组；
+ * 查询不分配对象，只有成员数大于1的组才视为换乘组
+ */
+final class StationGroupIndex {
+    /** 不属于任何换乘组 */
+    static final int NO_GROUP = -1;
+
+    private static final String[] EMPTY = new String[0];
+    private static final Object LOCK = new Object();
+
+    // 车站编码 -> 所在组ID（中文名组在前，英文名组在后）
+    private static final Map<String, int[]> groupsByCode = new ConcurrentHashMap<>();
+    // 以下结构只在LOCK内修改；members/groupKeys通过volatile写发布
+    private static final Map<String, Integer> groupByKey = new HashMap<>();
+    private static volatile String[][] members = new String[0][];
+    private static volatile String[] groupKeys = new String[0];
+    private static int groupCount;
+    private static volatile boolean loaded;
+
+    static {
+        NetworkManager.addChangeListener(StationGroupIndex::onNetworkChanged);
+    }
+
+    private StationGroupIndex() {
+    }
+
+    private static void onNetworkChanged(NetworkChangeEvent event) {
+        if (event.isFullReload()) {
+            loaded = false;
+            return;
+        }
+        if (event.getType() != NetworkChangeEvent.Type.STATION || !loaded) {
+            return;
+        }
+        synchronized (LOCK) {
+            for (String code : event.getStationCodes()) {
+                removeStation(code);
+                Station station = NetworkManager.getStation(code);
+                if (station != null) {
+                    addStation(station);
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取车站所属的换乘组，不在任何换乘组中返回NO_GROUP
+     */
+    static int groupOf(String stationCode) {
+        ensureLoaded();
+        int[] ids = groupsByCode.get(stationCode);
+        if (ids == null) {
+            return NO_GROUP;
+        }
+        String[][] current = members;
+        for (int id : ids) {
+            if (current[id].length > 1) {
+                return id;
+            }
+        }
+        return NO_GROUP;
+    }
+
+    /**
+     * 获取组成员（返回内部数组，调用方不得修改）
+     */
+    static String[] membersOf(int groupId) {
+        ensureLoaded();
+        return groupId >= 0 ? members[groupId] : EMPTY;
+    }
+
+    /**
+     * 是否存在至少一个换乘组
+     */
+    static boolean hasGroups() {
+        ensureLoaded();
+        for (String[] group : members) {
+            if (group.length > 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 导出为 分组键 -> 成员列表（只包含换乘组）
+     */
+    static Map<String, List<String>> toMap() {
+        ensureLoaded();
+        Map<String, List<String>> result = new HashMap<>();
+        String[][] currentMembers = members;
+        String[] currentKeys = groupKeys;
+        for (int id = 0; id < currentMembers.length; id++) {
+            if (currentMembers[id].length > 1) {
+                result.put(currentKeys[id], new ArrayList<>(Arrays.asList(currentMembers[id])));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 车站的分组键：中文名，以及与之不同的英文名；没有中文名的车站不参与分组
+     * NetworkGraph构建换乘边时使用同一规则
+     */
+    static String[] groupKeys(Station station) {
+        String nameKey = station.getName() != null ? station.getName().trim() : "";
+        String enKey = station.getEnName() != null ? station.getEnName().trim() : "";
+        if (nameKey.isEmpty()) {
+            return EMPTY;
+        }
+        if (enKey.isEmpty() || enKey.equals(nameKey)) {
+            return new String[]{nameKey};
+        }
+        return new String[]{nameKey, enKey};
+    }
+
+    private static void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (LOCK) {
+            if (loaded) {
+                return;
+            }
+            NetworkManager.initialize();
+            groupsByCode.clear();
+            groupByKey.clear();
+            members = new String[0][];
+            groupKeys = new String[0];
+            groupCount = 0;
+            for (Station station : NetworkManager.getAllStations()) {
+                addStation(station);
+            }
+            loaded = true;
+        }
+    }
+
+    // ==================== 增量维护（调用方持有LOCK） ====================
+
+    private static void addStation(Station station) {
+        String[] keys = groupKeys(station);
+        if (keys.length == 0) {
+            return;
+        }
+        int[] ids = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            ids[i] = join(keys[i], station.getCode());
+        }
+        groupsByCode.put(station.getCode(), ids);
+    }
+
+    private static void removeStation(String code) {
+        int[] ids = groupsByCode.remove(code);
+        if (ids == null) {
+            return;
+        }
+        String[][] current = members;
+        for (int id : ids) {
+            String[] group = current[id];
+            int index = Arrays.asList(group).indexOf(code);
+            if (index < 0) {
+                continue;
+            }
+            String[] updated = new String[group.length - 1];
+            System.arraycopy(group, 0, updated, 0, index);
+            System.arraycopy(group, index + 1, updated, index, group.length - index - 1);
+            current[id] = updated;
+        }
+        members = current;
+    }
+
+    private static int join(String key, String code) {
+        Integer existing = groupByKey.get(key);
+        int id;
+        String[][] current = members;
+        if (existing != null) {
+            id = existing;
+        } else {
+            id = groupCount++;
+            if (id >= current.length) {
+                current = Arrays.copyOf(current, Math.max(16, current.length * 2));
+                Arrays.fill(current, id, current.length, EMPTY);
+                groupKeys = Arrays.copyOf(groupKeys, current.length);
+            }
+            groupKeys[id] = key;
+            groupByKey.put(key, id);
+        }
+        String[] group = Arrays.copyOf(current[id], current[id].length + 1);
+        group[group.length - 1] = code;
+        current[id] = group;
+        members = current;
+        return id;
+    }
+}
@@ -265,11 +265,12 @@ public class StationManager {
             return false;
         }
 
-        // 将车站编码添加到线路末尾
-        line.getStationCodes().add(stationCode);
+        // 将车站编码添加到线路末尾（修改副本，已发布的线路对象只读）
+        Line updated = line.copy();
+        updated.getStationCodes().add(stationCode);
         // 更新线路
         NetworkManager.removeLine(lineId);
-        NetworkManager.addLine(line);
+        NetworkManager.addLine(updated);
 
         TicketSystemMod.LOGGER.info("已添加车站: {} (编码: {}) 到线路: {}",
                                    chineseName, stationCode, lineId);
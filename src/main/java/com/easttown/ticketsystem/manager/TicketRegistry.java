@@ -0,0 +1,230 @@
+package com.easttown.ticketsystem.manager;
+
+import com.easttown.ticketsystem.TicketSystemMod;
+import com.easttown.ticketsystem.item.TicketItem;
+import com.easttown.ticketsystem.util.GateUtil;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.saveddata.SavedData;
+
+/**
+ * 服务器端车票登记 - 记录每张售出车票的状态、发售时间与起终点，随主世界存档保存
+ * 闸机以登记为准检票（物品NBT可以被复制或修改），按128位车票ID常数时间查找与更新：
+ * 物品上的状态与登记不一致的车票（复制出的副本、已退票的车票）一律拒绝
+ * 登记创建之前发售的旧车票在第一次检票时按物品NBT补登记
+ */
+public class TicketRegistry extends SavedData {
+    private static final String DATA_NAME = TicketSystemMod.MODID + "_tickets";
+
+    // 车票状态
+    public static final byte UNUSED = 0;
+    public static final byte IN_USE = 1;
+    public static final byte COMPLETED = 2;
+    public static final byte REFUNDED = 3;
+
+    // 已出站/退票的车票保留天数；删除后的副本发售时间晚于登记创建时间，不会被当作旧车票补登记
+    // 未使用/使用中的车票一直保留：删除后无法再补登记，合法购买的车票会被当作无效车票拒绝
+    private static final long FINISHED_RETENTION_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+    private final TicketTable table;
+    // 登记创建时间，早于此时发售的车票视为旧车票
+    private final long createdAt;
+
+    private TicketRegistry(long createdAt, int expectedSize) {
+        this.createdAt = createdAt;
+        this.table = new TicketTable(expectedSize);
+    }
+
+    private TicketRegistry() {
+        this(System.currentTimeMillis(), 0);
+    }
+
+    /**
+     * 获取服务器的车票登记（保存在主世界存档中，各维度共用）
+     */
+    public static TicketRegistry get(ServerLevel level) {
+        return level.getServer().overworld().getDataStorage()
+                .computeIfAbsent(TicketRegistry::load, TicketRegistry::new, DATA_NAME);
+    }
+
+    // ==================== 登记与查询 ====================
+
+    /**
+     * 登记新售出的车票（车票NBT需已写入ID、起终点与发售时间）
+     * @return ID无效或已登记时返回false
+     */
+    public boolean issue(CompoundTag ticketTag) {
+        int slot = table.insert(GateUtil.getTicketIdMost(ticketTag), GateUtil.getTicketIdLeast(ticketTag), UNUSED,
+                ticketTag.getLong("IssueTime"), ticketTag.getString("StartStation"), ticketTag.getString("Destination"));
+        if (slot == TicketTable.NOT_FOUND) {
+            return false;
+        }
+        setDirty();
+        return true;
+    }
+
+    /**
+     * 查找车票，返回槽位（只在下一次登记或删除之前有效），未登记返回-1
+     */
+    public int find(long idMost, long idLeast) {
+        return table.find(idMost, idLeast);
+    }
+
+    /**
+     * 查找车票；未登记但发售时间早于登记创建时间的旧车票按物品NBT补登记
+     * @return 槽位，未登记且不是旧车票时返回-1
+     */
+    public int findOrAdopt(long idMost, long idLeast, CompoundTag ticketTag) {
+        int slot = table.find(idMost, idLeast);
+        if (slot != TicketTable.NOT_FOUND) {
+            return slot;
+        }
+        long issueTime = ticketTag.getLong("IssueTime");
+        if (issueTime <= 0 || issueTime >= createdAt) {
+            return TicketTable.NOT_FOUND;
+        }
+        slot = table.insert(idMost, idLeast, stateOf(ticketTag.getString("Status")), issueTime,
+                ticketTag.getString("StartStation"), ticketTag.getString("Destination"));
+        if (slot != TicketTable.NOT_FOUND) {
+            setDirty();
+        }
+        return slot;
+    }
+
+    public byte getState(int slot) {
+        return table.getState(slot);
+    }
+
+    public long getIssueTime(int slot) {
+        return table.getIssueTime(slot);
+    }
+
+    public String getStartStation(int slot) {
+        return table.getStartStation(slot);
+    }
+
+    public String getDestination(int slot) {
+        return table.getDestination(slot);
+    }
+
+    /**
+     * 更新车票状态
+     * @return 车票未登记时返回false
+     */
+    public boolean setState(long idMost, long idLeast, byte state) {
+        int slot = table.find(idMost, idLeast);
+        if (slot == TicketTable.NOT_FOUND) {
+            return false;
+        }
+        table.setState(slot, state);
+        setDirty();
+        return true;
+    }
+
+    /**
+     * 已登记的车票数
+     */
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * 车票状态对应的物品NBT状态字符串
+     */
+    public static String statusName(byte state) {
+        switch (state) {
+            case UNUSED:
+                return TicketItem.UNUSED;
+            case IN_USE:
+                return TicketItem.IN_USE;
+            case COMPLETED:
+                return TicketItem.COMPLETED;
+            default:
+                return "REFUNDED";
+        }
+    }
+
+    /**
+     * 物品NBT状态字符串对应的车票状态
+     */
+    public static byte stateOf(String status) {
+        if (TicketItem.IN_USE.equals(status)) {
+            return IN_USE;
+        }
+        if (TicketItem.COMPLETED.equals(status)) {
+            return COMPLETED;
+        }
+        return UNUSED;
+    }
+
+    // ==================== 保存与加载 ====================
+
+    /**
+     * 删除超过保留期限的已出站/退票车票
+     */
+    private void prune(long now) {
+        int removed = 0;
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            // 删除会把后面的条目回移到当前槽位，因此删除后重新检查同一槽位
+            while (table.isOccupied(slot) && isExpired(slot, now)) {
+                table.remove(slot);
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            TicketSystemMod.LOGGER.debug("Pruned {} expired tickets from registry", removed);
+        }
+    }
+
+    private boolean isExpired(int slot, long now) {
+        byte state = table.getState(slot);
+        return (state == COMPLETED || state == REFUNDED) && now - table.getIssueTime(slot) > FINISHED_RETENTION_MILLIS;
+    }
+
+    @Override
+    public CompoundTag save(CompoundTag tag) {
+        prune(System.currentTimeMillis());
+        int size = table.size();
+        long[] ids = new long[size * 2];
+        long[] issueTimes = new long[size];
+        byte[] states = new byte[size];
+        ListTag stations = new ListTag();
+        int index = 0;
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            if (table.isOccupied(slot)) {
+                ids[index * 2] = table.getIdMost(slot);
+                ids[index * 2 + 1] = table.getIdLeast(slot);
+                issueTimes[index] = table.getIssueTime(slot);
+                states[index] = table.getState(slot);
+                stations.add(StringTag.valueOf(table.getStartStation(slot)));
+                stations.add(StringTag.valueOf(table.getDestination(slot)));
+                index++;
+            }
+        }
+        tag.putLong("CreatedAt", createdAt);
+        tag.putLongArray("Ids", ids);
+        tag.putLongArray("IssueTimes", issueTimes);
+        tag.putByteArray("States", states);
+        tag.put("Stations", stations);
+        return tag;
+    }
+
+    private static TicketRegistry load(CompoundTag tag) {
+        long[] ids = tag.getLongArray("Ids");
+        long[] issueTimes = tag.getLongArray("IssueTimes");
+        byte[] states = tag.getByteArray("States");
+        ListTag stations = tag.getList("Stations", Tag.TAG_STRING);
+        int size = Math.min(Math.min(ids.length / 2, issueTimes.length), Math.min(states.length, stations.size() / 2));
+
+        TicketRegistry registry = new TicketRegistry(tag.getLong("CreatedAt"), size);
+        for (int i = 0; i < size; i++) {
+            registry.table.insert(ids[i * 2], ids[i * 2 + 1], states[i], issueTimes[i],
+                    stations.getString(i * 2), stations.getString(i * 2 + 1));
+        }
+        TicketSystemMod.LOGGER.info("Loaded {} registered tickets", registry.table.size());
+        return registry;
+    }
+}
@@ -0,0 +1,191 @@
+package com.easttown.ticketsystem.manager;
+
+/**
+ * 车票登记表 - 以128位车票ID（两个long）为键的开放寻址哈希表
+ * 键与各字段分别存放在并行的基本类型数组中，线性探测，删除时回移后续条目（不留墓碑）；
+ * (0, 0)表示空槽，不能作为车票ID。槽位号只在下一次插入或删除之前有效
+ */
+final class TicketTable {
+    static final int NOT_FOUND = -1;
+    private static final int MIN_CAPACITY = 64;
+
+    private long[] idMost;
+    private long[] idLeast;
+    private long[] issueTimes;
+    private byte[] states;
+    private String[] startStations;
+    private String[] destinations;
+    private int mask;
+    private int size;
+
+    TicketTable(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        // 负载因子不超过0.5，探测链保持很短
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        idMost = new long[capacity];
+        idLeast = new long[capacity];
+        issueTimes = new long[capacity];
+        states = new byte[capacity];
+        startStations = new String[capacity];
+        destinations = new String[capacity];
+        mask = capacity - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 槽位总数，配合isOccupied遍历全部条目
+     */
+    int capacity() {
+        return mask + 1;
+    }
+
+    boolean isOccupied(int slot) {
+        return idMost[slot] != 0 || idLeast[slot] != 0;
+    }
+
+    /**
+     * 查找车票所在槽位，不存在返回NOT_FOUND
+     */
+    int find(long most, long least) {
+        int slot = home(most, least);
+        while (true) {
+            long m = idMost[slot];
+            long l = idLeast[slot];
+            if (m == most && l == least) {
+                return (m | l) == 0 ? NOT_FOUND : slot;
+            }
+            if ((m | l) == 0) {
+                return NOT_FOUND;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * 插入车票
+     * @return 新条目的槽位；ID为(0, 0)或已存在时返回NOT_FOUND
+     */
+    int insert(long most, long least, byte state, long issueTime, String startStation, String destination) {
+        if ((most | least) == 0 || find(most, least) != NOT_FOUND) {
+            return NOT_FOUND;
+        }
+        if ((size + 1) * 2 > capacity()) {
+            resize(capacity() << 1);
+        }
+        int slot = home(most, least);
+        while (isOccupied(slot)) {
+            slot = (slot + 1) & mask;
+        }
+        idMost[slot] = most;
+        idLeast[slot] = least;
+        states[slot] = state;
+        issueTimes[slot] = issueTime;
+        startStations[slot] = startStation;
+        destinations[slot] = destination;
+        size++;
+        return slot;
+    }
+
+    /**
+     * 删除槽位上的条目，并把探测链上后续的条目回移填补空位
+     */
+    void remove(int slot) {
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (!isOccupied(next)) {
+                break;
+            }
+            int home = home(idMost[next], idLeast[next]);
+            // 空位处在该条目的起始位置与当前位置之间时，条目可以移入空位
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                move(next, hole);
+                hole = next;
+            }
+        }
+        idMost[hole] = 0;
+        idLeast[hole] = 0;
+        startStations[hole] = null;
+        destinations[hole] = null;
+        size--;
+    }
+
+    byte getState(int slot) {
+        return states[slot];
+    }
+
+    void setState(int slot, byte state) {
+        states[slot] = state;
+    }
+
+    long getIssueTime(int slot) {
+        return issueTimes[slot];
+    }
+
+    String getStartStation(int slot) {
+        return startStations[slot];
+    }
+
+    String getDestination(int slot) {
+        return destinations[slot];
+    }
+
+    long getIdMost(int slot) {
+        return idMost[slot];
+    }
+
+    long getIdLeast(int slot) {
+        return idLeast[slot];
+    }
+
+    private void move(int from, int to) {
+        idMost[to] = idMost[from];
+        idLeast[to] = idLeast[from];
+        states[to] = states[from];
+        issueTimes[to] = issueTimes[from];
+        startStations[to] = startStations[from];
+        destinations[to] = destinations[from];
+    }
+
+    private void resize(int capacity) {
+        long[] oldMost = idMost;
+        long[] oldLeast = idLeast;
+        long[] oldIssueTimes = issueTimes;
+        byte[] oldStates = states;
+        String[] oldStarts = startStations;
+        String[] oldDestinations = destinations;
+        allocate(capacity);
+        for (int i = 0; i < oldMost.length; i++) {
+            if ((oldMost[i] | oldLeast[i]) != 0) {
+                int slot = home(oldMost[i], oldLeast[i]);
+                while (isOccupied(slot)) {
+                    slot = (slot + 1) & mask;
+                }
+                idMost[slot] = oldMost[i];
+                idLeast[slot] = oldLeast[i];
+                states[slot] = oldStates[i];
+                issueTimes[slot] = oldIssueTimes[i];
+                startStations[slot] = oldStarts[i];
+                destinations[slot] = oldDestinations[i];
+            }
+        }
+    }
+
+    /**
+     * 起始槽位：随机UUID本身分布均匀，再混合一次防止手工构造的ID聚集
+     */
+    private int home(long most, long least) {
+        long hash = (most ^ Long.rotateLeft(least, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,363 @@
+package com.easttown.ticketsystem.util;
+
+import com.easttown.ticketsystem.TicketSystemMod;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 异步日志文件 - 调用线程只把记录放进无锁环形缓冲区，由专门的写出线程批量写入文件
+ * 缓冲区满时丢弃新记录（不阻塞服务器主线程），丢弃数在下一次写出时补记一行；
+ * 文件超过大小上限或跨天时归档为 名称-日期-序号.log（可gzip压缩），并只保留最近若干个归档
+ */
+final class AsyncLogFile {
+    // 环形缓冲区容量（2的幂）
+    private static final int CAPACITY = 1 << 13;
+    private static final int MASK = CAPACITY - 1;
+    // 每批最多写出的记录数，批之间检查是否需要归档
+    private static final int BATCH_SIZE = 512;
+    // 没有记录时写出线程的休眠时间，也是记录落盘的最长延迟
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter ARCHIVE_DATE_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE;
+
+    /**
+     * 一条待写出的记录，type为null时message原样写出
+     */
+    static final class Entry {
+        final long time;
+        final String level;
+        final String type;
+        final String message;
+
+        Entry(long time, String level, String type, String message) {
+            this.time = time;
+            this.level = level;
+            this.type = type;
+            this.message = message;
+        }
+    }
+
+    private final File file;
+    private final String baseName;
+
+    // 槽位为null表示空闲或已占用但尚未写入记录
+    private final AtomicReferenceArray<Entry> slots = new AtomicReferenceArray<>(CAPACITY);
+    // 下一个占用的位置（调用线程之间CAS竞争）
+    private final AtomicLong tail = new AtomicLong();
+    // 下一个读取的位置，只由写出线程修改
+    private volatile long head;
+    // 已刷新到文件的位置，供flush()等待
+    private volatile long flushed;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writerThread;
+    private volatile boolean closed;
+
+    // 归档参数，配置载入后由TicketSystemLogger刷新
+    private volatile long maxFileBytes = 10 << 20;
+    private volatile int maxArchives = 30;
+    private volatile boolean compressArchives = true;
+
+    // 以下字段只由写出线程访问
+    private Writer output;
+    private CountingOutputStream counter;
+    private long nextDayStart;
+    private LocalDate currentDay;
+    private long cachedSecond = -1;
+    private String cachedTimestamp;
+
+    AsyncLogFile(File file) {
+        this.file = file;
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        this.baseName = dot > 0 ? name.substring(0, dot) : name;
+        this.writerThread = new Thread(this::run, "TicketSystem-LogWriter");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    void configure(long maxFileBytes, int maxArchives, boolean compressArchives) {
+        this.maxFileBytes = maxFileBytes;
+        this.maxArchives = maxArchives;
+        this.compressArchives = compressArchives;
+    }
+
+    /**
+     * 放入一条记录，不做任何IO
+     * @return 缓冲区已满、记录被丢弃时返回false
+     */
+    boolean offer(Entry entry) {
+        long position;
+        do {
+            position = tail.get();
+            if (closed || position - head >= CAPACITY) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!tail.compareAndSet(position, position + 1));
+        slots.set((int) (position & MASK), entry);
+        // 缓冲区过半时提前唤醒写出线程，平时等它定时醒来批量写出
+        if (position - head >= CAPACITY / 2) {
+            LockSupport.unpark(writerThread);
+        }
+        return true;
+    }
+
+    /**
+     * 等待此前放入的记录写入文件（最多等待timeoutMillis）
+     */
+    boolean flush(long timeoutMillis) {
+        long target = tail.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (flushed < target) {
+            if (!writerThread.isAlive() || System.nanoTime() > deadline) {
+                return false;
+            }
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return true;
+    }
+
+    /**
+     * 停止接收记录，写出剩余记录后关闭文件
+     */
+    void close(long timeoutMillis) {
+        closed = true;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ==================== 写出线程 ====================
+
+    private void run() {
+        while (true) {
+            int written = drain();
+            if (written == 0) {
+                flushOutput();
+                if (closed && head == tail.get()) {
+                    break;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        closeOutput();
+    }
+
+    /**
+     * 写出一批记录，返回写出的记录数
+     */
+    private int drain() {
+        long position = head;
+        int count = 0;
+        while (count < BATCH_SIZE) {
+            int index = (int) (position & MASK);
+            Entry entry = slots.get(index);
+            if (entry == null) {
+                // 没有记录，或者调用线程已占用槽位但还没写入
+                break;
+            }
+            slots.lazySet(index, null);
+            position++;
+            head = position;
+            write(entry);
+            count++;
+        }
+        long lost = count > 0 ? dropped.getAndSet(0) : 0;
+        if (lost > 0) {
+            write(new Entry(System.currentTimeMillis(), "WARN", "System",
+                    lost + " log records dropped because the log buffer was full"));
+        }
+        return count;
+    }
+
+    private void write(Entry entry) {
+        try {
+            if (output == null) {
+                openOutput(entry.time);
+            } else if (entry.time >= nextDayStart || counter.count >= maxFileBytes) {
+                roll();
+                openOutput(entry.time);
+            }
+            if (entry.type == null) {
+                output.write(entry.message);
+            } else {
+                output.write('[');
+                output.write(timestamp(entry.time));
+                output.write("] [");
+                output.write(entry.level);
+                output.write("] [");
+                output.write(entry.type);
+                output.write("] ");
+                output.write(entry.message);
+            }
+            output.write(System.lineSeparator());
+        } catch (IOException e) {
+            TicketSystemMod.LOGGER.error("Failed to write to ticket system log file: {}", e.getMessage());
+            closeOutput();
+        }
+    }
+
+    private void flushOutput() {
+        if (output != null) {
+            try {
+                output.flush();
+            } catch (IOException e) {
+                TicketSystemMod.LOGGER.error("Failed to write to ticket system log file: {}", e.getMessage());
+                closeOutput();
+            }
+        }
+        flushed = head;
+    }
+
+    private void closeOutput() {
+        if (output != null) {
+            try {
+                output.close();
+            } catch (IOException e) {
+                TicketSystemMod.LOGGER.warn("Failed to close ticket system log file: {}", e.getMessage());
+            }
+            output = null;
+            counter = null;
+        }
+        flushed = head;
+    }
+
+    /**
+     * 打开日志文件用于追加；已有文件的最后修改日期早于记录日期时先归档
+     */
+    private void openOutput(long time) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        LocalDate day = toDate(time);
+        if (file.exists() && file.length() > 0) {
+            LocalDate fileDay = toDate(file.lastModified());
+            if (fileDay.isBefore(day) || file.length() >= maxFileBytes) {
+                currentDay = fileDay;
+                roll();
+            }
+        }
+        counter = new CountingOutputStream(new FileOutputStream(file, true), file.length());
+        output = new BufferedWriter(new OutputStreamWriter(counter, StandardCharsets.UTF_8), 1 << 16);
+        currentDay = day;
+        nextDayStart = day.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 归档当前文件：改名为 名称-日期-序号.log，按配置压缩，并删除超出数量的旧归档
+     */
+    private void roll() throws IOException {
+        closeOutput();
+        if (!file.exists() || file.length() == 0) {
+            return;
+        }
+        LocalDate day = currentDay != null ? currentDay : toDate(file.lastModified());
+        String prefix = baseName + "-" + ARCHIVE_DATE_FORMAT.format(day) + "-";
+        // 序号接在当天已有归档之后（旧归档被删除后也不复用序号）
+        int sequence = 0;
+        String[] names = file.getAbsoluteFile().getParentFile().list();
+        for (String name : names != null ? names : new String[0]) {
+            if (name.startsWith(prefix)) {
+                String rest = name.substring(prefix.length());
+                int end = rest.indexOf('.');
+                try {
+                    sequence = Math.max(sequence, Integer.parseInt(end > 0 ? rest.substring(0, end) : rest));
+                } catch (NumberFormatException ignored) {
+                    // 不是本类生成的归档
+                }
+            }
+        }
+        File archive = new File(file.getParentFile(), prefix + (sequence + 1) + ".log");
+        Files.move(file.toPath(), archive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        if (compressArchives) {
+            File compressed = new File(archive.getPath() + ".gz");
+            try (InputStream input = new BufferedInputStream(new FileInputStream(archive));
+                 OutputStream gzip = new GZIPOutputStream(new FileOutputStream(compressed), 1 << 16)) {
+                input.transferTo(gzip);
+            }
+            Files.delete(archive.toPath());
+        }
+        pruneArchives();
+    }
+
+    private void pruneArchives() {
+        int keep = maxArchives;
+        File[] archives = file.getAbsoluteFile().getParentFile().listFiles((dir, name) ->
+                name.startsWith(baseName + "-") && (name.endsWith(".log") || name.endsWith(".log.gz")));
+        if (keep <= 0 || archives == null || archives.length <= keep) {
+            return;
+        }
+        List<File> sorted = new ArrayList<>(List.of(archives));
+        // 同一秒内归档的文件按序号先后（名称更短的序号更小）
+        sorted.sort(Comparator.comparingLong(File::lastModified)
+                .thenComparingInt(archive -> archive.getName().length())
+                .thenComparing(File::getName));
+        for (int i = 0; i < sorted.size() - keep; i++) {
+            if (!sorted.get(i).delete()) {
+                TicketSystemMod.LOGGER.warn("Failed to delete old log archive {}", sorted.get(i));
+            }
+        }
+    }
+
+    /**
+     * 格式化时间戳，同一秒内的记录复用上一次的结果
+     */
+    private String timestamp(long time) {
+        long second = time / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedTimestamp = TIMESTAMP_FORMAT.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault()));
+        }
+        return cachedTimestamp;
+    }
+
+    private static LocalDate toDate(long time) {
+        return LocalDate.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+    }
+
+    /**
+     * 统计写入的字节数，用于判断是否超过大小上限
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream output, long initial) {
+            super(output);
+            this.count = initial;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.easttown.ticketsystem.util;
+
+import com.easttown.ticketsystem.TicketSystemMod;
+import com.easttown.ticketsystem.config.TicketSystemConfig;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 票价查询跟踪日志 - 按采样间隔以DEBUG级别输出票价查询/添加的过程
+ * 票价查询处在报价计算的内层循环中，调用方先用sample()判断再调用trace()：
+ * 关闭时只读取一个静态字段，不拼接参数、不进入日志框架
+ * <pre>
+ * if (FareTrace.sample()) {
+ *     FareTrace.trace("getFare {} -> {}: {}", from, to, fare);
+ * }
+ * </pre>
+ */
+public final class FareTrace {
+    // 每多少次调用输出一次，0为关闭；配置载入或修改时刷新
+    private static volatile int sampleRate;
+    private static final AtomicLong calls = new AtomicLong();
+
+    private FareTrace() {
+    }
+
+    /**
+     * 从配置刷新采样间隔（配置载入或重新载入时调用）
+     */
+    public static void refresh() {
+        int rate = TicketSystemConfig.getFareTraceSampleRate();
+        sampleRate = rate > 0 && TicketSystemMod.LOGGER.isDebugEnabled() ? rate : 0;
+    }
+
+    /**
+     * 本次调用是否需要输出跟踪日志
+     */
+    public static boolean sample() {
+        int rate = sampleRate;
+        return rate > 0 && (rate == 1 || calls.getAndIncrement() % rate == 0);
+    }
+
+    /**
+     * 输出一条跟踪日志（在sample()返回true时调用）
+     */
+    public static void trace(String message, Object... params) {
+        TicketSystemMod.LOGGER.debug("[FareTrace] " + message, params);
+    }
+}
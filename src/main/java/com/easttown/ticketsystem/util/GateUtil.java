@@ -1,14 +1,64 @@
 package com.easttown.ticketsystem.util;
 
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
 
 import java.util.UUID;
 
 public class GateUtil {
+    // 车票ID的高/低64位（与TicketId字符串是同一个UUID），检票时直接读取，不解析字符串
+    public static final String TICKET_ID_MOST = "TicketIdMost";
+    public static final String TICKET_ID_LEAST = "TicketIdLeast";
+
     public static UUID getTicketId(CompoundTag ticketTag) {
+        if (hasTicketKey(ticketTag)) {
+            return new UUID(getTicketIdMost(ticketTag), getTicketIdLeast(ticketTag));
+        }
         if (ticketTag.contains("TicketId")) {
-            return UUID.fromString(ticketTag.getString("TicketId"));
+            try {
+                return UUID.fromString(ticketTag.getString("TicketId"));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
         }
         return null;
     }
+
+    /**
+     * 写入车票ID（字符串用于显示和日志，两个long用于检票）
+     */
+    public static void putTicketId(CompoundTag ticketTag, UUID ticketId) {
+        ticketTag.putString("TicketId", ticketId.toString());
+        ticketTag.putLong(TICKET_ID_MOST, ticketId.getMostSignificantBits());
+        ticketTag.putLong(TICKET_ID_LEAST, ticketId.getLeastSignificantBits());
+    }
+
+    public static boolean hasTicketKey(CompoundTag ticketTag) {
+        return ticketTag.contains(TICKET_ID_MOST, Tag.TAG_LONG) && ticketTag.contains(TICKET_ID_LEAST, Tag.TAG_LONG);
+    }
+
+    /**
+     * 确保车票带有两个long形式的ID：旧车票只有字符串ID，解析一次后写回
+     * @return 车票没有有效ID时返回false
+     */
+    public static boolean ensureTicketKey(CompoundTag ticketTag) {
+        if (hasTicketKey(ticketTag)) {
+            return true;
+        }
+        UUID ticketId = getTicketId(ticketTag);
+        if (ticketId == null) {
+            return false;
+        }
+        ticketTag.putLong(TICKET_ID_MOST, ticketId.getMostSignificantBits());
+        ticketTag.putLong(TICKET_ID_LEAST, ticketId.getLeastSignificantBits());
+        return true;
+    }
+
+    public static long getTicketIdMost(CompoundTag ticketTag) {
+        return ticketTag.getLong(TICKET_ID_MOST);
+    }
+
+    public static long getTicketIdLeast(CompoundTag ticketTag) {
+        return ticketTag.getLong(TICKET_ID_LEAST);
+    }
 }
@@ -4,17 +4,17 @@ import com.easttown.ticketsystem.TicketSystemMod;
 import com.easttown.ticketsystem.config.TicketSystemConfig;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.item.ItemStack;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 
 public class TicketSystemLogger {
 
     private static final String LOG_FILE_PATH = "logs/ticketsystem.log";
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    // 停服时等待日志写出的最长时间
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+    private static final AsyncLogFile LOG_FILE = new AsyncLogFile(new File(LOG_FILE_PATH));
 
     // 日志级别
     public enum LogLevel {
@@ -212,56 +212,47 @@ public class TicketSystemLogger {
     }
 
     /**
-     * 将日志写入文件
+     * 将日志放入写出队列，由后台线程批量写入文件（调用线程不做IO）
      */
-    private static synchronized void logToFile(LogType type, LogLevel level, String message) {
-        try {
-            File logFile = new File(LOG_FILE_PATH);
-            File parentDir = logFile.getParentFile();
-            if (parentDir != null && !parentDir.exists()) {
-                parentDir.mkdirs();
-            }
-
-            try (PrintWriter writer = new PrintWriter(new FileWriter(logFile, true))) {
-                String timestamp = DATE_FORMAT.format(new Date());
-                String logEntry = String.format("[%s] [%s] [%s] %s",
-                    timestamp, level.name(), type.getEnglishName(), message);
-                writer.println(logEntry);
-            }
-        } catch (IOException e) {
-            // 如果文件写入失败，只输出到控制台
-            TicketSystemMod.LOGGER.error("Failed to write to ticket system log file: {}", e.getMessage());
-        }
+    private static void logToFile(LogType type, LogLevel level, String message) {
+        LOG_FILE.offer(new AsyncLogFile.Entry(System.currentTimeMillis(), level.name(), type.getEnglishName(), message));
     }
 
     /**
      * 初始化日志系统
      */
     public static void initialize() {
-        try {
-            File logFile = new File(LOG_FILE_PATH);
-            File parentDir = logFile.getParentFile();
-            if (parentDir != null && !parentDir.exists()) {
-                parentDir.mkdirs();
-            }
-
-            // 写入初始化信息
-            String timestamp = DATE_FORMAT.format(new Date());
-            String initMessage = String.format(
-                "[%s] [INFO] [System] Ticket System Logger initialized | " +
-                "[%s] [INFO] [系统] 车票系统日志记录器已初始化",
-                timestamp, timestamp
-            );
-
-            try (PrintWriter writer = new PrintWriter(new FileWriter(logFile, true))) {
-                writer.println("=" .repeat(80));
-                writer.println(initMessage);
-                writer.println("=" .repeat(80));
-            }
-
-            TicketSystemMod.LOGGER.info("Ticket System Logger initialized successfully");
-        } catch (IOException e) {
-            TicketSystemMod.LOGGER.error("Failed to initialize ticket system log file: {}", e.getMessage());
+        String timestamp = LocalDateTime.now().format(DATE_FORMAT);
+        String initMessage = String.format(
+            "[%s] [INFO] [System] Ticket System Logger initialized | " +
+            "[%s] [INFO] [系统] 车票系统日志记录器已初始化",
+            timestamp, timestamp
+        );
+        long now = System.currentTimeMillis();
+        LOG_FILE.offer(new AsyncLogFile.Entry(now, null, null, "=".repeat(80)));
+        LOG_FILE.offer(new AsyncLogFile.Entry(now, null, null, initMessage));
+        LOG_FILE.offer(new AsyncLogFile.Entry(now, null, null, "=".repeat(80)));
+
+        // 进程退出时写出剩余的日志
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> LOG_FILE.close(SHUTDOWN_TIMEOUT_MILLIS),
+                "TicketSystem-LogShutdown"));
+        TicketSystemMod.LOGGER.info("Ticket System Logger initialized successfully");
+    }
+
+    /**
+     * 从配置刷新日志文件的归档参数（配置载入或重新载入时调用）
+     */
+    public static void refreshConfig() {
+        LOG_FILE.configure(TicketSystemConfig.getLogMaxFileBytes(), TicketSystemConfig.getLogMaxArchives(),
+                TicketSystemConfig.isLogArchiveCompressionEnabled());
+    }
+
+    /**
+     * 等待已记录的日志写入文件（停服时调用）
+     */
+    public static void flush() {
+        if (!LOG_FILE.flush(SHUTDOWN_TIMEOUT_MILLIS)) {
+            TicketSystemMod.LOGGER.warn("Timed out flushing ticket system log file");
         }
     }
 }
\ No newline at end of file
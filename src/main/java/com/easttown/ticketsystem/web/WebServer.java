@@ -2,7 +2,9 @@ package com.easttown.ticketsystem.web;
 
 import com.easttown.ticketsystem.TicketSystemMod;
 import com.easttown.ticketsystem.config.TicketSystemConfig;
+import com.easttown.ticketsystem.manager.FareMatrixExporter;
 import com.easttown.ticketsystem.manager.NetworkManager;
+import com.easttown.ticketsystem.manager.NetworkTransaction;
 import com.easttown.ticketsystem.data.Station;
 import com.easttown.ticketsystem.data.Line;
 import com.easttown.ticketsystem.data.Fare;
@@ -15,6 +17,7 @@ import com.sun.net.httpserver.HttpExchange;
 
 import java.io.*;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.Executors;
@@ -172,6 +175,27 @@ public class WebServer {
         }
     }
 
+    /**
+     * 解析查询字符串（?a=1&b=2），参数名与值按UTF-8解码，没有值的参数为空字符串，重复的参数取第一个
+     */
+    private static Map<String, String> parseQuery(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq >= 0 ? pair.substring(0, eq) : pair, StandardCharsets.UTF_8);
+            String value = eq >= 0 ? URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8) : "";
+            params.putIfAbsent(name, value);
+        }
+        return params;
+    }
+
     // ==================== 静态文件处理器 ====================
 
     private static class StaticFileHandler implements HttpHandler {
@@ -346,6 +370,8 @@ public class WebServer {
                 sendError(exchange, 404, "Station not found");
                 return;
             }
+            // 已发布的车站对象只读，修改副本
+            existingStation = existingStation.copy();
 
             // 更新字段
             String name = (String) body.get("name");
@@ -539,6 +565,8 @@ public class WebServer {
                 sendError(exchange, 404, "Line not found");
                 return;
             }
+            // 已发布的线路对象只读，修改副本
+            existingLine = existingLine.copy();
 
             // 更新字段
             String name = (String) body.get("name");
@@ -803,13 +831,13 @@ public class WebServer {
                 return;
             }
 
-            int successCount = 0;
-            int failCount = 0;
+            // 所有票价在一次批量修改中添加：任何一条无效则都不添加
+            NetworkTransaction transaction = NetworkManager.beginTransaction();
             List<String> errors = new ArrayList<>();
 
             for (Map<String, Object> fareData : faresToAdd) {
-                String from = (String) fareData.get("from");
-                String to = (String) fareData.get("to");
+                Object fromObj = fareData.get("from");
+                Object toObj = fareData.get("to");
                 Object costRegularObj = fareData.get("cost_regular");
                 Object costObj = fareData.get("cost");
                 Object priceObj = fareData.get("price");
@@ -823,30 +851,35 @@ public class WebServer {
                     price = ((Number) priceObj).intValue();
                 }
 
-                if (from == null || to == null || price <= 0) {
-                    failCount++;
+                if (!(fromObj instanceof String) || !(toObj instanceof String) || price <= 0) {
                     errors.add("Invalid fare data: " + fareData);
                     continue;
                 }
 
-                Fare fare = new Fare(from, to, price);
-                if (NetworkManager.addFare(fare)) {
-                    successCount++;
-                } else {
-                    failCount++;
-                    errors.add("Failed to add fare: " + from + "-" + to);
-                }
+                transaction.addFare(new Fare((String) fromObj, (String) toObj, price));
+            }
+
+            if (errors.isEmpty() && !transaction.commit()) {
+                errors.addAll(transaction.getErrors());
             }
 
             Map<String, Object> response = new HashMap<>();
-            response.put("ok", true);
-            response.put("message", String.format("Bulk fares added: %d success, %d failed", successCount, failCount));
-            response.put("success", successCount);
-            response.put("failed", failCount);
             if (!errors.isEmpty()) {
+                response.put("ok", false);
+                response.put("error", String.format("Bulk fares rejected: %d of %d invalid, nothing was added",
+                        errors.size(), faresToAdd.size()));
+                response.put("success", 0);
+                response.put("failed", errors.size());
                 response.put("errors", errors);
+                sendJsonResponse(exchange, 400, response);
+                return;
             }
 
+            response.put("ok", true);
+            response.put("message", String.format("Bulk fares added: %d success, 0 failed", faresToAdd.size()));
+            response.put("success", faresToAdd.size());
+            response.put("failed", 0);
+
             sendJsonResponse(exchange, 201, response);
         }
 
@@ -1010,18 +1043,13 @@ public class WebServer {
                 String startName = startStation != null ? startStation.getName() : startCode;
                 String endName = endStation != null ? endStation.getName() : endCode;
 
-                // 计算距离（简化实现，使用车站数作为距离估算）
-                int distance = 0;
-                try {
-                    com.easttown.ticketsystem.data.Route route =
-                        com.easttown.ticketsystem.manager.RouteCalculator.findCheapestRoute(startCode, endCode);
-                    if (route != null) {
-                        // Route类没有getTotalDistance()方法，使用车站数作为距离估算
-                        // 假设每个车站间平均距离为1公里
-                        distance = route.getStationCount();
-                    }
-                } catch (Exception e) {
-                    // 距离计算失败，使用0
+                // 距离：两站之间的水平直线距离（1格按1米计，单位公里，保留一位小数）
+                // 票价来自票价矩阵，这里不再为了距离执行一次路线搜索
+                double distance = 0;
+                if (startStation != null && endStation != null) {
+                    double dx = endStation.getX() - startStation.getX();
+                    double dz = endStation.getZ() - startStation.getZ();
+                    distance = Math.round(Math.sqrt(dx * dx + dz * dz) / 100.0) / 10.0;
                 }
 
                 // 生成票号
@@ -1166,6 +1194,12 @@ public class WebServer {
     private static class ExportHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
+            String path = exchange.getRequestURI().getPath();
+            if (path.startsWith("/api/export/fare-matrix")) {
+                handleFareMatrix(exchange, path);
+                return;
+            }
+
             try {
                 NetworkManager.initialize();
 
@@ -1232,6 +1266,68 @@ public class WebServer {
                 sendError(exchange, 500, "Internal server error");
             }
         }
+
+        /**
+         * 票价表导出：
+         * /api/export/fare-matrix.csv 或 .bin 直接流式返回，附加?target=file时改为写入当前世界数据目录下的export/；
+         * /api/export/fare-matrix/progress 查询最近一次导出的进度
+         */
+        private void handleFareMatrix(HttpExchange exchange, String path) throws IOException {
+            if (path.equals("/api/export/fare-matrix/progress")) {
+                FareMatrixExporter.Progress progress = FareMatrixExporter.getProgress();
+                Map<String, Object> response = new HashMap<>();
+                response.put("ok", true);
+                response.put("running", progress != null && !progress.isFinished());
+                response.put("completed_rows", progress != null ? progress.getCompletedRows() : 0);
+                response.put("total_rows", progress != null ? progress.getTotalRows() : 0);
+                response.put("elapsed_ms", progress != null ? progress.getElapsedMillis() : 0);
+                sendJsonResponse(exchange, 200, response);
+                return;
+            }
+
+            FareMatrixExporter.Format format = path.endsWith(".bin")
+                    ? FareMatrixExporter.Format.BINARY
+                    : FareMatrixExporter.Format.CSV;
+            try {
+                // 与后台票价矩阵相同的车站数上限，避免在Web线程上分配过大的数组
+                NetworkManager.initialize();
+                int total = NetworkManager.getStationCodes().size();
+                if (total > FareMatrixExporter.getMaxStations()) {
+                    sendError(exchange, 413, "Too many stations to export: " + total
+                            + " (fare_matrix_max_stations is " + FareMatrixExporter.getMaxStations() + ")");
+                    return;
+                }
+
+                if ("file".equals(parseQuery(exchange).get("target"))) {
+                    File file = new File(new File(NetworkManager.getDataDirectory(), "export"),
+                            "fare_matrix." + format.getExtension());
+                    int stationCount = FareMatrixExporter.exportToFile(file, format, true);
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("ok", true);
+                    response.put("file", file.getPath());
+                    response.put("stations", stationCount);
+                    response.put("elapsed_ms", FareMatrixExporter.getProgress().getElapsedMillis());
+                    sendJsonResponse(exchange, 200, response);
+                    return;
+                }
+
+                List<String> stationCodes = new ArrayList<>(NetworkManager.getStationCodes());
+                Collections.sort(stationCodes);
+                int[] fares = FareMatrixExporter.compute(stationCodes, true);
+
+                exchange.getResponseHeaders().set("Content-Type", format.getContentType());
+                exchange.getResponseHeaders().set("Content-Disposition",
+                        "attachment; filename=\"fare_matrix." + format.getExtension() + "\"");
+                exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+                exchange.sendResponseHeaders(200, 0); // 分块传输，边写边发送
+                try (OutputStream os = exchange.getResponseBody()) {
+                    FareMatrixExporter.write(stationCodes, fares, format, os);
+                }
+            } catch (Exception e) {
+                TicketSystemMod.LOGGER.error("Error exporting fare matrix", e);
+                sendError(exchange, 500, "Internal server error");
+            }
+        }
     }
 
     private static class HealthHandler implements HttpHandler {
@@ -1243,6 +1339,8 @@ public class WebServer {
             health.put("timestamp", System.currentTimeMillis());
             health.put("port", port);
             health.put("running", running);
+            health.put("route_search_mode", TicketSystemConfig.getRouteSearchMode());
+            health.put("route_search_stats", com.easttown.ticketsystem.manager.RouteCalculator.getSearchStats());
 
             sendJsonResponse(exchange, 200, health);
         }